@@ -0,0 +1,216 @@
+package org.example.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Where the large parts of a {@link Book} live (cover, author photo, description), so that the
+ * book itself only carries a {@link Ref}. Blobs are addressed by their content: identical bytes are
+ * written once however many books refer to them. The data goes to a scratch file that only lives
+ * as long as the process, recently read blobs are kept on the heap. If no scratch file can be
+ * created the blobs stay on the heap, which is what every book did before.
+ */
+public final class BlobStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlobStore.class);
+    public static final long DEFAULT_HOT_BYTES = 8L * 1024 * 1024;
+    private static volatile BlobStore shared;
+
+    /** Handle to a stored blob: the first 128 bits of its SHA-256 and its length. */
+    public record Ref(long hi, long lo, int length) {
+        public static Ref of(byte[] data) {
+            ByteBuffer digest = ByteBuffer.wrap(sha256(data));
+            return new Ref(digest.getLong(), digest.getLong(), data.length);
+        }
+
+        /** Stable across runs, usable as a key in persistent caches. */
+        public String hex() {
+            return String.format("%016x%016x", hi, lo);
+        }
+    }
+
+    /** How much sharing identical content saved, for the references someone counted, e.g. {@link LibraryStore#imageStats()}. */
+    public record Stats(int blobs, long storedBytes, long references, long referencedBytes) {
+        public long savedBytes() {
+            return referencedBytes - storedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d blobs for %d references, %.1f MB stored, %.1f MB saved by sharing",
+                    blobs, references, storedBytes / 1048576.0, savedBytes() / 1048576.0);
+        }
+    }
+
+    /** Where the bytes of a blob kept outside this store are read back from. */
+    public interface Source {
+        byte[] read(Ref ref);
+    }
+
+    private final FileChannel channel;
+    private final Map<Ref, Long> offsets = new ConcurrentHashMap<>();
+    // Only used when there is no scratch file
+    private final Map<Ref, byte[]> onHeap = new ConcurrentHashMap<>();
+    private final Map<Ref, Source> attached = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Ref, byte[]> hot = new LinkedHashMap<>(64, 0.75f, true);
+    private final long hotBudget;
+    private long hotBytes;
+    private long end;
+
+    /** {@code file} null: keep everything on the heap. The file is deleted when the store is closed. */
+    public BlobStore(Path file, long hotBudget) {
+        this.hotBudget = hotBudget;
+        FileChannel ch = null;
+        if (file != null) {
+            try {
+                ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                file.toFile().deleteOnExit();
+            } catch (IOException e) {
+                LOGGER.warn("Blob file {} unavailable, keeping covers on the heap: {}", file, e.toString());
+            }
+        }
+        this.channel = ch;
+    }
+
+    /** The store books use; its scratch file sits in the temp directory. */
+    public static BlobStore shared() {
+        BlobStore s = shared;
+        if (s == null) {
+            synchronized (BlobStore.class) {
+                if (shared == null) shared = new BlobStore(scratchFile(), DEFAULT_HOT_BYTES);
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    private static Path scratchFile() {
+        try {
+            return Files.createTempFile("someone-blobs-", ".bin");
+        } catch (IOException e) {
+            LOGGER.warn("No temp file for blobs: {}", e.toString());
+            return null;
+        }
+    }
+
+    /** Stores the bytes unless the same content is already there. */
+    public Ref put(byte[] data) {
+        Ref ref = Ref.of(data);
+        if (offsets.containsKey(ref) || onHeap.containsKey(ref)) return ref;
+        if (channel == null) {
+            onHeap.putIfAbsent(ref, data);
+            return ref;
+        }
+        synchronized (this) {
+            if (offsets.containsKey(ref) || onHeap.containsKey(ref)) return ref;
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(data);
+                long position = end;
+                while (buf.hasRemaining()) {
+                    position += channel.write(buf, position);
+                }
+                offsets.put(ref, end);
+                end = position;
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write blob, keeping it on the heap: {}", e.toString());
+                onHeap.putIfAbsent(ref, data);
+            }
+        }
+        return ref;
+    }
+
+    /** Makes a blob kept elsewhere readable through this store; its bytes are only read when asked for. */
+    public void attach(Ref ref, Source source) {
+        if (offsets.containsKey(ref) || onHeap.containsKey(ref)) return;
+        attached.putIfAbsent(ref, source);
+    }
+
+    /** The stored bytes; null for a ref this store has never seen. Callers must not modify the array. */
+    public byte[] get(Ref ref) {
+        if (ref == null) return null;
+        byte[] data = onHeap.get(ref);
+        if (data != null) return data;
+        synchronized (hot) {
+            data = hot.get(ref);
+        }
+        if (data != null) return data;
+        Long offset = offsets.get(ref);
+        if (offset == null) return readAttached(ref);
+        data = new byte[ref.length()];
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, offset + buf.position()) < 0) throw new IOException("blob file truncated");
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read blob {}: {}", ref.hex(), e.toString());
+            return null;
+        }
+        remember(ref, data);
+        return data;
+    }
+
+    /** Distinct blobs stored. */
+    public int size() {
+        return offsets.size() + onHeap.size();
+    }
+
+    /** Bytes written to the scratch file. */
+    public synchronized long fileSize() {
+        return end;
+    }
+
+    public void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close blob file", e);
+        }
+    }
+
+    private byte[] readAttached(Ref ref) {
+        Source source = attached.get(ref);
+        if (source == null) return null;
+        byte[] data = source.read(ref);
+        if (data == null || data.length != ref.length()) {
+            LOGGER.warn("Blob {} is gone from where it was attached", ref.hex());
+            return null;
+        }
+        remember(ref, data);
+        return data;
+    }
+
+    private void remember(Ref ref, byte[] data) {
+        if (data.length > hotBudget) return;
+        synchronized (hot) {
+            if (hot.put(ref, data) == null) hotBytes += data.length;
+            Iterator<byte[]> it = hot.values().iterator();
+            while (hotBytes > hotBudget && it.hasNext()) {
+                hotBytes -= it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,87 +1,137 @@
 package org.example.model;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Objects;
 
 public class Book {
 
+    // One dictionary per field; a book holds ids, each distinct value exists once
+    public static final SymbolTable AUTHORS = new SymbolTable();
+    public static final SymbolTable SERIES = new SymbolTable();
+    public static final SymbolTable GENRES = new SymbolTable();
+    public static final SymbolTable LANGUAGES = new SymbolTable();
+    public static final SymbolTable YEARS = new SymbolTable();
+    public static final SymbolTable FORMATS = new SymbolTable();
+    static final String NO_SERIES = "No Series";
+
     private final String title;
-    private final String author;
-    private final String series;
+    private final int author;
+    private final int series;
     private final Integer seriesIndex;
-    private final String genre;
-    private final String language;
-    private final String year;
+    private final int genre;
+    private final int language;
+    private final int year;
     private final Path filePath;
-    private final String format;
-    private final String description;
-    private byte[] cover;
-    private byte[] authorPhoto;
-
-    // We can use a small cache or just keep them as is, 
-    // but the recommendation was to consider memory.
-    // Given the task, let's at least make them non-final to allow clearing if needed,
-    // or better, keep them final but ensure they are only loaded when needed if we had a provider.
-    // However, the current architecture passes them in the builder.
-    // Let's implement a simple way to keep only a certain amount of images in memory if needed,
-    // but for now, let's just make sure we aren't holding massive redundant data.
+    private final int format;
+    // The large parts live in the blob store and are read when someone asks for them
+    private final BlobStore.Ref description;
+    private final BlobStore.Ref cover;
+    private final BlobStore.Ref authorPhoto;
 
     private Book(Builder b) {
         this.title = Objects.requireNonNullElse(b.title, "Unknown Title");
-        this.author = Objects.requireNonNullElse(b.author, "Unknown Author");
-        this.series = Objects.requireNonNullElse(b.series, "No Series");
+        this.author = AUTHORS.id(Objects.requireNonNullElse(b.author, "Unknown Author"));
+        this.series = SERIES.id(Objects.requireNonNullElse(b.series, NO_SERIES));
         this.seriesIndex = b.seriesIndex;
-        this.genre = Objects.requireNonNullElse(b.genre, "General");
-        this.language = Objects.requireNonNullElse(b.language, "Unknown");
-        this.year = Objects.requireNonNullElse(b.year, "Unknown Year");
+        this.genre = GENRES.id(Objects.requireNonNullElse(b.genre, "General"));
+        this.language = LANGUAGES.id(Objects.requireNonNullElse(b.language, "Unknown"));
+        this.year = YEARS.id(Objects.requireNonNullElse(b.year, "Unknown Year"));
         this.filePath = Objects.requireNonNull(b.filePath, "filePath required");
-        this.format = Objects.requireNonNullElse(b.format, "");
-        this.description = Objects.requireNonNullElse(b.description, "");
+        this.format = FORMATS.id(Objects.requireNonNullElse(b.format, ""));
+        this.description = b.description;
         this.cover = b.cover;
         this.authorPhoto = b.authorPhoto;
     }
 
+    /** A row of a {@link LibraryStore}, rebuilt from values that are interned already. */
+    Book(String title, int author, int series, Integer seriesIndex, int genre, int language, int year,
+         Path filePath, int format, BlobStore.Ref description, BlobStore.Ref cover, BlobStore.Ref authorPhoto) {
+        this.title = title;
+        this.author = author;
+        this.series = series;
+        this.seriesIndex = seriesIndex;
+        this.genre = genre;
+        this.language = language;
+        this.year = year;
+        this.filePath = filePath;
+        this.format = format;
+        this.description = description;
+        this.cover = cover;
+        this.authorPhoto = authorPhoto;
+    }
+
     public String getTitle() { return title; }
-    public String getAuthor() { return author; }
-    public String getSeries() { return series; }
+    public String getAuthor() { return AUTHORS.value(author); }
+    public String getSeries() { return SERIES.value(series); }
     public Integer getSeriesIndex() { return seriesIndex; }
-    public String getGenre() { return genre; }
-    public String getLanguage() { return language; }
-    public String getYear() { return year; }
+    public String getGenre() { return GENRES.value(genre); }
+    public String getLanguage() { return LANGUAGES.value(language); }
+    public String getYear() { return YEARS.value(year); }
     public Path getFilePath() { return filePath; }
-    public String getFormat() { return format; }
-    public String getDescription() { return description; }
-    public byte[] getCover() { return cover; }
-    public byte[] getAuthorPhoto() { return authorPhoto; }
+    public String getFormat() { return FORMATS.value(format); }
+    /** Ids in the field's {@link SymbolTable}: equal ids, equal values. */
+    public int getAuthorId() { return author; }
+    public int getSeriesId() { return series; }
+    public int getGenreId() { return genre; }
+    public int getLanguageId() { return language; }
+    public int getYearId() { return year; }
+    public int getFormatId() { return format; }
+    public String getDescription() {
+        byte[] text = BlobStore.shared().get(description);
+        return text == null ? "" : new String(text, StandardCharsets.UTF_8);
+    }
+    public byte[] getCover() { return BlobStore.shared().get(cover); }
+    public byte[] getAuthorPhoto() { return BlobStore.shared().get(authorPhoto); }
+    /** Handle of the cover in {@link BlobStore#shared()}; the same for every book with the same image. */
+    public BlobStore.Ref getCoverRef() { return cover; }
+    public BlobStore.Ref getAuthorPhotoRef() { return authorPhoto; }
+    public BlobStore.Ref getDescriptionRef() { return description; }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Book book = (Book) o;
-        return Objects.equals(title, book.title) &&
-                Objects.equals(author, book.author) &&
+        return author == book.author &&
+                Objects.equals(title, book.title) &&
                 Objects.equals(filePath, book.filePath);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(title, author, filePath);
+        return Objects.hash(title, getAuthor(), filePath);
     }
 
     @Override
     public String toString() {
         return "Book{" +
                 "title='" + title + '\'' +
-                ", author='" + author + '\'' +
-                ", genre='" + genre + '\'' +
-                ", year='" + year + '\'' +
-                ", format='" + format + '\'' +
+                ", author='" + getAuthor() + '\'' +
+                ", genre='" + getGenre() + '\'' +
+                ", year='" + getYear() + '\'' +
+                ", format='" + getFormat() + '\'' +
                 '}';
     }
 
     public static Builder builder() { return new Builder(); }
 
+    public Builder toBuilder() {
+        return new Builder()
+                .title(title)
+                .author(getAuthor())
+                .series(getSeries())
+                .seriesIndex(seriesIndex)
+                .genre(getGenre())
+                .language(getLanguage())
+                .year(getYear())
+                .filePath(filePath)
+                .format(getFormat())
+                .descriptionRef(description)
+                .coverRef(cover)
+                .authorPhotoRef(authorPhoto);
+    }
+
     public static class Builder {
         private String title;
         private String author;
@@ -92,9 +142,9 @@ public class Book {
         private String year;
         private Path filePath;
         private String format;
-        private String description;
-        private byte[] cover;
-        private byte[] authorPhoto;
+        private BlobStore.Ref description;
+        private BlobStore.Ref cover;
+        private BlobStore.Ref authorPhoto;
 
         public Builder title(String v) { title = v; return this; }
         public Builder author(String v) { author = v; return this; }
@@ -105,9 +155,15 @@ public class Book {
         public Builder year(String v) { year = v; return this; }
         public Builder filePath(Path v) { filePath = v; return this; }
         public Builder format(String v) { format = v; return this; }
-        public Builder description(String v) { description = v; return this; }
-        public Builder cover(byte[] v) { cover = v; return this; }
-        public Builder authorPhoto(byte[] v) { authorPhoto = v; return this; }
+        public Builder description(String v) {
+            description = v == null || v.isEmpty() ? null : BlobStore.shared().put(v.getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+        public Builder cover(byte[] v) { cover = v == null ? null : BlobStore.shared().put(v); return this; }
+        public Builder authorPhoto(byte[] v) { authorPhoto = v == null ? null : BlobStore.shared().put(v); return this; }
+        public Builder coverRef(BlobStore.Ref v) { cover = v; return this; }
+        public Builder authorPhotoRef(BlobStore.Ref v) { authorPhoto = v; return this; }
+        public Builder descriptionRef(BlobStore.Ref v) { description = v; return this; }
 
         public Book build() { return new Book(this); }
     }
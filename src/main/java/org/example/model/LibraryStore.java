@@ -0,0 +1,617 @@
+package org.example.model;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The books of the open library, kept by column instead of as {@link Book} objects: one int array
+ * per dictionary field (author, genre, year...), titles and file names packed as UTF-8 into byte
+ * arenas. A book is a row number; filters and group-bys run over the int columns without creating a
+ * Book or a String, and a {@link Book} is only built for the rows that are shown.
+ * <p>
+ * Rows keep their number until {@link #clear()}: a removed row is only marked, and adding a book
+ * whose file is already in the store overwrites that row.
+ * <p>
+ * Search goes through an index that grows with every {@link #add}: trigrams of the titles, and the
+ * rows of every author, genre and series. A row rewritten with another title or author is checked
+ * on every search until the index is rebuilt.
+ * <p>
+ * The ids in the columns come from dictionaries of this store, not the {@link Book} ones: those hold
+ * every value any book ever had, while searches and group-bys here only go over the values of the
+ * books added since the last {@link #clear()}.
+ */
+public final class LibraryStore {
+    private static final int NO_SERIES_INDEX = Integer.MIN_VALUE;
+    // Rebuild the search index once this many rows, and an eighth of the store, are stale
+    private static final int REINDEX_MIN = 1024;
+    private static final Column[] SEARCHED = {Column.AUTHOR, Column.GENRE, Column.SERIES};
+
+    /** The dictionary-encoded fields; ids come from {@link #symbols(Column)}. */
+    public enum Column {
+        AUTHOR(Book.AUTHORS), SERIES(Book.SERIES), GENRE(Book.GENRES),
+        LANGUAGE(Book.LANGUAGES), YEAR(Book.YEARS), FORMAT(Book.FORMATS);
+
+        // Where the ids of a Book come from
+        private final SymbolTable global;
+
+        Column(SymbolTable global) {
+            this.global = global;
+        }
+
+        int of(Book b) {
+            return switch (this) {
+                case AUTHOR -> b.getAuthorId();
+                case SERIES -> b.getSeriesId();
+                case GENRE -> b.getGenreId();
+                case LANGUAGE -> b.getLanguageId();
+                case YEAR -> b.getYearId();
+                case FORMAT -> b.getFormatId();
+            };
+        }
+    }
+
+    private final int[][] columns = new int[Column.values().length][];
+    private final SymbolTable[] symbols = new SymbolTable[Column.values().length];
+    // Per column, the Book id of each id of this store
+    private final int[][] globalIds = new int[Column.values().length][];
+    private int[] seriesIndex;
+    private int[] dirs;
+    private BlobStore.Ref[] descriptions;
+    private BlobStore.Ref[] covers;
+    private BlobStore.Ref[] photos;
+    private long[] removed;
+    private final Arena titles = new Arena();
+    private final Arena names = new Arena();
+    // A library has few directories and many files: the parent is an id, only the name is per row
+    private final Map<String, Integer> dirIds = new HashMap<>();
+    private final List<String> dirNames = new ArrayList<>();
+    // Open addressing over (directory, file name): row + 1, 0 is a free slot
+    private int[] slots = new int[16];
+    private final TrigramIndex titleIndex = new TrigramIndex();
+    private final Map<Column, List<PostingList>> rowsByValue = new EnumMap<>(Column.class);
+    // Rows whose indexed title or values are out of date
+    private long[] stale;
+    private int staleCount;
+    private int capacity;
+    private int rows;
+    private int live;
+
+    /** A group of {@link #searchGroups}: the value of the column and its books, in the order they were added. */
+    public record Group(String value, List<Book> books) {
+    }
+
+    private record Query(String text, byte[] bytes, boolean ascii, boolean[] authors, boolean[] genres, boolean[] series) {
+    }
+
+    public LibraryStore() {
+        resetSymbols();
+        grow(16);
+    }
+
+    /** Adds the book, or overwrites the row that has the same file. Returns the row. */
+    public synchronized int add(Book book) {
+        int[] ids = ids(book);
+        int row = find(book.getFilePath());
+        if (row < 0) {
+            if (rows == capacity) grow(capacity + (capacity >> 1));
+            row = rows++;
+            setPath(row, book.getFilePath());
+            index(row);
+            live++;
+            write(row, ids, book);
+            indexRow(row, book.getTitle());
+            return row;
+        }
+        if (isRemoved(row)) {
+            removed[row >> 6] &= ~(1L << row);
+            live++;
+        }
+        rewrite(row, ids, book);
+        return row;
+    }
+
+    /** Replaces the book with the same file; false if there is none. */
+    public synchronized boolean update(Book book) {
+        int row = find(book.getFilePath());
+        if (row < 0 || isRemoved(row)) return false;
+        rewrite(row, ids(book), book);
+        return true;
+    }
+
+    public synchronized boolean remove(Path file) {
+        int row = find(file);
+        if (row < 0 || isRemoved(row)) return false;
+        removed[row >> 6] |= 1L << row;
+        live--;
+        return true;
+    }
+
+    public synchronized void clear() {
+        rows = 0;
+        live = 0;
+        capacity = 0;
+        titles.reset();
+        names.reset();
+        dirIds.clear();
+        dirNames.clear();
+        slots = new int[16];
+        titleIndex.clear();
+        rowsByValue.clear();
+        staleCount = 0;
+        resetSymbols();
+        grow(16);
+    }
+
+    public synchronized int size() {
+        return live;
+    }
+
+    public synchronized boolean isEmpty() {
+        return live == 0;
+    }
+
+    /** Every row in the store, in the order the books were added. */
+    public synchronized int[] rows() {
+        int[] result = new int[live];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!isRemoved(row)) result[n++] = row;
+        }
+        return result;
+    }
+
+    /** The book of a row; null if the row has been removed since. */
+    public synchronized Book book(int row) {
+        if (row >= rows || isRemoved(row)) return null;
+        int index = seriesIndex[row];
+        return new Book(titles.get(row), global(Column.AUTHOR, row), global(Column.SERIES, row),
+                index == NO_SERIES_INDEX ? null : index,
+                global(Column.GENRE, row), global(Column.LANGUAGE, row), global(Column.YEAR, row),
+                path(row), global(Column.FORMAT, row), descriptions[row], covers[row], photos[row]);
+    }
+
+    public synchronized String title(int row) {
+        return titles.get(row);
+    }
+
+    public synchronized Path path(int row) {
+        return Paths.get(dirNames.get(dirs[row]), names.get(row));
+    }
+
+    /** The values this store's ids stand for: only those of books added since the last {@link #clear()}. */
+    public synchronized SymbolTable symbols(Column column) {
+        return symbols[column.ordinal()];
+    }
+
+    public synchronized int id(Column column, int row) {
+        return columns[column.ordinal()][row];
+    }
+
+    public synchronized String value(Column column, int row) {
+        return symbols[column.ordinal()].value(columns[column.ordinal()][row]);
+    }
+
+    /** Rows whose column holds the id. */
+    public synchronized int[] filter(Column column, int id) {
+        int[] values = columns[column.ordinal()];
+        int[] result = new int[live];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if (values[row] == id && !isRemoved(row)) result[n++] = row;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** How many of the rows have each id: index the result with the id. */
+    public synchronized int[] countBy(Column column, int[] rows) {
+        int[] values = columns[column.ordinal()];
+        int[] counts = new int[symbols[column.ordinal()].size()];
+        for (int row : rows) counts[values[row]]++;
+        return counts;
+    }
+
+    /** Distinct values of the column among the books in the store. */
+    public synchronized int distinct(Column column) {
+        int count = 0;
+        for (int c : countBy(column, rows())) {
+            if (c > 0) count++;
+        }
+        return count;
+    }
+
+    /** The rows split by id, each group in the order given; null where no row has the id. */
+    public synchronized int[][] groupBy(Column column, int[] rows) {
+        int[] values = columns[column.ordinal()];
+        int[] counts = countBy(column, rows);
+        int[][] groups = new int[counts.length][];
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) groups[id] = new int[counts[id]];
+        }
+        int[] fill = new int[counts.length];
+        for (int row : rows) {
+            int id = values[row];
+            groups[id][fill[id]++] = row;
+        }
+        return groups;
+    }
+
+    /**
+     * Rows whose title, author, genre or series contains the query, ignoring case. Authors, genres
+     * and series are matched once per distinct value. A query of three or more characters only
+     * checks the titles that have all of its trigrams; a shorter one scans every title.
+     */
+    public synchronized int[] search(String query) {
+        String q = query.toLowerCase();
+        byte[] bytes = q.getBytes(StandardCharsets.UTF_8);
+        Query match = new Query(q, bytes, q.length() == bytes.length,
+                matching(Column.AUTHOR, q), matching(Column.GENRE, q), matching(Column.SERIES, q));
+        int[] titleRows = titleIndex.candidates(q);
+        int[] result = new int[live];
+        int n = 0;
+        if (titleRows == null) {
+            for (int row = 0; row < rows; row++) {
+                if (!isRemoved(row) && matches(row, match)) result[n++] = row;
+            }
+            return Arrays.copyOf(result, n);
+        }
+
+        long[] candidates = stale.clone();
+        for (int row : titleRows) candidates[row >> 6] |= 1L << row;
+        addRows(candidates, Column.AUTHOR, match.authors());
+        addRows(candidates, Column.GENRE, match.genres());
+        addRows(candidates, Column.SERIES, match.series());
+        for (int word = 0; word < candidates.length; word++) {
+            long bits = candidates[word] & ~removed[word];
+            while (bits != 0) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (row < rows && matches(row, match)) result[n++] = row;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * The books matching the query (every book for a blank one), grouped by the column and sorted by
+     * its value. Searched, grouped and read in one go, so a {@link #clear()} cannot land in between;
+     * gives up with InterruptedException once the calling thread is interrupted.
+     */
+    public synchronized List<Group> searchGroups(String query, Column column) throws InterruptedException {
+        int[] matched = query.isBlank() ? rows() : search(query);
+        // one pass over an int column; Book objects only for the rows that are returned
+        int[][] grouped = groupBy(column, matched);
+        SymbolTable values = symbols[column.ordinal()];
+        List<Group> result = new ArrayList<>();
+        int built = 0;
+        for (int id : values.sortedIds()) {
+            if (grouped[id] == null) continue;
+            List<Book> books = new ArrayList<>(grouped[id].length);
+            for (int row : grouped[id]) {
+                if ((++built & 1023) == 0 && Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                books.add(book(row));
+            }
+            result.add(new Group(values.value(id), books));
+        }
+        return result;
+    }
+
+    /** Groups of two or more rows with the same title and author, ignoring case. */
+    public synchronized List<int[]> duplicates() {
+        SymbolTable authors = symbols[Column.AUTHOR.ordinal()];
+        Map<String, Integer> foldedAuthors = new HashMap<>();
+        int[] canonical = new int[authors.size()];
+        for (int id = 0; id < canonical.length; id++) {
+            canonical[id] = foldedAuthors.computeIfAbsent(authors.value(id).toLowerCase(), k -> foldedAuthors.size());
+        }
+        int[] author = columns[Column.AUTHOR.ordinal()];
+        Map<String, int[]> groups = new LinkedHashMap<>();
+        for (int row = 0; row < rows; row++) {
+            if (isRemoved(row)) continue;
+            groups.merge(canonical[author[row]] + "|" + titles.get(row).toLowerCase(), new int[]{row}, LibraryStore::append);
+        }
+        List<int[]> result = new ArrayList<>();
+        for (int[] group : groups.values()) {
+            if (group.length > 1) result.add(group);
+        }
+        return result;
+    }
+
+    /**
+     * Covers and author photos of the books in the store: how many rows refer to one, and how many
+     * distinct images those are. Descriptions and the blobs of removed rows are not counted.
+     */
+    public synchronized BlobStore.Stats imageStats() {
+        Set<BlobStore.Ref> distinct = new HashSet<>();
+        long references = 0;
+        long referencedBytes = 0;
+        for (int row = 0; row < rows; row++) {
+            if (isRemoved(row)) continue;
+            for (BlobStore.Ref ref : new BlobStore.Ref[]{covers[row], photos[row]}) {
+                if (ref == null || ref.length() == 0) continue;
+                references++;
+                referencedBytes += ref.length();
+                distinct.add(ref);
+            }
+        }
+        long storedBytes = 0;
+        for (BlobStore.Ref ref : distinct) storedBytes += ref.length();
+        return new BlobStore.Stats(distinct.size(), storedBytes, references, referencedBytes);
+    }
+
+    /** Approximate bytes held by the columns and arenas. */
+    public synchronized long memoryBytes() {
+        long perRow = (columns.length + 2) * 4L + 3 * 4L + 3 * 8L;
+        return capacity * perRow + capacity / 4 + slots.length * 4L
+                + titles.data.length + names.data.length;
+    }
+
+    /** Approximate bytes held by the search index. */
+    public synchronized long indexBytes() {
+        long total = titleIndex.bytes();
+        for (List<PostingList> lists : rowsByValue.values()) {
+            for (PostingList list : lists) {
+                if (list != null) total += list.bytes();
+            }
+        }
+        return total;
+    }
+
+    /** The book's values as ids of this store, interning the ones it has not seen yet. */
+    private int[] ids(Book book) {
+        int[] ids = new int[columns.length];
+        for (Column column : Column.values()) {
+            int c = column.ordinal();
+            int global = column.of(book);
+            int id = symbols[c].id(column.global.value(global));
+            if (id >= globalIds[c].length) globalIds[c] = Arrays.copyOf(globalIds[c], Math.max(16, id * 2));
+            globalIds[c][id] = global;
+            ids[c] = id;
+        }
+        return ids;
+    }
+
+    private int global(Column column, int row) {
+        return globalIds[column.ordinal()][columns[column.ordinal()][row]];
+    }
+
+    private void resetSymbols() {
+        for (int c = 0; c < symbols.length; c++) {
+            symbols[c] = new SymbolTable();
+            globalIds[c] = new int[16];
+        }
+    }
+
+    private void write(int row, int[] ids, Book book) {
+        for (int c = 0; c < columns.length; c++) {
+            columns[c][row] = ids[c];
+        }
+        Integer index = book.getSeriesIndex();
+        seriesIndex[row] = index == null ? NO_SERIES_INDEX : index;
+        titles.set(row, book.getTitle().getBytes(StandardCharsets.UTF_8));
+        descriptions[row] = book.getDescriptionRef();
+        covers[row] = book.getCoverRef();
+        photos[row] = book.getAuthorPhotoRef();
+    }
+
+    /** Overwrites a row, marking it stale if the search index no longer describes it. */
+    private void rewrite(int row, int[] ids, Book book) {
+        boolean changed = !titles.equals(row, book.getTitle().getBytes(StandardCharsets.UTF_8));
+        for (Column column : SEARCHED) {
+            changed |= columns[column.ordinal()][row] != ids[column.ordinal()];
+        }
+        write(row, ids, book);
+        if (changed && (stale[row >> 6] & (1L << row)) == 0) {
+            stale[row >> 6] |= 1L << row;
+            if (++staleCount > REINDEX_MIN && staleCount > rows / 8) reindex();
+        }
+    }
+
+    private void indexRow(int row, String title) {
+        titleIndex.add(row, title.toLowerCase());
+        for (Column column : SEARCHED) {
+            List<PostingList> lists = rowsByValue.computeIfAbsent(column, c -> new ArrayList<>());
+            int id = columns[column.ordinal()][row];
+            while (lists.size() <= id) lists.add(null);
+            if (lists.get(id) == null) lists.set(id, new PostingList());
+            lists.get(id).add(row);
+        }
+    }
+
+    /** Indexes every row again, removed ones too: adding their file back brings them back as they were. */
+    private void reindex() {
+        titleIndex.clear();
+        rowsByValue.clear();
+        Arrays.fill(stale, 0);
+        staleCount = 0;
+        for (int row = 0; row < rows; row++) {
+            indexRow(row, titles.get(row));
+        }
+    }
+
+    private boolean matches(int row, Query q) {
+        return q.authors()[columns[Column.AUTHOR.ordinal()][row]]
+                || q.genres()[columns[Column.GENRE.ordinal()][row]]
+                || q.series()[columns[Column.SERIES.ordinal()][row]]
+                || titles.containsIgnoreCase(row, q.bytes(), q.ascii(), q.text());
+    }
+
+    private void addRows(long[] candidates, Column column, boolean[] matching) {
+        List<PostingList> lists = rowsByValue.getOrDefault(column, List.of());
+        for (int id = 0; id < matching.length && id < lists.size(); id++) {
+            if (!matching[id] || lists.get(id) == null) continue;
+            for (int row : lists.get(id).toArray()) candidates[row >> 6] |= 1L << row;
+        }
+    }
+
+    private static int[] append(int[] group, int[] more) {
+        int[] merged = Arrays.copyOf(group, group.length + more.length);
+        System.arraycopy(more, 0, merged, group.length, more.length);
+        return merged;
+    }
+
+    private boolean isRemoved(int row) {
+        return (removed[row >> 6] & (1L << row)) != 0;
+    }
+
+    private boolean[] matching(Column column, String q) {
+        SymbolTable values = symbols[column.ordinal()];
+        // interned before sizing the result: a store that has not seen it yet gets its id now
+        int noSeries = column == Column.SERIES ? values.id(Book.NO_SERIES) : -1;
+        boolean[] result = new boolean[values.size()];
+        for (int id = 0; id < result.length; id++) {
+            result[id] = values.value(id).toLowerCase().contains(q);
+        }
+        // books without a series are not all "in" the placeholder
+        if (noSeries >= 0) result[noSeries] = false;
+        return result;
+    }
+
+    private void setPath(int row, Path file) {
+        Path parent = file.getParent();
+        Path name = file.getFileName();
+        String dir = parent == null || name == null ? "" : parent.toString();
+        Integer id = dirIds.get(dir);
+        if (id == null) {
+            id = dirNames.size();
+            dirIds.put(dir, id);
+            dirNames.add(dir);
+        }
+        dirs[row] = id;
+        names.set(row, (name == null ? file.toString() : name.toString()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The row of the file, removed or not; -1 if it was never added. */
+    private int find(Path file) {
+        Path parent = file.getParent();
+        Path name = file.getFileName();
+        Integer dir = dirIds.get(parent == null || name == null ? "" : parent.toString());
+        if (dir == null) return -1;
+        byte[] bytes = (name == null ? file.toString() : name.toString()).getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+        for (int i = hash(dir, bytes, 0, bytes.length) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int row = slots[i] - 1;
+            if (dirs[row] == dir && names.equals(row, bytes)) return row;
+        }
+        return -1;
+    }
+
+    private void index(int row) {
+        if (rows * 2 > slots.length) {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            for (int slot : old) {
+                if (slot != 0 && slot - 1 != row) place(slot - 1);
+            }
+        }
+        place(row);
+    }
+
+    private void place(int row) {
+        int mask = slots.length - 1;
+        int i = hash(dirs[row], names.data, names.start[row], names.length[row]) & mask;
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = row + 1;
+    }
+
+    private static int hash(int dir, byte[] bytes, int from, int length) {
+        int h = dir;
+        for (int i = from; i < from + length; i++) h = 31 * h + bytes[i];
+        return h ^ (h >>> 16);
+    }
+
+    private void grow(int newCapacity) {
+        boolean fresh = capacity == 0;
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = fresh ? new int[newCapacity] : Arrays.copyOf(columns[c], newCapacity);
+        }
+        seriesIndex = fresh ? new int[newCapacity] : Arrays.copyOf(seriesIndex, newCapacity);
+        dirs = fresh ? new int[newCapacity] : Arrays.copyOf(dirs, newCapacity);
+        descriptions = fresh ? new BlobStore.Ref[newCapacity] : Arrays.copyOf(descriptions, newCapacity);
+        covers = fresh ? new BlobStore.Ref[newCapacity] : Arrays.copyOf(covers, newCapacity);
+        photos = fresh ? new BlobStore.Ref[newCapacity] : Arrays.copyOf(photos, newCapacity);
+        int words = (newCapacity + 63) >> 6;
+        removed = fresh ? new long[words] : Arrays.copyOf(removed, words);
+        stale = fresh ? new long[words] : Arrays.copyOf(stale, words);
+        titles.grow(newCapacity, fresh);
+        names.grow(newCapacity, fresh);
+        capacity = newCapacity;
+    }
+
+    /** UTF-8 strings back to back in one array, addressed by row. */
+    private static final class Arena {
+        byte[] data = new byte[1024];
+        int used;
+        int[] start = new int[0];
+        int[] length = new int[0];
+
+        void grow(int capacity, boolean fresh) {
+            start = fresh ? new int[capacity] : Arrays.copyOf(start, capacity);
+            length = fresh ? new int[capacity] : Arrays.copyOf(length, capacity);
+        }
+
+        void reset() {
+            data = new byte[1024];
+            used = 0;
+        }
+
+        /** Writes over the old value when it fits, otherwise appends; the old bytes are not reclaimed. */
+        void set(int row, byte[] bytes) {
+            if (bytes.length > length[row]) {
+                long needed = (long) used + bytes.length;
+                if (needed > Integer.MAX_VALUE - 8) throw new IllegalStateException("Library too large for the string arena");
+                if (needed > data.length) {
+                    data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, data.length + (data.length >> 1))));
+                }
+                start[row] = used;
+                used += bytes.length;
+            }
+            System.arraycopy(bytes, 0, data, start[row], bytes.length);
+            length[row] = bytes.length;
+        }
+
+        String get(int row) {
+            return new String(data, start[row], length[row], StandardCharsets.UTF_8);
+        }
+
+        boolean equals(int row, byte[] bytes) {
+            int from = start[row];
+            return Arrays.equals(data, from, from + length[row], bytes, 0, bytes.length);
+        }
+
+        /**
+         * Substring test on the lower-cased value. ASCII titles are folded byte by byte; a title with
+         * other characters is decoded and lower-cased like a String.
+         */
+        boolean containsIgnoreCase(int row, byte[] needle, boolean asciiNeedle, String lowerNeedle) {
+            int from = start[row];
+            int end = from + length[row];
+            for (int i = from; i < end; i++) {
+                if (data[i] < 0) return get(row).toLowerCase().contains(lowerNeedle);
+            }
+            if (!asciiNeedle) return false;
+            if (needle.length == 0) return true;
+            outer:
+            for (int i = from; i <= end - needle.length; i++) {
+                for (int j = 0; j < needle.length; j++) {
+                    if (lower(data[i + j]) != needle[j]) continue outer;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private static byte lower(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.model;
+
+import java.util.Arrays;
+
+/**
+ * Ascending row numbers, stored as varint-encoded gaps. Every {@value #SKIP}th row is also kept
+ * with its byte offset, so a {@link Cursor} can jump over whole blocks while intersecting.
+ */
+final class PostingList {
+    static final int END = Integer.MAX_VALUE;
+    private static final int SKIP = 64;
+
+    private byte[] data = new byte[4];
+    private int length;
+    private int size;
+    private int last = -1;
+    private int[] skipRows = new int[1];
+    private int[] skipOffsets = new int[1];
+
+    /** Appends the row; repeating the last row is a no-op, going back is not allowed. */
+    void add(int row) {
+        if (row <= last) {
+            if (row == last) return;
+            throw new IllegalArgumentException("rows must ascend: " + row + " after " + last);
+        }
+        if (length + 5 > data.length) data = Arrays.copyOf(data, Math.max(length + 5, data.length * 2));
+        int gap = row - last;
+        while ((gap & ~0x7F) != 0) {
+            data[length++] = (byte) ((gap & 0x7F) | 0x80);
+            gap >>>= 7;
+        }
+        data[length++] = (byte) gap;
+        if (size % SKIP == 0) {
+            int block = size / SKIP;
+            if (block == skipRows.length) {
+                skipRows = Arrays.copyOf(skipRows, block * 2);
+                skipOffsets = Arrays.copyOf(skipOffsets, block * 2);
+            }
+            skipRows[block] = row;
+            skipOffsets[block] = length;
+        }
+        size++;
+        last = row;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int[] toArray() {
+        int[] rows = new int[size];
+        int position = 0;
+        int row = -1;
+        for (int i = 0; i < size; i++) {
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                gap |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            row += gap;
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    /** Bytes held, skip table included. */
+    long bytes() {
+        return data.length + 8L * skipRows.length;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Forward-only reader for intersections. */
+    final class Cursor {
+        private int index = -1;
+        private int current = -1;
+        private int position;
+
+        /** The first row at or after the target, {@link #END} when there is none. */
+        int seek(int target) {
+            if (index >= 0 && current >= target) return current;
+            if (size == 0) return END;
+            int block = index < 0 ? -1 : index / SKIP;
+            int b = block;
+            int blocks = (size + SKIP - 1) / SKIP;
+            while (b + 1 < blocks && skipRows[b + 1] <= target) b++;
+            if (b > block || index < 0) {
+                b = Math.max(b, 0);
+                index = b * SKIP;
+                current = skipRows[b];
+                position = skipOffsets[b];
+                if (current >= target) return current;
+            }
+            while (++index < size) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte v = data[position++];
+                    gap |= (v & 0x7F) << shift;
+                    if (v >= 0) break;
+                }
+                current += gap;
+                if (current >= target) return current;
+            }
+            index = size;
+            current = END;
+            return END;
+        }
+    }
+}
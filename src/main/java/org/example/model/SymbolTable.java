@@ -0,0 +1,63 @@
+package org.example.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Dictionary for a low-cardinality book field (author, genre, language...): every distinct value
+ * is kept once and books store its dense int id. Ids start at zero and are never reused, so a
+ * group-by can index an array with them. Lookups by id are a plain array read; new values are
+ * added under a lock.
+ */
+public final class SymbolTable {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    // Written after the value it makes visible
+    private volatile int size;
+    // Guarded by this
+    private int[] sorted = new int[0];
+
+    public int id(String value) {
+        Integer id = ids.get(value);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) return id;
+            int next = size;
+            if (next == values.length) values = Arrays.copyOf(values, next * 2);
+            values[next] = value;
+            size = next + 1;
+            ids.put(value, next);
+            return next;
+        }
+    }
+
+    public String value(int id) {
+        if (id >= size) {
+            synchronized (this) {
+                return values[id];
+            }
+        }
+        return values[id];
+    }
+
+    /** Distinct values so far; every id is below this. */
+    public int size() {
+        return size;
+    }
+
+    /** All ids ordered by their value, as a TreeMap over the strings would order them. */
+    public synchronized int[] sortedIds() {
+        int n = size;
+        if (sorted.length != n) {
+            String[] v = values;
+            sorted = IntStream.range(0, n).boxed()
+                    .sorted((a, b) -> v[a].compareTo(v[b]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        return sorted.clone();
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Substring search over lower-cased text: for every run of three characters, the rows whose
+ * text contains it. A query of three or more characters can only match rows that have all of its
+ * trigrams, so intersecting those lists gives the candidates; the caller still checks them, as
+ * having every trigram does not make the query a substring.
+ */
+final class TrigramIndex {
+    static final int MIN_QUERY = 3;
+
+    // Open addressing on the trigram, looked up once per indexed character: no boxed keys
+    private long[] keys = new long[1024];
+    private PostingList[] lists = new PostingList[1024];
+    private int count;
+
+    /** Rows must be added in ascending order; the text is expected lower-cased. */
+    void add(int row, String text) {
+        for (int i = 0; i + MIN_QUERY <= text.length(); i++) {
+            long gram = trigram(text, i);
+            int slot = slot(gram);
+            PostingList list = lists[slot];
+            if (list == null) {
+                list = new PostingList();
+                keys[slot] = gram;
+                lists[slot] = list;
+                if (++count * 2 > keys.length) resize();
+            }
+            list.add(row);
+        }
+    }
+
+    /** Rows having every trigram of the lower-cased query, ascending; null if the query is too short. */
+    int[] candidates(String query) {
+        if (query.length() < MIN_QUERY) return null;
+        Set<Long> grams = new LinkedHashSet<>();
+        for (int i = 0; i + MIN_QUERY <= query.length(); i++) grams.add(trigram(query, i));
+        List<PostingList> matched = new ArrayList<>(grams.size());
+        for (long gram : grams) {
+            PostingList list = lists[slot(gram)];
+            if (list == null) return new int[0];
+            matched.add(list);
+        }
+        matched.sort(Comparator.comparingInt(PostingList::size));
+        int[] rows = matched.get(0).toArray();
+        PostingList.Cursor[] others = new PostingList.Cursor[matched.size() - 1];
+        for (int i = 0; i < others.length; i++) others[i] = matched.get(i + 1).cursor();
+        int n = 0;
+        next:
+        for (int row : rows) {
+            for (PostingList.Cursor cursor : others) {
+                int found = cursor.seek(row);
+                if (found == PostingList.END) break next;
+                if (found != row) continue next;
+            }
+            rows[n++] = row;
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    void clear() {
+        keys = new long[1024];
+        lists = new PostingList[1024];
+        count = 0;
+    }
+
+    int trigrams() {
+        return count;
+    }
+
+    /** Bytes held by the posting lists and the table. */
+    long bytes() {
+        long total = keys.length * 12L + count * 40L;
+        for (PostingList list : lists) {
+            if (list != null) total += list.bytes();
+        }
+        return total;
+    }
+
+    /** The slot holding the trigram, or the free slot where it would go. */
+    private int slot(long gram) {
+        int mask = keys.length - 1;
+        long h = gram * 0x9E3779B97F4A7C15L;
+        int i = (int) (h >>> 32) & mask;
+        while (lists[i] != null && keys[i] != gram) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        PostingList[] oldLists = lists;
+        keys = new long[oldKeys.length * 2];
+        lists = new PostingList[oldLists.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldLists[i] == null) continue;
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            lists[slot] = oldLists[i];
+        }
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
@@ -0,0 +1,205 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which photo belongs to which author, looked up once per author instead of once per book.
+ * Both outcomes are remembered, "this URL" and "no usable photo", and persisted as a tab-separated
+ * log in {@code ~/.someone/cache/authors.tsv}; the photo bytes themselves live in the image caches.
+ * Concurrent requests for the same author wait for the same lookup. Failed lookups are not remembered.
+ */
+public class AuthorPhotoResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuthorPhotoResolver.class);
+    // Bump when the stored URLs stop being valid; older files are discarded
+    private static final String HEADER = "someone-authors\t1";
+    private static final String ABSENT = "-";
+
+    /** Finds the photo URL for an author; empty when the author has none worth showing. */
+    public interface AsyncFinder {
+        CompletableFuture<Optional<String>> find(String author);
+    }
+
+    private record Entry(String url, long expiresAtMillis) {}
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Optional<String>>> inFlight = new ConcurrentHashMap<>();
+    private volatile Duration foundTtl = Duration.ofDays(90);
+    private volatile Duration absentTtl = Duration.ofDays(14);
+    private volatile boolean loaded;
+
+    public AuthorPhotoResolver() {
+        this(Paths.get(System.getProperty("user.home"), ".someone", "cache", "authors.tsv"));
+    }
+
+    /** {@code file} null: remember for this session only. */
+    public AuthorPhotoResolver(Path file) {
+        this.file = file;
+    }
+
+    public void setTtl(Duration found, Duration absent) {
+        this.foundTtl = found;
+        this.absentTtl = absent;
+    }
+
+    /**
+     * The photo URL for the author, asking the finder only when the answer is not remembered. The caller
+     * does not wait for the lookup, and a lookup that failed fails the future: empty means no photo.
+     */
+    public CompletableFuture<Optional<String>> resolveAsync(String author, AsyncFinder finder) {
+        String key = author.toLowerCase().trim();
+        ensureLoaded();
+        Entry known = valid(entries.get(key));
+        if (known != null) return CompletableFuture.completedFuture(Optional.ofNullable(known.url()));
+
+        CompletableFuture<Optional<String>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<String>> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) return running;
+        CompletableFuture<Optional<String>> found;
+        try {
+            known = valid(entries.get(key));
+            if (known != null) {
+                found = CompletableFuture.completedFuture(Optional.ofNullable(known.url()));
+            } else {
+                found = finder.find(author).thenApply(url -> {
+                    remember(key, url.orElse(null));
+                    return url;
+                });
+            }
+        } catch (RuntimeException e) {
+            found = CompletableFuture.failedFuture(e);
+        }
+        found.whenComplete((url, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof HostUnavailableException) {
+                LOGGER.debug("Author photo lookup skipped for {}: {}", author, cause.getMessage());
+            } else if (cause != null && !(cause instanceof InterruptedException)) {
+                LOGGER.warn("Author photo lookup failed for {}: {}", author, cause.toString());
+            }
+            inFlight.remove(key, mine);
+            if (error == null) mine.complete(url);
+            else mine.completeExceptionally(cause);
+        });
+        return mine;
+    }
+
+    public int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    private static Entry valid(Entry entry) {
+        return entry != null && System.currentTimeMillis() < entry.expiresAtMillis() ? entry : null;
+    }
+
+    private void remember(String key, String url) {
+        Duration ttl = url != null ? foundTtl : absentTtl;
+        Entry entry = new Entry(url, System.currentTimeMillis() + ttl.toMillis());
+        entries.put(key, entry);
+        if (file == null) return;
+        synchronized (this) {
+            try {
+                boolean fresh = Files.notExists(file);
+                if (fresh) Files.createDirectories(file.toAbsolutePath().getParent());
+                try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    if (fresh) out.write(HEADER + "\n");
+                    out.write(line(key, entry));
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write author cache {}: {}", file, e.toString());
+            }
+        }
+    }
+
+    private static String line(String key, Entry entry) {
+        // tabs and line breaks never matter in a name, they would break the record
+        String name = key.replaceAll("[\\t\\r\\n]", " ");
+        return entry.expiresAtMillis() + "\t" + name + "\t" + (entry.url() == null ? ABSENT : entry.url()) + "\n";
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            if (file != null) load();
+            loaded = true;
+        }
+    }
+
+    private void load() {
+        String content;
+        try {
+            content = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            LOGGER.warn("Author cache {} is unreadable, starting from scratch: {}", file, e.toString());
+            return;
+        }
+        List<String> lines = List.of(content.split("\n"));
+        // a last line without its newline was cut short by a crash
+        boolean torn = !content.isEmpty() && !content.endsWith("\n");
+        if (torn) lines = lines.subList(0, lines.size() - 1);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            LOGGER.info("Author cache {} has an old format, starting from scratch", file);
+            discard();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 3) continue;
+            try {
+                long expiresAt = Long.parseLong(fields[0]);
+                if (expiresAt <= now) {
+                    entries.remove(fields[1]);
+                } else {
+                    entries.put(fields[1], new Entry(fields[2].equals(ABSENT) ? null : fields[2], expiresAt));
+                }
+            } catch (NumberFormatException ignored) {
+                // damaged line
+            }
+        }
+        // every later answer for an author is appended, rewrite once the log is mostly stale
+        if (torn || lines.size() > 2 * entries.size() + 100) compact();
+    }
+
+    private void compact() {
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        entries.forEach((key, entry) -> sb.append(line(key, entry)));
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to compact author cache {}", file, e);
+        }
+    }
+
+    private void discard() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete author cache {}", file, e);
+        }
+    }
+}
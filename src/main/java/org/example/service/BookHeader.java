@@ -0,0 +1,54 @@
+package org.example.service;
+
+/**
+ * Metadata read locally from a book file, before any online enrichment.
+ * Fields left {@code null} were not found in the file.
+ */
+public class BookHeader {
+    private String title;
+    private String author;
+    private String language;
+    private String series;
+    private Integer seriesIndex;
+    private String genre;
+    private String year;
+    private String description;
+    private String isbn;
+    private byte[] cover;
+
+    public String getTitle() { return title; }
+    public String getAuthor() { return author; }
+    public String getLanguage() { return language; }
+    public String getSeries() { return series; }
+    public Integer getSeriesIndex() { return seriesIndex; }
+    public String getGenre() { return genre; }
+    public String getYear() { return year; }
+    public String getDescription() { return description; }
+    public String getIsbn() { return isbn; }
+    public byte[] getCover() { return cover; }
+
+    public BookHeader title(String v) { title = v; return this; }
+    public BookHeader author(String v) { author = v; return this; }
+    public BookHeader language(String v) { language = v; return this; }
+    public BookHeader series(String v) { series = v; return this; }
+    public BookHeader seriesIndex(Integer v) { seriesIndex = v; return this; }
+    public BookHeader genre(String v) { genre = v; return this; }
+    public BookHeader year(String v) { year = v; return this; }
+    public BookHeader description(String v) { description = v; return this; }
+    public BookHeader isbn(String v) { isbn = v; return this; }
+    public BookHeader cover(byte[] v) { cover = v; return this; }
+
+    @Override
+    public String toString() {
+        return "BookHeader{" +
+                "title='" + title + '\'' +
+                ", author='" + author + '\'' +
+                ", language='" + language + '\'' +
+                ", series='" + series + '\'' +
+                ", genre='" + genre + '\'' +
+                ", year='" + year + '\'' +
+                ", isbn='" + isbn + '\'' +
+                ", cover=" + (cover == null ? 0 : cover.length) + " bytes" +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Format-specific fast path used by {@link MetadataService} in front of Tika.
+ * An empty result (or an exception) means "let Tika handle this file".
+ */
+public interface BookHeaderReader {
+
+    boolean supports(Path path);
+
+    Optional<BookHeader> read(Path path) throws IOException;
+}
@@ -3,25 +3,29 @@ package org.example.service;
 import org.example.model.Book;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class BookOrganizer {
 
+    /** Language → genre → series → books, each level sorted by name. */
     public Map<String, Map<String, Map<String, List<Book>>>> organize(List<Book> books) {
-        return books.stream().collect(
-                Collectors.groupingBy(
-                        b -> Objects.requireNonNullElse(b.getLanguage(), "Unknown"),
-                        TreeMap::new,
-                        Collectors.groupingBy(
-                                b -> Objects.requireNonNullElse(b.getGenre(), "General"),
-                                TreeMap::new,
-                                Collectors.groupingBy(
-                                        b -> Objects.requireNonNullElse(b.getSeries(), "No Series"),
-                                        TreeMap::new,
-                                        Collectors.toList()
-                                )
-                        )
-                )
-        );
+        // grouped on the symbol ids, the names are only looked up once per group
+        Map<Integer, Map<Integer, Map<Integer, List<Book>>>> byId = new HashMap<>();
+        for (Book b : books) {
+            byId.computeIfAbsent(b.getLanguageId(), k -> new HashMap<>())
+                    .computeIfAbsent(b.getGenreId(), k -> new HashMap<>())
+                    .computeIfAbsent(b.getSeriesId(), k -> new ArrayList<>())
+                    .add(b);
+        }
+        Map<String, Map<String, Map<String, List<Book>>>> result = new TreeMap<>();
+        byId.forEach((language, genres) -> {
+            Map<String, Map<String, List<Book>>> byGenre = new TreeMap<>();
+            genres.forEach((genre, series) -> {
+                Map<String, List<Book>> bySeries = new TreeMap<>();
+                series.forEach((s, list) -> bySeries.put(Book.SERIES.value(s), list));
+                byGenre.put(Book.GENRES.value(genre), bySeries);
+            });
+            result.put(Book.LANGUAGES.value(language), byGenre);
+        });
+        return result;
     }
 }
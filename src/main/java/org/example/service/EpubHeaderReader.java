@@ -0,0 +1,226 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.example.service.HeaderSupport.blankToNull;
+import static org.example.service.HeaderSupport.parseIndex;
+import static org.example.service.HeaderSupport.stripTags;
+import static org.example.service.HeaderSupport.year;
+
+/**
+ * Reads EPUB metadata through the ZIP central directory: {@code META-INF/container.xml} → OPF
+ * → the manifest's cover item. Chapter entries are never inflated.
+ */
+public class EpubHeaderReader implements BookHeaderReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EpubHeaderReader.class);
+    private static final String CONTAINER = "META-INF/container.xml";
+    private static final long MAX_COVER_SIZE = 20 * 1024 * 1024;
+
+    @Override
+    public boolean supports(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".epub");
+    }
+
+    @Override
+    public Optional<BookHeader> read(Path path) throws IOException {
+        // ZipFile seeks to the central directory at the end and then opens single entries
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            String opfPath = findOpfPath(zip);
+            if (opfPath == null) return Optional.empty();
+            ZipEntry opfEntry = zip.getEntry(opfPath);
+            if (opfEntry == null) return Optional.empty();
+
+            BookHeader header = new BookHeader();
+            OpfManifest opf;
+            try (InputStream in = zip.getInputStream(opfEntry)) {
+                opf = readPackage(in, header);
+            }
+            if (header.getTitle() == null && header.getAuthor() == null) {
+                return Optional.empty();
+            }
+
+            String coverHref = opf.coverHref();
+            if (coverHref != null) {
+                header.cover(readEntry(zip, resolve(opfPath, coverHref)));
+            }
+            return Optional.of(header);
+        } catch (XMLStreamException e) {
+            LOGGER.warn("Malformed EPUB package document in {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private String findOpfPath(ZipFile zip) throws IOException, XMLStreamException {
+        ZipEntry container = zip.getEntry(CONTAINER);
+        if (container == null) return null;
+        try (InputStream in = zip.getInputStream(container)) {
+            XMLStreamReader xml = HeaderSupport.xmlFactory().createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() == XMLStreamConstants.START_ELEMENT && "rootfile".equals(xml.getLocalName())) {
+                        return blankToNull(xml.getAttributeValue(null, "full-path"));
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        }
+        return null;
+    }
+
+    /** Manifest facts needed to pick the cover, collected while reading the OPF. */
+    private static class OpfManifest {
+        final Map<String, String> hrefById = new HashMap<>();
+        String coverId;          // EPUB 2: <meta name="cover" content="id"/>
+        String coverImageHref;   // EPUB 3: <item properties="cover-image"/>
+        String guessedCoverHref; // any image item whose id or href mentions "cover"
+
+        String coverHref() {
+            if (coverImageHref != null) return coverImageHref;
+            if (coverId != null && hrefById.containsKey(coverId)) return hrefById.get(coverId);
+            return guessedCoverHref;
+        }
+    }
+
+    private OpfManifest readPackage(InputStream in, BookHeader header) throws XMLStreamException {
+        OpfManifest opf = new OpfManifest();
+        XMLStreamReader xml = HeaderSupport.xmlFactory().createXMLStreamReader(in);
+        try {
+            StringBuilder text = new StringBuilder();
+            boolean inMetadata = false;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    text.setLength(0);
+                    if ("metadata".equals(name)) {
+                        inMetadata = true;
+                    } else if ("meta".equals(name) && inMetadata) {
+                        readMeta(xml, header, opf);
+                    } else if ("item".equals(name)) {
+                        readItem(xml, opf);
+                    } else if ("spine".equals(name)) {
+                        break; // manifest is done, the rest is reading order and guide
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    text.append(xml.getText());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if ("metadata".equals(name)) {
+                        inMetadata = false;
+                    } else if (inMetadata) {
+                        readDublinCore(name, text.toString(), header);
+                    }
+                    text.setLength(0);
+                }
+            }
+        } finally {
+            xml.close();
+        }
+        return opf;
+    }
+
+    private void readDublinCore(String name, String rawValue, BookHeader header) {
+        String value = blankToNull(rawValue);
+        if (value == null) return;
+        switch (name) {
+            case "title" -> {
+                if (header.getTitle() == null) header.title(value);
+            }
+            case "creator" -> {
+                if (header.getAuthor() == null) header.author(value);
+            }
+            case "language" -> {
+                if (header.getLanguage() == null) header.language(value);
+            }
+            case "subject" -> {
+                if (header.getGenre() == null) header.genre(value);
+            }
+            case "date" -> {
+                if (header.getYear() == null) header.year(year(value));
+            }
+            case "description" -> {
+                if (header.getDescription() == null) header.description(stripTags(value));
+            }
+            default -> { }
+        }
+    }
+
+    private void readMeta(XMLStreamReader xml, BookHeader header, OpfManifest opf) throws XMLStreamException {
+        String name = xml.getAttributeValue(null, "name");
+        String content = xml.getAttributeValue(null, "content");
+        if ("cover".equals(name)) {
+            opf.coverId = blankToNull(content);
+        } else if ("calibre:series".equals(name)) {
+            header.series(blankToNull(content));
+        } else if ("calibre:series_index".equals(name)) {
+            header.seriesIndex(parseIndex(content));
+        } else if ("belongs-to-collection".equals(xml.getAttributeValue(null, "property")) && header.getSeries() == null) {
+            header.series(blankToNull(xml.getElementText()));
+        } else if ("group-position".equals(xml.getAttributeValue(null, "property")) && header.getSeriesIndex() == null) {
+            header.seriesIndex(parseIndex(xml.getElementText()));
+        }
+    }
+
+    private void readItem(XMLStreamReader xml, OpfManifest opf) {
+        String id = xml.getAttributeValue(null, "id");
+        String href = xml.getAttributeValue(null, "href");
+        String mediaType = xml.getAttributeValue(null, "media-type");
+        String properties = xml.getAttributeValue(null, "properties");
+        if (href == null) return;
+        if (id != null) opf.hrefById.put(id, href);
+        boolean image = mediaType != null && mediaType.startsWith("image/");
+        if (image && properties != null && properties.contains("cover-image")) {
+            opf.coverImageHref = href;
+        } else if (image && opf.guessedCoverHref == null
+                && ((id != null && id.toLowerCase().contains("cover")) || href.toLowerCase().contains("cover"))) {
+            opf.guessedCoverHref = href;
+        }
+    }
+
+    private byte[] readEntry(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null || entry.isDirectory() || entry.getSize() > MAX_COVER_SIZE) return null;
+        try (InputStream in = zip.getInputStream(entry)) {
+            byte[] data = in.readNBytes((int) MAX_COVER_SIZE);
+            return data.length > 0 ? data : null;
+        }
+    }
+
+    /** Resolves a manifest href against the OPF location inside the archive. */
+    static String resolve(String opfPath, String href) {
+        String decoded = URLDecoder.decode(href.replace("+", "%2B"), StandardCharsets.UTF_8);
+        int hash = decoded.indexOf('#');
+        if (hash >= 0) decoded = decoded.substring(0, hash);
+        int slash = opfPath.lastIndexOf('/');
+        String base = slash < 0 ? "" : opfPath.substring(0, slash + 1);
+        String[] parts = (base + decoded).split("/");
+        Deque<String> stack = new ArrayDeque<>();
+        for (String part : parts) {
+            if (part.isEmpty() || ".".equals(part)) continue;
+            if ("..".equals(part)) {
+                stack.pollLast();
+            } else {
+                stack.addLast(part);
+            }
+        }
+        return String.join("/", stack);
+    }
+}
@@ -1,37 +1,92 @@
 package org.example.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.model.BlobStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.*;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 public class ExternalMetadataService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ExternalMetadataService.class);
     private static final String GOOGLE_BOOKS_API = "https://www.googleapis.com/books/v1/volumes?q=";
     private static final String USER_AGENT = "BookLibraryOrganizer/1.0";
+    private static final int MAX_ATTEMPTS = 3;
+    // Open Library's "no photo" placeholder is a few dozen bytes
+    private static final long MIN_PHOTO_SIZE = 1000;
+    // A longer Retry-After means the quota is gone for now; the lookup fails and is retried later
+    private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(1);
+    // Images are cached by content; a URL only points at the content hash of what it served
+    static final String IMAGE_KEY = "img:";
+    private static final String URL_KEY = "url:";
+    // Reading bodies, the disk caches and image checks: never on the HTTP client's own threads
+    private static final Executor BLOCKING = task -> Thread.ofVirtual().name("metadata-io").start(task);
 
     private final HttpClient client;
     private final ObjectMapper mapper;
     private final String googleApiKey;
-    private final ThumbnailCacheService diskCache = new ThumbnailCacheService();
+    private volatile ThumbnailCacheService diskCache = ThumbnailCacheService.shared();
+    // Survives restarts; null keeps lookups in memory only
+    private final MetadataResponseCache responseCache;
+    private final AuthorPhotoResolver authorPhotos;
     
-    // Simple in-memory cache
-    private final Map<String, JsonNode> infoCache = new ConcurrentHashMap<>();
-    private final Map<String, byte[]> imageCache = new ConcurrentHashMap<>();
+    // Lookups by title and author: found volumes are kept, misses and errors expire and are retried later
+    private final Map<String, CachedLookup> infoCache = new ConcurrentHashMap<>();
+    // Lookups on the wire: concurrent callers for the same key wait for the same request
+    private final Map<String, CompletableFuture<Optional<BookInfo>>> inFlight = new ConcurrentHashMap<>();
+    // Covers and photos of this session; misses fall back to the disk cache, then to the network
+    private final ImageMemoryCache imageCache = new ImageMemoryCache();
+    private final Map<String, String> imageHashes = new ConcurrentHashMap<>();
+    // Downloads whose content was already on disk under another URL
+    private final AtomicLong sharedDownloads = new AtomicLong();
+    private final AtomicLong sharedDownloadBytes = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile HostRateLimiter limiter = HostRateLimiter.shared();
+    private volatile HostCircuitBreaker breaker = new HostCircuitBreaker();
+    private volatile boolean offline;
+    private volatile Duration retryBaseDelay = Duration.ofSeconds(1);
+    private volatile Duration foundTtl = Duration.ofDays(30);
+    private volatile Duration missTtl = Duration.ofHours(6);
+    private volatile Duration errorTtl = Duration.ofMinutes(5);
+
+    /** What one Google Books lookup tells about a volume; fields are null when the volume lacks them. */
+    public record BookInfo(String genre, String year, String description, String coverUrl) {}
+
+    /** {@code failed}: the last attempt got no answer, which is not the same as "no such volume". */
+    private record CachedLookup(BookInfo info, long expiresAtNanos, boolean failed) {
+        boolean isValid() {
+            return expiresAtNanos == Long.MAX_VALUE || System.nanoTime() - expiresAtNanos < 0;
+        }
+    }
 
     public ExternalMetadataService() {
         this(HttpClient.newBuilder()
@@ -39,194 +94,635 @@ public class ExternalMetadataService {
                 .followRedirects(HttpClient.Redirect.ALWAYS)
                 .build(), 
              new ObjectMapper(), 
-             System.getenv("GOOGLE_API_KEY"));
+             System.getenv("GOOGLE_API_KEY"),
+             new MetadataResponseCache(),
+             new AuthorPhotoResolver());
     }
 
     public ExternalMetadataService(HttpClient client, ObjectMapper mapper, String googleApiKey) {
+        this(client, mapper, googleApiKey, null);
+    }
+
+    public ExternalMetadataService(HttpClient client, ObjectMapper mapper, String googleApiKey,
+                                   MetadataResponseCache responseCache) {
+        this(client, mapper, googleApiKey, responseCache, new AuthorPhotoResolver(null));
+    }
+
+    public ExternalMetadataService(HttpClient client, ObjectMapper mapper, String googleApiKey,
+                                   MetadataResponseCache responseCache, AuthorPhotoResolver authorPhotos) {
         this.client = client;
         this.mapper = mapper;
         this.googleApiKey = googleApiKey;
+        this.responseCache = responseCache;
+        this.authorPhotos = authorPhotos;
+        this.breaker.setProber(this::probe);
+    }
+
+    /** How long a found volume is kept on disk before it is looked up again. */
+    public void setFoundTtl(Duration found) {
+        this.foundTtl = found;
+    }
+
+    /** How long "no such volume" and failed lookups are remembered before being tried again. */
+    public void setNegativeCacheTtl(Duration misses, Duration errors) {
+        this.missTtl = misses;
+        this.errorTtl = errors;
+    }
+
+    public void setRateLimiter(HostRateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    public void setCircuitBreaker(HostCircuitBreaker breaker) {
+        breaker.setProber(this::probe);
+        this.breaker = breaker;
+    }
+
+    /** Hosts that failed repeatedly and are skipped until a background probe reaches them. */
+    public Set<String> getUnreachableHosts() {
+        return breaker.openHosts();
+    }
+
+    /** Offline: nothing is sent, lookups are answered from the caches or not at all. */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /** First backoff step; doubles with each retry. */
+    void setRetryBaseDelay(Duration delay) {
+        this.retryBaseDelay = delay;
+    }
+
+    /** Heap budget for downloaded images, in bytes. */
+    public void setImageCacheBudget(long bytes) {
+        imageCache.setBudget(bytes);
+    }
+
+    public ImageMemoryCache.Stats getImageCacheStats() {
+        return imageCache.stats();
+    }
+
+    /** Downloaded images that turned out to be identical to one already cached, and their size. */
+    public long getSharedDownloads() {
+        return sharedDownloads.get();
+    }
+
+    public long getSharedDownloadBytes() {
+        return sharedDownloadBytes.get();
+    }
+
+    void setDiskCache(ThumbnailCacheService diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /** Requests sent so far, retries included. */
+    public long getRequestCount() {
+        return requestCount.get();
     }
 
     public Optional<String> fetchGenre(String title, String author) {
-        return fetchInfo(title, author)
-                .map(v -> v.path("categories").isArray()
-                        ? v.path("categories").get(0).asText()
-                        : null);
+        return fetchAll(title, author).map(BookInfo::genre);
     }
 
     public Optional<String> fetchDescription(String title, String author) {
-        return fetchInfo(title, author)
-                .map(v -> v.path("description").asText(null));
+        return fetchAll(title, author).map(BookInfo::description);
     }
 
     public Optional<String> fetchYear(String title, String author) {
-        return fetchInfo(title, author)
-                .map(v -> v.path("publishedDate").asText(null))
-                .map(d -> d != null && d.length() >= 4 ? d.substring(0, 4) : null);
+        return fetchAll(title, author).map(BookInfo::year);
+    }
+
+    public Optional<BookInfo> fetchAll(String title, String author) {
+        return await(fetchAllAsync(title, author));
+    }
+
+    public CompletableFuture<Optional<BookInfo>> fetchAllAsync(String title, String author) {
+        return fetchAllAsync(title, author, null);
+    }
+
+    /**
+     * Genre, year, description and cover link from a single lookup. Results are cached per title and
+     * author, misses and errors for a limited time, and concurrent calls for the same book share
+     * one request. No thread is held while the request waits for its turn or for a retry. Empty means
+     * there is no such volume; a lookup that got no answer, skipped or failed, fails the future.
+     * An ISBN from the file names the edition exactly and is asked first; title and author are
+     * only searched when Google Books does not know it.
+     */
+    public CompletableFuture<Optional<BookInfo>> fetchAllAsync(String title, String author, String isbn) {
+        String number = normalizeIsbn(isbn);
+        if (number == null) {
+            return fetch((title + "|" + author).toLowerCase().trim(), "intitle:" + title + "+inauthor:" + author, title);
+        }
+        return fetch("isbn:" + number, "isbn:" + number, number).thenCompose(info -> info.isPresent()
+                ? CompletableFuture.completedFuture(info) : fetchAllAsync(title, author, null));
+    }
+
+    /** The digits of an ISBN-10 or ISBN-13, hyphens and spaces dropped; null for anything else. */
+    static String normalizeIsbn(String isbn) {
+        if (isbn == null) return null;
+        String number = isbn.replaceAll("[\\s-]", "").toUpperCase();
+        return number.matches("\\d{9}[\\dX]|\\d{13}") ? number : null;
+    }
+
+    private CompletableFuture<Optional<BookInfo>> fetch(String key, String query, String what) {
+        CachedLookup cached = infoCache.get(key);
+        if (cached != null && cached.isValid()) return answer(cached);
+
+        CompletableFuture<Optional<BookInfo>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<BookInfo>> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) return running;
+        CompletableFuture<Optional<BookInfo>> result;
+        try {
+            // the previous owner may have finished between the cache check and putIfAbsent
+            cached = infoCache.get(key);
+            if (cached != null && cached.isValid()) {
+                result = answer(cached);
+            } else {
+                Optional<MetadataResponseCache.Entry> stored = responseCache == null ? Optional.empty() : responseCache.get(key);
+                result = stored.isPresent() ? CompletableFuture.completedFuture(fromDisk(key, stored.get()))
+                        : lookup(key, query, what);
+            }
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((info, error) -> {
+            inFlight.remove(key, mine);
+            if (error == null) mine.complete(info);
+            else mine.completeExceptionally(unwrap(error));
+        });
+        return mine;
     }
 
     public Optional<byte[]> fetchAuthorPhoto(String author) {
+        return await(fetchAuthorPhotoAsync(author));
+    }
+
+    /**
+     * The author's photo from Open Library. The author → photo URL answer is resolved once per author
+     * and remembered across sessions, and the bytes come from the image caches after the first download.
+     * Empty when the author has no photo; fails when that could not be found out.
+     */
+    public CompletableFuture<Optional<byte[]>> fetchAuthorPhotoAsync(String author) {
         if (author == null || author.isBlank() || author.equalsIgnoreCase("Unknown Author")) {
-            return Optional.empty();
+            return CompletableFuture.completedFuture(Optional.empty());
         }
-        try {
-            // Пытаемся найти именно автора через Open Library или аналогичный сервис, 
-            // либо через поиск в Google Books с фокусом на автора.
-            String q = URLEncoder.encode(author, StandardCharsets.UTF_8);
-            
-            // 1. Пробуем Open Library (там часто есть фото авторов по имени)
-            HttpRequest olReq = HttpRequest.newBuilder()
-                    .uri(URI.create("https://openlibrary.org/search/authors.json?q=" + q))
-                    .timeout(Duration.ofSeconds(10))
-                    .GET().build();
-            HttpResponse<String> olRes = client.send(olReq, HttpResponse.BodyHandlers.ofString());
-            if (olRes.statusCode() == 200) {
-                JsonNode docs = mapper.readTree(olRes.body()).path("docs");
-                if (docs.isArray() && !docs.isEmpty()) {
-                    String key = docs.get(0).path("key").asText();
-                    if (key != null && !key.isEmpty()) {
-                        // key usually looks like "/authors/OL123A"
-                        String olid = key.contains("/") ? key.substring(key.lastIndexOf("/") + 1) : key;
-                        // Формат ссылки на фото в Open Library: https://covers.openlibrary.org/a/olid/ID-M.jpg
-                        String photoUrl = "https://covers.openlibrary.org/a/olid/" + olid + "-M.jpg";
-                        Optional<byte[]> photo = downloadImage(photoUrl);
-                        if (photo.isPresent() && photo.get().length > 1000) { // Проверка, что это не заглушка (маленький файл)
-                            return photo;
-                        }
+        return authorPhotos.resolveAsync(author, this::findAuthorPhotoUrl)
+                .thenCompose(url -> url.isPresent() ? downloadImage(url.get()) : CompletableFuture.completedFuture(Optional.empty()));
+    }
+
+    private CompletableFuture<Optional<String>> findAuthorPhotoUrl(String author) {
+        // Google Books has no author photos, only covers, so Open Library is the only source
+        String q = URLEncoder.encode(author, StandardCharsets.UTF_8);
+        HttpRequest olReq = HttpRequest.newBuilder()
+                .uri(URI.create("https://openlibrary.org/search/authors.json?q=" + q))
+                .timeout(Duration.ofSeconds(10))
+                .GET().build();
+        return sendAsync(olReq, HttpResponse.BodyHandlers.ofInputStream()).thenApplyAsync(olRes -> {
+            try (InputStream body = olRes.body()) {
+                if (olRes.statusCode() != 200) {
+                    throw new IOException("Open Library returned status code " + olRes.statusCode());
+                }
+                return readFirstAuthorKey(body);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, BLOCKING).thenCompose(authorKey -> {
+            if (authorKey.isEmpty()) return CompletableFuture.completedFuture(Optional.empty());
+            String key = authorKey.get();
+            // key usually looks like "/authors/OL123A"
+            String olid = key.contains("/") ? key.substring(key.lastIndexOf("/") + 1) : key;
+            // Формат ссылки на фото в Open Library: https://covers.openlibrary.org/a/olid/ID-M.jpg
+            String photoUrl = "https://covers.openlibrary.org/a/olid/" + olid + "-M.jpg";
+            return isRealPhoto(photoUrl).thenApply(real -> real ? Optional.of(photoUrl) : Optional.empty());
+        });
+    }
+
+    /**
+     * Open Library answers with a tiny placeholder when it has no photo. The size from a HEAD request
+     * tells them apart without downloading; only when the server does not report it is the image fetched.
+     * Anything that is not an answer about the image, an error status or a failed download, fails the
+     * check, so that an unlucky moment is not remembered as "no photo".
+     */
+    private CompletableFuture<Boolean> isRealPhoto(String url) {
+        HttpRequest head = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("User-Agent", USER_AGENT)
+                .timeout(Duration.ofSeconds(10))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        return sendAsync(head, HttpResponse.BodyHandlers.discarding()).thenCompose(r -> {
+            if (r.statusCode() == 404) return CompletableFuture.completedFuture(false);
+            if (r.statusCode() != 200) {
+                return CompletableFuture.failedFuture(new IOException("Open Library returned status code " + r.statusCode()));
+            }
+            OptionalLong length = r.headers().firstValueAsLong("Content-Length");
+            if (length.isPresent()) return CompletableFuture.completedFuture(length.getAsLong() > MIN_PHOTO_SIZE);
+            return fetchImage(url).thenApply(photo -> photo.isPresent() && photo.get().length > MIN_PHOTO_SIZE);
+        });
+    }
+
+    public Optional<byte[]> fetchCover(String title, String author) {
+        return await(fetchCoverAsync(title, author));
+    }
+
+    public CompletableFuture<Optional<byte[]>> fetchCoverAsync(String title, String author) {
+        return fetchCoverAsync(title, author, null);
+    }
+
+    /** Empty when the volume has no cover; fails when the lookup or the download got no answer. */
+    public CompletableFuture<Optional<byte[]>> fetchCoverAsync(String title, String author, String isbn) {
+        if (normalizeIsbn(isbn) == null && (title == null || title.isBlank() || title.equalsIgnoreCase("Unknown Title"))) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return fetchAllAsync(title, author, isbn).thenCompose(info -> info.map(BookInfo::coverUrl)
+                .map(this::downloadImage)
+                .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty())));
+    }
+
+    /** {@code what} names the book in log messages. */
+    private CompletableFuture<Optional<BookInfo>> lookup(String key, String query, String what) {
+        String url = GOOGLE_BOOKS_API + URLEncoder.encode(query, StandardCharsets.UTF_8);
+        if (googleApiKey != null) {
+            url += "&key=" + googleApiKey;
+        }
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("User-Agent", USER_AGENT)
+                .timeout(Duration.ofSeconds(10))
+                .GET().build();
+
+        return sendAsync(req, HttpResponse.BodyHandlers.ofInputStream()).thenApplyAsync(r -> {
+            try (InputStream body = r.body()) {
+                if (r.statusCode() == 200) {
+                    Optional<BookInfo> info = readFirstVolume(body);
+                    if (info.isPresent()) {
+                        infoCache.put(key, new CachedLookup(info.get(), Long.MAX_VALUE, false));
+                        if (responseCache != null) responseCache.put(key, info.get(), foundTtl);
+                        return info;
                     }
+                    remember(key, missTtl);
+                    // errors are transient, only a definite "not found" is worth keeping across sessions
+                    if (responseCache != null) responseCache.put(key, null, missTtl);
+                    return Optional.<BookInfo>empty();
+                }
+                throw new IOException("Google Books API returned status code " + r.statusCode());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, BLOCKING).whenComplete((info, error) -> {
+            Throwable cause = error == null ? null : unwrap(error);
+            if (cause instanceof HostUnavailableException) {
+                // nothing was asked, so there is no answer to remember either
+                LOGGER.debug("Skipped Google Books lookup for {}: {}", what, cause.getMessage());
+            } else if (cause != null) {
+                if (cause instanceof IOException) {
+                    LOGGER.warn("Google Books lookup failed for {}: {}", what, cause.getMessage());
+                } else {
+                    LOGGER.error("Error fetching book info from Google Books API", cause);
                 }
+                rememberFailure(key);
             }
+        });
+    }
 
-            // 2. Если не вышло, пробуем Google Books (хотя там редко именно фото автора, чаще обложки)
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create("https://www.googleapis.com/books/v1/volumes?q=inauthor:" + q + "&maxResults=1" + (googleApiKey != null ? "&key=" + googleApiKey : "")))
-                    .header("User-Agent", USER_AGENT)
-                    .timeout(Duration.ofSeconds(10))
-                    .GET().build();
+    private Optional<BookInfo> fromDisk(String key, MetadataResponseCache.Entry stored) {
+        long expiresAt = stored.info() != null ? Long.MAX_VALUE
+                : System.nanoTime() + Duration.ofMillis(stored.expiresAtMillis() - System.currentTimeMillis()).toNanos();
+        infoCache.put(key, new CachedLookup(stored.info(), expiresAt, false));
+        return Optional.ofNullable(stored.info());
+    }
 
-            HttpResponse<String> r = client.send(req, HttpResponse.BodyHandlers.ofString());
-            if (r.statusCode() == 200) {
-                JsonNode items = mapper.readTree(r.body()).path("items");
-                if (items.isArray() && !items.isEmpty()) {
-                    // Мы не берем thumbnail из volumeInfo, так как это обложка книги.
+    private void remember(String key, Duration ttl) {
+        infoCache.put(key, new CachedLookup(null, System.nanoTime() + ttl.toNanos(), false));
+    }
+
+    private void rememberFailure(String key) {
+        infoCache.put(key, new CachedLookup(null, System.nanoTime() + errorTtl.toNanos(), true));
+    }
+
+    private static CompletableFuture<Optional<BookInfo>> answer(CachedLookup cached) {
+        return cached.failed()
+                ? CompletableFuture.failedFuture(new IOException("Lookup failed recently, not retried yet"))
+                : CompletableFuture.completedFuture(Optional.ofNullable(cached.info()));
+    }
+
+    /**
+     * Genre, year, description and cover link of {@code items[0].volumeInfo}, read straight from the
+     * response stream. Everything else is skipped token by token and the stream is closed as soon as
+     * the first volume is done, so neither the body text nor a tree is ever built.
+     */
+    private Optional<BookInfo> readFirstVolume(InputStream body) throws IOException {
+        try (JsonParser p = mapper.getFactory().createParser(body)) {
+            if (!enterField(p, "items", JsonToken.START_ARRAY) || p.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            String genre = null, date = null, description = null, thumbnail = null, smallThumbnail = null;
+            if (enterField(p, "volumeInfo", JsonToken.START_OBJECT)) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = p.currentName();
+                    JsonToken value = p.nextToken();
+                    switch (name) {
+                        case "categories" -> genre = firstText(p, value);
+                        case "publishedDate" -> date = text(p, value);
+                        case "description" -> description = text(p, value);
+                        case "imageLinks" -> {
+                            if (value != JsonToken.START_OBJECT) {
+                                p.skipChildren();
+                                continue;
+                            }
+                            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                                String link = p.currentName();
+                                JsonToken v = p.nextToken();
+                                if (link.equals("thumbnail")) thumbnail = text(p, v);
+                                else if (link.equals("smallThumbnail")) smallThumbnail = text(p, v);
+                                else p.skipChildren();
+                            }
+                        }
+                        default -> p.skipChildren();
+                    }
                 }
             }
-        } catch (Exception e) {
-            LOGGER.error("Error fetching author photo for: {}", author, e);
+            String year = date != null && date.length() >= 4 ? date.substring(0, 4) : null;
+            return Optional.of(new BookInfo(genre, year, description, thumbnail != null ? thumbnail : smallThumbnail));
         }
-        return Optional.empty();
     }
 
-    public Optional<byte[]> fetchCover(String title, String author) {
-        if (title == null || title.isBlank() || title.equalsIgnoreCase("Unknown Title")) {
-            return Optional.empty();
+    /** {@code docs[0].key} of an Open Library author search. */
+    private Optional<String> readFirstAuthorKey(InputStream body) throws IOException {
+        try (JsonParser p = mapper.getFactory().createParser(body)) {
+            if (!enterField(p, "docs", JsonToken.START_ARRAY) || p.nextToken() != JsonToken.START_OBJECT
+                    || !enterField(p, "key", null)) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(text(p, p.currentToken())).filter(k -> !k.isEmpty());
         }
-        return fetchInfo(title, author)
-                .map(v -> {
-                    String url = v.path("imageLinks").path("thumbnail").asText(null);
-                    if (url == null) {
-                        url = v.path("imageLinks").path("smallThumbnail").asText(null);
-                    }
-                    return url;
-                })
-                .flatMap(this::downloadImage);
     }
 
-    private Optional<JsonNode> fetchInfo(String title, String author) {
-        String cacheKey = (title + "|" + author).toLowerCase();
-        if (infoCache.containsKey(cacheKey)) return Optional.of(infoCache.get(cacheKey));
-
-        try {
-            String q = "intitle:" + title + "+inauthor:" + author;
-            String url = GOOGLE_BOOKS_API + URLEncoder.encode(q, StandardCharsets.UTF_8);
-            if (googleApiKey != null) {
-                url += "&key=" + googleApiKey;
+    /**
+     * Skips the fields of the current object up to {@code name} and steps onto its value.
+     * False if the object has no such field or the value is not {@code expected} (null: any scalar).
+     */
+    private static boolean enterField(JsonParser p, String name, JsonToken expected) throws IOException {
+        if (p.currentToken() == null) p.nextToken();
+        if (p.currentToken() != JsonToken.START_OBJECT) return false;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (field.equals(name)) {
+                return expected == null ? value.isScalarValue() : value == expected;
             }
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("User-Agent", USER_AGENT)
-                    .timeout(Duration.ofSeconds(10))
-                    .GET().build();
+            p.skipChildren();
+        }
+        return false;
+    }
 
-            HttpResponse<String> r = sendWithRetry(req);
-            if (r.statusCode() == 200) {
-                JsonNode items = mapper.readTree(r.body()).path("items");
-                if (items.isArray() && !items.isEmpty()) {
-                    JsonNode info = items.get(0).path("volumeInfo");
-                    infoCache.put(cacheKey, info);
-                    return Optional.of(info);
-                }
+    private static String text(JsonParser p, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        if (value.isScalarValue()) return p.getValueAsString();
+        p.skipChildren();
+        return null;
+    }
+
+    /** The first scalar of an array, consuming the whole array. */
+    private static String firstText(JsonParser p, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) return text(p, value);
+        String first = null;
+        boolean seen = false;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY && t != null) {
+            if (!seen) {
+                first = text(p, t);
+                seen = true;
             } else {
-                LOGGER.warn("Google Books API returned status code: {} for {}", r.statusCode(), title);
+                p.skipChildren();
             }
-        } catch (Exception e) {
-            LOGGER.error("Error fetching book info from Google Books API", e);
         }
+        return first;
+    }
+
+    /**
+     * Sends through the host's rate limiter and retries network errors, 429 and 5xx with jittered
+     * exponential backoff, or after Retry-After when the server gives one. Waits are scheduled rather
+     * than slept, so no thread is held while a request is held back.
+     */
+    <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return attempt(request, handler, 0);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> attempt(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                           int attempt) {
+        String host = request.uri().getHost();
+        Optional<HostUnavailableException> unavailable = unavailable(host);
+        if (unavailable.isPresent()) return CompletableFuture.failedFuture(unavailable.get());
+        return limiter.acquire(host)
+                .thenCompose(ignored -> {
+                    // the circuit may have opened while this request waited for its turn
+                    Optional<HostUnavailableException> closed = unavailable(host);
+                    if (closed.isPresent()) return CompletableFuture.<HttpResponse<T>>failedFuture(closed.get());
+                    requestCount.incrementAndGet();
+                    return client.sendAsync(request, handler);
+                })
+                .handle((response, error) -> {
+                    boolean last = attempt + 1 >= MAX_ATTEMPTS;
+                    Throwable cause = unwrap(error);
+                    if (cause instanceof IOException && !(cause instanceof HostUnavailableException)) {
+                        breaker.failure(host);
+                    } else if (response != null) {
+                        if (response.statusCode() >= 500) breaker.failure(host);
+                        else breaker.success(host);
+                    }
+                    Duration delay;
+                    if (cause != null) {
+                        if (last || !(cause instanceof IOException) || cause instanceof HostUnavailableException) {
+                            return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+                        }
+                        delay = backoff(attempt);
+                        LOGGER.warn("Network error from {}, retrying in {}ms (attempt {})", host, delay.toMillis(), attempt + 1);
+                    } else {
+                        int status = response.statusCode();
+                        if (status != 429 && status < 500 || last) return CompletableFuture.completedFuture(response);
+                        Optional<Duration> retryAfter = retryAfter(response);
+                        if (retryAfter.isPresent() && retryAfter.get().compareTo(MAX_RETRY_AFTER) > 0) {
+                            LOGGER.warn("HTTP {} from {}, Retry-After {}s is too long, giving up", status, host, retryAfter.get().toSeconds());
+                            limiter.pause(host, MAX_RETRY_AFTER);
+                            return CompletableFuture.completedFuture(response);
+                        }
+                        discard(response);
+                        if (retryAfter.isPresent()) {
+                            // everyone talking to this host waits, not just this request
+                            limiter.pause(host, retryAfter.get());
+                            delay = Duration.ZERO;
+                        } else {
+                            delay = backoff(attempt);
+                        }
+                        LOGGER.warn("HTTP {} from {}, retrying in {}ms (attempt {})", status, host,
+                                retryAfter.orElse(delay).toMillis(), attempt + 1);
+                    }
+                    Executor later = CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS);
+                    return CompletableFuture.runAsync(() -> {}, later)
+                            .thenCompose(ignored -> attempt(request, handler, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private Optional<HostUnavailableException> unavailable(String host) {
+        if (offline) return Optional.of(new HostUnavailableException("Working offline"));
+        if (!breaker.allow(host)) return Optional.of(new HostUnavailableException(host + " is unreachable"));
         return Optional.empty();
     }
 
-    private HttpResponse<String> sendWithRetry(HttpRequest request) throws IOException, InterruptedException {
-        int maxRetries = 3;
-        int delay = 1000;
-        HttpResponse<String> response = null;
-        for (int i = 0; i < maxRetries; i++) {
+    /** Any HTTP answer from the site root means the host is back, whatever the status. */
+    private CompletableFuture<Boolean> probe(String host) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("https://" + host + "/"))
+                .header("User-Agent", USER_AGENT)
+                .timeout(Duration.ofSeconds(5))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(r -> r.statusCode() < 500);
+    }
+
+    /** A streamed body that is not going to be read still holds the connection until closed. */
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof Closeable c) {
             try {
-                response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                int status = response.statusCode();
-                if (status == 200) return response;
-                if (status == 429 || status >= 500) {
-                    LOGGER.warn("HTTP {}, retrying in {}ms (attempt {})", status, delay, i + 1);
-                } else {
-                    return response;
-                }
-            } catch (IOException e) {
-                if (i == maxRetries - 1) throw e;
-                LOGGER.warn("Network error, retrying in {}ms (attempt {})", delay, i + 1);
+                c.close();
+            } catch (IOException ignored) {
+                // nothing left to release
             }
-            Thread.sleep(delay);
-            delay *= 2;
         }
-        return response;
     }
 
-    private Optional<byte[]> downloadImage(String url) {
-        if (url == null || url.isBlank()) return Optional.empty();
-        if (imageCache.containsKey(url)) return Optional.of(imageCache.get(url));
-        
-        byte[] cached = diskCache.get(url);
-        if (cached != null) {
-            imageCache.put(url, cached);
-            return Optional.of(cached);
+    /** Between half and all of base × 2^attempt, at random, so workers that failed together retry apart. */
+    private Duration backoff(int attempt) {
+        long ceiling = retryBaseDelay.toMillis() << attempt;
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+    }
+
+    /** Retry-After as delta-seconds or an HTTP date. */
+    static Optional<Duration> retryAfter(HttpResponse<?> response) {
+        Optional<String> value = response.headers().firstValue("Retry-After").map(String::trim);
+        if (value.isEmpty()) return Optional.empty();
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value.get()))));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.get(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration d = Duration.between(ZonedDateTime.now(at.getZone()), at);
+                return Optional.of(d.isNegative() ? Duration.ZERO : d);
+            } catch (DateTimeParseException ignored) {
+                return Optional.empty();
+            }
         }
+    }
 
+    /** Blocking view of the lookups, for callers that have nothing else to do until the answer is in. */
+    private static <T> Optional<T> await(CompletableFuture<Optional<T>> future) {
         try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /** {@link #fetchImage} with its failures logged. */
+    private CompletableFuture<Optional<byte[]>> downloadImage(String url) {
+        if (url == null || url.isBlank()) return CompletableFuture.completedFuture(Optional.empty());
+        return fetchImage(url).whenComplete((image, error) -> {
+            Throwable cause = error == null ? null : unwrap(error);
+            if (cause instanceof HostUnavailableException) {
+                LOGGER.debug("Skipped image download {}: {}", url, cause.getMessage());
+            } else if (cause instanceof IOException) {
+                LOGGER.warn("Error downloading image {}: {}", url, cause.getMessage());
+            } else if (cause != null) {
+                LOGGER.error("Error downloading cover image: {}", url, cause);
+            }
+        });
+    }
+
+    /**
+     * The image from the caches or the network. Empty only when the server says there is none or sent
+     * something that is no usable picture; an error status, a non-image answer or a failed request
+     * fail the future.
+     */
+    private CompletableFuture<Optional<byte[]>> fetchImage(String url) {
+        return CompletableFuture.supplyAsync(() -> cachedImage(url), BLOCKING).thenCompose(cached -> {
+            if (cached != null) return CompletableFuture.completedFuture(Optional.of(cached));
             HttpRequest req = HttpRequest.newBuilder()
                     .uri(URI.create(url.replace("http://", "https://")))
                     .header("User-Agent", USER_AGENT)
                     .timeout(Duration.ofSeconds(15))
                     .GET().build();
-            HttpResponse<byte[]> r = client.send(req, HttpResponse.BodyHandlers.ofByteArray());
-            if (r.statusCode() == 200) {
+            return sendAsync(req, HttpResponse.BodyHandlers.ofByteArray()).thenApplyAsync(r -> {
+                if (r.statusCode() == 404 || r.statusCode() == 410) return Optional.<byte[]>empty();
+                if (r.statusCode() != 200) {
+                    throw new CompletionException(new IOException("status code " + r.statusCode()));
+                }
                 String contentType = r.headers().firstValue("Content-Type").orElse("");
                 if (!contentType.startsWith("image/")) {
-                    LOGGER.warn("Downloaded content is not an image: {} for URL: {}", contentType, url);
-                    return Optional.empty();
+                    throw new CompletionException(new IOException("not an image: " + contentType));
                 }
-
                 byte[] body = r.body();
-                if (isValidImage(body)) {
-                    imageCache.put(url, body);
-                    diskCache.put(url, body);
-                    return Optional.of(body);
-                }
-            } else {
-                LOGGER.warn("Error downloading image, status code: {} for URL: {}", r.statusCode(), url);
+                if (!isValidImage(body)) return Optional.<byte[]>empty();
+                storeImage(url, body);
+                return Optional.of(body);
+            }, BLOCKING);
+        });
+    }
+
+    /** Memory first, then disk; null when the URL was never downloaded. */
+    private byte[] cachedImage(String url) {
+        ThumbnailCacheService disk = diskCache;
+        String hash = imageHashes.get(url);
+        if (hash == null) {
+            byte[] pointer = disk.get(URL_KEY + url);
+            if (pointer != null) hash = new String(pointer, StandardCharsets.US_ASCII);
+        }
+        if (hash != null) {
+            byte[] data = imageCache.get(IMAGE_KEY + hash);
+            if (data == null) {
+                data = disk.get(IMAGE_KEY + hash);
+                if (data != null) imageCache.put(IMAGE_KEY + hash, data);
+            }
+            if (data != null) {
+                imageHashes.put(url, hash);
+                return data;
             }
-        } catch (Exception e) {
-            LOGGER.error("Error downloading cover image: {}", url, e);
         }
-        return Optional.empty();
+        // cached before images were stored by content
+        byte[] legacy = disk.get(url);
+        if (legacy != null) storeImage(url, legacy);
+        return legacy;
+    }
+
+    /**
+     * Keeps one copy per distinct image, in memory and on disk, however many URLs serve it:
+     * every edition of a book tends to come with the same cover.
+     */
+    private void storeImage(String url, byte[] data) {
+        ThumbnailCacheService disk = diskCache;
+        String hash = BlobStore.Ref.of(data).hex();
+        imageCache.put(IMAGE_KEY + hash, data);
+        if (disk.contains(IMAGE_KEY + hash)) {
+            sharedDownloads.incrementAndGet();
+            sharedDownloadBytes.addAndGet(data.length);
+        } else {
+            disk.put(IMAGE_KEY + hash, data);
+        }
+        if (!hash.equals(imageHashes.put(url, hash))) {
+            disk.put(URL_KEY + url, hash.getBytes(StandardCharsets.US_ASCII));
+        }
     }
 
     private boolean isValidImage(byte[] data) {
@@ -0,0 +1,228 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Optional;
+
+import static org.example.service.HeaderSupport.blankToNull;
+import static org.example.service.HeaderSupport.parseIndex;
+import static org.example.service.HeaderSupport.year;
+
+/**
+ * Reads FB2 metadata with StAX from the {@code <description>} header only and stops at
+ * {@code </description>}. The cover {@code <binary>} is located by a byte search from the end of
+ * the file (binaries follow the body) and decoded straight into a byte array.
+ */
+public class Fb2HeaderReader implements BookHeaderReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Fb2HeaderReader.class);
+
+    @Override
+    public boolean supports(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".fb2");
+    }
+
+    @Override
+    public Optional<BookHeader> read(Path path) throws IOException {
+        BookHeader header = new BookHeader();
+        String coverId;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 16 * 1024)) {
+            XMLStreamReader xml = HeaderSupport.xmlFactory().createXMLStreamReader(in);
+            try {
+                coverId = readDescription(xml, header);
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            LOGGER.warn("Malformed FB2 header in {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+        if (header.getTitle() == null && header.getAuthor() == null) {
+            return Optional.empty();
+        }
+        if (coverId != null) {
+            header.cover(readBinary(path, coverId));
+        }
+        return Optional.of(header);
+    }
+
+    /** Fills the header from {@code <description>}, returns the cover binary id (if any). */
+    private String readDescription(XMLStreamReader xml, BookHeader header) throws XMLStreamException {
+        Deque<String> path = new ArrayDeque<>();
+        StringBuilder text = new StringBuilder();
+        StringBuilder annotation = null;
+        String firstName = null, middleName = null, lastName = null, nickname = null;
+        String coverId = null;
+        String publishYear = null;
+
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xml.getLocalName();
+                String parent = path.peek();
+                path.push(name);
+                text.setLength(0);
+                if (!inTitleInfo(path)) {
+                    continue;
+                }
+                if ("annotation".equals(name) && "title-info".equals(parent)) {
+                    annotation = new StringBuilder();
+                } else if ("sequence".equals(name) && header.getSeries() == null) {
+                    header.series(blankToNull(xml.getAttributeValue(null, "name")));
+                    header.seriesIndex(parseIndex(xml.getAttributeValue(null, "number")));
+                } else if ("image".equals(name) && "coverpage".equals(parent) && coverId == null) {
+                    coverId = href(xml);
+                } else if ("date".equals(name) && header.getYear() == null) {
+                    header.year(year(xml.getAttributeValue(null, "value")));
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                text.append(xml.getText());
+                if (annotation != null) {
+                    annotation.append(xml.getText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = xml.getLocalName();
+                boolean titleInfo = inTitleInfo(path);
+                path.pop();
+                String value = text.toString().trim();
+                text.setLength(0);
+                if ("description".equals(name)) {
+                    break; // everything after this is the body
+                }
+                if ("year".equals(name) && "publish-info".equals(path.peek())) {
+                    publishYear = year(value);
+                }
+                if (!titleInfo) {
+                    continue;
+                }
+                boolean authorPart = "author".equals(path.peek()) && header.getAuthor() == null;
+                if (annotation != null) {
+                    if ("annotation".equals(name)) {
+                        header.description(blankToNull(annotation.toString().trim().replaceAll("[ \\t]*\\n\\s*", "\n")));
+                        annotation = null;
+                    } else if ("p".equals(name)) {
+                        annotation.append('\n');
+                    }
+                    continue;
+                }
+                switch (name) {
+                    case "book-title" -> header.title(blankToNull(value));
+                    case "genre" -> {
+                        if (header.getGenre() == null) header.genre(blankToNull(value));
+                    }
+                    case "lang" -> header.language(blankToNull(value));
+                    case "date" -> {
+                        if (header.getYear() == null) header.year(year(value));
+                    }
+                    case "first-name" -> firstName = authorPart ? value : firstName;
+                    case "middle-name" -> middleName = authorPart ? value : middleName;
+                    case "last-name" -> lastName = authorPart ? value : lastName;
+                    case "nickname" -> nickname = authorPart ? value : nickname;
+                    case "author" -> {
+                        // only the first author is kept, it is what grouping and online lookups use
+                        if (header.getAuthor() == null && "title-info".equals(path.peek())) {
+                            header.author(joinName(firstName, middleName, lastName, nickname));
+                        }
+                    }
+                    default -> { }
+                }
+            }
+        }
+        if (header.getYear() == null) {
+            header.year(publishYear);
+        }
+        return coverId;
+    }
+
+    private boolean inTitleInfo(Deque<String> path) {
+        return path.contains("title-info");
+    }
+
+    private String href(XMLStreamReader xml) {
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            if ("href".equals(xml.getAttributeLocalName(i))) {
+                String v = xml.getAttributeValue(i);
+                return v.startsWith("#") ? v.substring(1) : v;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds {@code <binary id="coverId" ...>} scanning backwards from the end of the mapped file
+     * and decodes its base64 body without building an intermediate string.
+     */
+    byte[] readBinary(Path path, String coverId) {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int idPos = lastIndexOf(buf, ("id=\"" + coverId + "\"").getBytes(StandardCharsets.UTF_8));
+            if (idPos < 0) {
+                idPos = lastIndexOf(buf, ("id='" + coverId + "'").getBytes(StandardCharsets.UTF_8));
+            }
+            if (idPos < 0) return null;
+            int start = indexOf(buf, (byte) '>', idPos);
+            int end = start < 0 ? -1 : indexOf(buf, (byte) '<', start);
+            if (end < 0) return null;
+            ByteBuffer base64 = buf.duplicate().position(start + 1).limit(end);
+            // MIME decoder skips the line breaks and indentation inside <binary>
+            ByteBuffer decoded = Base64.getMimeDecoder().decode(base64);
+            byte[] cover = new byte[decoded.remaining()];
+            decoded.get(cover);
+            return cover.length > 0 ? cover : null;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Failed to read FB2 cover '{}' from {}", coverId, path, e);
+            return null;
+        }
+    }
+
+    private static int lastIndexOf(ByteBuffer buf, byte[] pattern) {
+        outer:
+        for (int i = buf.limit() - pattern.length; i >= 0; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buf.get(i + j) != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte b, int from) {
+        for (int i = from; i < buf.limit(); i++) {
+            if (buf.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    private String joinName(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        // nickname only when there is no real name
+        for (int i = 0; i < parts.length - 1; i++) {
+            if (parts[i] != null && !parts[i].isBlank()) {
+                if (!sb.isEmpty()) sb.append(' ');
+                sb.append(parts[i].trim());
+            }
+        }
+        if (sb.isEmpty() && parts[parts.length - 1] != null) {
+            sb.append(parts[parts.length - 1].trim());
+        }
+        return sb.isEmpty() ? null : sb.toString();
+    }
+}
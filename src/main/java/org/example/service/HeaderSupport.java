@@ -0,0 +1,51 @@
+package org.example.service;
+
+import javax.xml.stream.XMLInputFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Small helpers shared by the {@link BookHeaderReader} implementations. */
+final class HeaderSupport {
+    private static final Pattern YEAR = Pattern.compile("\\d{4}");
+    private static final XMLInputFactory XML_FACTORY = createFactory();
+
+    private HeaderSupport() {
+    }
+
+    /** StAX factory with DTDs and external entities disabled (book files are untrusted input). */
+    static XMLInputFactory xmlFactory() {
+        return XML_FACTORY;
+    }
+
+    static String year(String v) {
+        if (v == null) return null;
+        Matcher m = YEAR.matcher(v);
+        return m.find() ? m.group() : null;
+    }
+
+    static String blankToNull(String v) {
+        return (v == null || v.isBlank()) ? null : v.trim();
+    }
+
+    /** Plain text of an HTML description: tags become spaces, runs of spaces collapse. */
+    static String stripTags(String html) {
+        return blankToNull(html.replaceAll("<[^>]+>", " ").replaceAll("[ \\t]+", " "));
+    }
+
+    static Integer parseIndex(String v) {
+        if (v == null || v.isBlank()) return null;
+        try {
+            return (int) Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+}
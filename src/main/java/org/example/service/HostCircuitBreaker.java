@@ -0,0 +1,134 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Per-host circuit breaker. After a run of consecutive failures the host is considered down and
+ * requests to it fail at once instead of each waiting for its own timeouts. While a host is down a
+ * background probe checks it again after a cooldown that doubles with every failed probe; the
+ * first successful probe lets requests through again.
+ */
+public final class HostCircuitBreaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostCircuitBreaker.class);
+    public static final int DEFAULT_THRESHOLD = 3;
+
+    /** Checks whether a host answers at all; completes with false or exceptionally when it does not. */
+    public interface Prober {
+        CompletableFuture<Boolean> probe(String host);
+    }
+
+    private final int threshold;
+    private final Duration initialCooldown;
+    private final Duration maxCooldown;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private volatile Prober prober = host -> CompletableFuture.completedFuture(true);
+
+    public HostCircuitBreaker() {
+        this(DEFAULT_THRESHOLD, Duration.ofSeconds(30), Duration.ofMinutes(10));
+    }
+
+    public HostCircuitBreaker(int threshold, Duration initialCooldown, Duration maxCooldown) {
+        this.threshold = Math.max(1, threshold);
+        this.initialCooldown = initialCooldown;
+        this.maxCooldown = maxCooldown;
+    }
+
+    public void setProber(Prober prober) {
+        this.prober = prober;
+    }
+
+    /** False while the host is down. */
+    public boolean allow(String host) {
+        Circuit circuit = circuits.get(key(host));
+        return circuit == null || !circuit.open;
+    }
+
+    public void success(String host) {
+        Circuit circuit = circuits.get(key(host));
+        if (circuit != null) circuit.reset();
+    }
+
+    public void failure(String host) {
+        circuit(host).failure();
+    }
+
+    /** Hosts currently considered down. */
+    public Set<String> openHosts() {
+        return circuits.entrySet().stream()
+                .filter(e -> e.getValue().open)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private Circuit circuit(String host) {
+        return circuits.computeIfAbsent(key(host), Circuit::new);
+    }
+
+    private static String key(String host) {
+        return host == null ? "" : host;
+    }
+
+    private final class Circuit {
+        private final String host;
+        private int failures;
+        private volatile boolean open;
+        private Duration cooldown = initialCooldown;
+
+        Circuit(String host) {
+            this.host = host;
+        }
+
+        synchronized void reset() {
+            failures = 0;
+            cooldown = initialCooldown;
+            if (open) {
+                open = false;
+                LOGGER.info("{} is reachable again", host);
+            }
+        }
+
+        synchronized void failure() {
+            if (open) return;
+            if (++failures >= threshold) {
+                open = true;
+                LOGGER.warn("{} failed {} times in a row, skipping it for {}s", host, failures, cooldown.toSeconds());
+                scheduleProbe();
+            }
+        }
+
+        private void scheduleProbe() {
+            CompletableFuture.delayedExecutor(cooldown.toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+                CompletableFuture<Boolean> probe;
+                try {
+                    probe = prober.probe(host);
+                } catch (RuntimeException e) {
+                    probe = CompletableFuture.failedFuture(e);
+                }
+                probe.whenComplete((up, error) -> {
+                    if (error == null && Boolean.TRUE.equals(up)) {
+                        reset();
+                    } else {
+                        stillDown();
+                    }
+                });
+            });
+        }
+
+        private synchronized void stillDown() {
+            if (!open) return;
+            Duration doubled = cooldown.multipliedBy(2);
+            cooldown = doubled.compareTo(maxCooldown) > 0 ? maxCooldown : doubled;
+            LOGGER.debug("{} is still down, next probe in {}s", host, cooldown.toSeconds());
+            scheduleProbe();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket per host, shared by everything in the process that talks to that host, so parallel
+ * scan workers together stay under the quota instead of each hitting 429 on its own.
+ * {@link #acquire} never blocks: it returns a future that completes when the request may go out.
+ */
+public final class HostRateLimiter {
+    /** Requests per second for hosts without an explicit rate. */
+    public static final double DEFAULT_RATE = 4.0;
+    private static final HostRateLimiter SHARED = new HostRateLimiter(DEFAULT_RATE);
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Double> rates = new ConcurrentHashMap<>();
+    private volatile double defaultRate;
+
+    public HostRateLimiter(double defaultRate) {
+        this.defaultRate = defaultRate;
+    }
+
+    /** The limiter used by {@link ExternalMetadataService} unless another one is set. */
+    public static HostRateLimiter shared() {
+        return SHARED;
+    }
+
+    /** Requests per second for hosts without their own rate; zero or less means unlimited. */
+    public void setDefaultRate(double perSecond) {
+        this.defaultRate = perSecond;
+        buckets.clear();
+    }
+
+    public void setRate(String host, double perSecond) {
+        rates.put(host, perSecond);
+        buckets.remove(host);
+    }
+
+    /** Completes when a request to the host may be sent; requests are let through in call order. */
+    public CompletableFuture<Void> acquire(String host) {
+        long delay = bucket(host).reserve(System.nanoTime());
+        if (delay <= 0) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS));
+    }
+
+    /** Holds back every request to the host for a while, e.g. after a 429 with Retry-After. */
+    public void pause(String host, Duration duration) {
+        bucket(host).pauseUntil(System.nanoTime() + duration.toNanos());
+    }
+
+    private Bucket bucket(String host) {
+        String key = host == null ? "" : host;
+        return buckets.computeIfAbsent(key, h -> new Bucket(rates.getOrDefault(h, defaultRate)));
+    }
+
+    /**
+     * Tokens may go negative: each caller reserves the next free slot and waits for it,
+     * which keeps the order fair without a queue.
+     */
+    private static final class Bucket {
+        private final double perNano;
+        private final double capacity;
+        private double tokens;
+        private long updatedNanos;
+        private long pausedUntilNanos;
+
+        Bucket(double perSecond) {
+            this.perNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, perSecond);
+            this.tokens = capacity;
+            this.updatedNanos = System.nanoTime();
+            this.pausedUntilNanos = updatedNanos;
+        }
+
+        synchronized long reserve(long now) {
+            if (perNano <= 0) return Math.max(0, pausedUntilNanos - now);
+            long from = pausedUntilNanos - now > 0 ? pausedUntilNanos : now;
+            if (from - updatedNanos > 0) {
+                tokens = Math.min(capacity, tokens + (from - updatedNanos) * perNano);
+                updatedNanos = from;
+            }
+            tokens -= 1;
+            long wait = updatedNanos - now;
+            if (tokens < 0) wait += (long) Math.ceil(-tokens / perNano);
+            return wait;
+        }
+
+        synchronized void pauseUntil(long nanos) {
+            if (nanos - pausedUntilNanos > 0) {
+                pausedUntilNanos = nanos;
+                if (perNano > 0) {
+                    // the pause uses up the burst, requests resume at the steady rate
+                    tokens = Math.min(tokens, 0);
+                    if (nanos - updatedNanos > 0) updatedNanos = nanos;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.service;
+
+import java.io.IOException;
+
+/** A request that was not sent because its host is known to be unreachable, or the app works offline. */
+public class HostUnavailableException extends IOException {
+    public HostUnavailableException(String message) {
+        super(message);
+    }
+}
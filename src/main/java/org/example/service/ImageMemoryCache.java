@@ -0,0 +1,119 @@
+package org.example.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Downloaded images kept on the heap, bounded by their total size in bytes rather than by count.
+ * Segmented LRU: a new image enters the probation segment and is promoted to the protected one
+ * on its second hit, so a long scan of one-off covers cannot push out the images that are
+ * actually looked at again. Eviction takes the least recent probation entry first.
+ */
+public class ImageMemoryCache {
+    /** Share of the budget reserved for images that were hit at least twice. */
+    private static final double PROTECTED_SHARE = 0.8;
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, byte[]> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long probationBytes;
+    private long protectedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public record Stats(long hits, long misses, long evictions, long residentBytes, int entries, long budget) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d entries, %.1f/%.1f MB, hit rate %.0f%%, %d evicted",
+                    entries, residentBytes / 1048576.0, budget / 1048576.0, hitRate() * 100, evictions);
+        }
+    }
+
+    public ImageMemoryCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public ImageMemoryCache(long budget) {
+        this.budget = Math.max(0, budget);
+    }
+
+    public synchronized byte[] get(String key) {
+        byte[] data = protectedSegment.get(key);
+        if (data != null) {
+            hits++;
+            return data;
+        }
+        data = probation.remove(key);
+        if (data == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        probationBytes -= data.length;
+        protectedSegment.put(key, data);
+        protectedBytes += data.length;
+        // demoted entries get another chance in probation instead of being dropped
+        Iterator<Map.Entry<String, byte[]>> it = protectedSegment.entrySet().iterator();
+        while (protectedBytes > protectedBudget() && it.hasNext()) {
+            Map.Entry<String, byte[]> oldest = it.next();
+            if (oldest.getKey().equals(key)) break;
+            it.remove();
+            protectedBytes -= oldest.getValue().length;
+            probation.put(oldest.getKey(), oldest.getValue());
+            probationBytes += oldest.getValue().length;
+        }
+        evictToBudget();
+        return data;
+    }
+
+    /** Images larger than the whole budget are not kept. */
+    public synchronized void put(String key, byte[] data) {
+        remove(key);
+        if (data.length > budget) return;
+        probation.put(key, data);
+        probationBytes += data.length;
+        evictToBudget();
+    }
+
+    public synchronized void setBudget(long budget) {
+        this.budget = Math.max(0, budget);
+        evictToBudget();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, probationBytes + protectedBytes,
+                probation.size() + protectedSegment.size(), budget);
+    }
+
+    private void remove(String key) {
+        byte[] old = probation.remove(key);
+        if (old != null) probationBytes -= old.length;
+        old = protectedSegment.remove(key);
+        if (old != null) protectedBytes -= old.length;
+    }
+
+    private long protectedBudget() {
+        return (long) (budget * PROTECTED_SHARE);
+    }
+
+    private void evictToBudget() {
+        while (probationBytes + protectedBytes > budget) {
+            LinkedHashMap<String, byte[]> segment = probation.isEmpty() ? protectedSegment : probation;
+            Iterator<byte[]> it = segment.values().iterator();
+            byte[] oldest = it.next();
+            it.remove();
+            if (segment == probation) probationBytes -= oldest.length;
+            else protectedBytes -= oldest.length;
+            evictions++;
+        }
+    }
+}
@@ -6,27 +6,104 @@ import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
-public class LibraryScanner extends SwingWorker<Void, Book> {
+/**
+ * Scans dropped files and folders for books. The sequential mode extracts each file completely
+ * before moving on. The parallel mode is a pipeline: discovery → local parse → online lookup →
+ * cover fetch, each stage with its own workers and a bounded queue. A book is published as soon
+ * as its local parse is done and republished through {@code onBooksUpdated} as later stages fill it in.
+ * The two online stages only start lookups and compose on their futures, so a request waiting for
+ * the rate limiter or for a retry holds no worker.
+ */
+public class LibraryScanner extends SwingWorker<Void, LibraryScanner.Update> {
     private static final Logger LOGGER = LoggerFactory.getLogger(LibraryScanner.class);
+    private static final int DISCOVERY_EVENT_STEP = 50;
     private final List<File> files;
     private final MetadataService metadataService;
+    private final ScanSettings settings;
     private final Consumer<List<Book>> onBooksFound;
     private final Consumer<Integer> onProgress;
     private final Runnable onDone;
+    private Consumer<List<Book>> onBooksUpdated = books -> {};
     private long startTime;
     private int processedCount = 0;
 
-    public LibraryScanner(List<File> files, MetadataService metadataService, 
+    // Optional: unchanged files are served from the catalog instead of being parsed again
+    private ScanCatalog catalog;
+    private final AtomicInteger catalogHits = new AtomicInteger();
+    private final AtomicInteger catalogMisses = new AtomicInteger();
+
+    // Parallel mode: bounds the number of files between discovery and their first publication
+    // (including parsed ones waiting for their turn when ordered)
+    private final Semaphore inFlight;
+    // Ordered mode: parsed results keyed by discovery index, drained in sequence
+    private final Map<Long, Parsed> pending = new HashMap<>();
+    private long nextToPublish = 0;
+    // Written by the walking thread only
+    private volatile int discovered = 0;
+    // Every book file the walk found, absolute; complete once walked is set
+    private final Set<Path> found = ConcurrentHashMap.newKeySet();
+    private volatile boolean walked;
+    private volatile List<ScanStage<Item>> stages = List.of();
+
+    /** What the scanner hands to the EDT: a new book, or a newer version of one already published. */
+    record Update(Book book, boolean added) {}
+
+    /** A book on its way through the pipeline; the stage queues hand it from one worker to the next. */
+    private static final class Item {
+        final long seq;
+        final Path path;
+        final BasicFileAttributes attrs;
+        BookHeader header;
+        Book book;
+        boolean failed;
+        // a lookup got no answer: shown with placeholders, but not recorded in the catalog
+        boolean incomplete;
+
+        Item(long seq, Path path, BasicFileAttributes attrs) {
+            this.seq = seq;
+            this.path = path;
+            this.attrs = attrs;
+        }
+    }
+
+    /** A parse result waiting for publication; {@code item} is null for catalog hits, which need no enrichment. */
+    private record Parsed(Book book, Item item) {}
+
+    public LibraryScanner(List<File> files, MetadataService metadataService,
+                          Consumer<List<Book>> onBooksFound,
+                          Consumer<Integer> onProgress, Runnable onDone) {
+        this(files, metadataService, ScanSettings.sequential(), onBooksFound, onProgress, onDone);
+    }
+
+    public LibraryScanner(List<File> files, MetadataService metadataService, ScanSettings settings,
                           Consumer<List<Book>> onBooksFound,
                           Consumer<Integer> onProgress, Runnable onDone) {
         this.files = files;
         this.metadataService = metadataService;
+        this.settings = settings;
         this.onBooksFound = onBooksFound;
         this.onProgress = onProgress;
         this.onDone = onDone;
+        this.inFlight = new Semaphore(settings.getConcurrency());
+    }
+
+    /**
+     * Runs the scan on a virtual thread instead of the SwingWorker pool: the sequential mode waits
+     * on the network for every file, and that wait then parks no platform thread.
+     */
+    public void start() {
+        Thread.ofVirtual().name("library-scan").start(this);
     }
 
     public void setStartTime(long startTime) {
@@ -37,45 +114,283 @@ public class LibraryScanner extends SwingWorker<Void, Book> {
         return startTime;
     }
 
+    public void setCatalog(ScanCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /** Receives enriched versions of books already passed to {@code onBooksFound}, matched by file path. */
+    public void setOnBooksUpdated(Consumer<List<Book>> onBooksUpdated) {
+        this.onBooksUpdated = onBooksUpdated;
+    }
+
+    /** Files served from the catalog during this scan. */
+    public int getCatalogHits() {
+        return catalogHits.get();
+    }
+
+    /** Files that were new or modified and went through metadata extraction. */
+    public int getCatalogMisses() {
+        return catalogMisses.get();
+    }
+
+    /** Queue depth and throughput per pipeline stage; empty for a sequential scan. */
+    public List<ScanStage.Stats> getStageStats() {
+        return stages.stream().map(ScanStage::stats).toList();
+    }
+
     @Override
     protected Void doInBackground() {
         try {
-            scan(files);
+            if (settings.isParallel()) {
+                scanParallel();
+            } else {
+                scan();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             LOGGER.error("Critical error during library scanning", e);
+        } finally {
+            if (catalog != null) {
+                LOGGER.info("Catalog: {} unchanged, {} new or modified", catalogHits.get(), catalogMisses.get());
+                if (walked) {
+                    int gone = catalog.retainFound(roots(), found);
+                    if (gone > 0) LOGGER.info("Catalog: {} files are gone", gone);
+                }
+                catalog.save();
+            }
         }
         return null;
     }
 
-    private void scan(List<File> list) {
-        for (File f : list) {
-            if (isCancelled()) return;
-            if (f.isDirectory()) {
-                File[] children = f.listFiles();
-                if (children != null) {
-                    scan(Arrays.asList(children));
+    private List<Path> roots() {
+        return files.stream().map(f -> f.toPath().toAbsolutePath().normalize()).toList();
+    }
+
+    /**
+     * Whether the file was under the scanned folders but the walk did not find it, i.e. it was
+     * deleted or moved away since it was added. False until the walk has gone through every folder.
+     */
+    public boolean isGone(Path file) {
+        if (!walked) return false;
+        Path path = file.toAbsolutePath().normalize();
+        return !found.contains(path) && roots().stream().anyMatch(path::startsWith);
+    }
+
+    private void found(Path path) {
+        found.add(path.toAbsolutePath().normalize());
+    }
+
+    /** Running total of book files found so far; also reported as the {@code "discovered"} property. */
+    public int getDiscovered() {
+        return discovered;
+    }
+
+    private void discovered(int count, boolean walkDone) {
+        discovered = count;
+        // every file would flood the EDT with events; the last one is always delivered
+        if (walkDone || count % DISCOVERY_EVENT_STEP == 0) {
+            firePropertyChange("discovered", null, count);
+        }
+    }
+
+    private void scan() throws InterruptedException {
+        int total = new LibraryWalker(this::isCancelled).walk(roots(), (path, attrs) -> {
+            found(path);
+            discovered(discovered + 1, false);
+            try {
+                Optional<Book> cached = fromCatalog(path, attrs);
+                Book book;
+                if (cached.isPresent()) {
+                    book = settings.isChangesOnly() ? null : cached.get();
+                } else {
+                    MetadataService.Result result = metadataService.extract(path);
+                    book = result.book();
+                    if (result.complete()) remember(path, attrs, book);
                 }
-            } else if (isBookFile(f)) {
-                try {
-                    Book book = metadataService.extractMetadata(f.toPath());
-                    publish(book);
-                } catch (Exception e) {
-                    LOGGER.warn("Failed to extract metadata from file: {}", f.getAbsolutePath(), e);
+                if (book != null) publish(new Update(book, true));
+            } catch (Exception e) {
+                LOGGER.warn("Failed to extract metadata from file: {}", path, e);
+            }
+        });
+        walked = !isCancelled();
+        discovered(total, true);
+    }
+
+    private void scanParallel() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        int capacity = settings.getQueueCapacity();
+        ScanStage<Item> covers = ScanStage.async("covers", settings.getCoverThreads(), capacity, this::fetchImages);
+        // handing over to the next queue may block, so it goes on a thread of its own
+        ScanStage<Item> online = ScanStage.async("online", settings.getEnrichThreads(), capacity,
+                item -> enrichText(item).thenRunAsync(() -> {
+                    try {
+                        covers.put(item);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, executor));
+        ScanStage<Item> local = new ScanStage<>("parse", settings.getParseThreads(), capacity, item -> {
+            // a book goes online only after it was published, so its updates never overtake it
+            for (Item visible : parseLocal(item)) {
+                online.put(visible);
+            }
+        });
+        stages = List.of(local, online, covers);
+        stages.forEach(stage -> stage.start(executor));
+        try {
+            int total = new LibraryWalker(this::isCancelled).walk(roots(), (path, attrs) -> {
+                inFlight.acquire();
+                found(path);
+                long seq = discovered;
+                discovered(discovered + 1, false);
+                Optional<Book> cached = fromCatalog(path, attrs);
+                if (cached.isPresent()) {
+                    for (Item visible : complete(seq, settings.isChangesOnly() ? null : cached.get(), null)) {
+                        online.put(visible);
+                    }
+                } else {
+                    local.put(new Item(seq, path, attrs));
                 }
+            });
+            walked = !isCancelled();
+            discovered(total, true);
+            // each stage is closed only after the one feeding it has drained
+            for (ScanStage<Item> stage : stages) {
+                stage.finish();
+                stage.awaitDone();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                executor.shutdownNow();
+            }
+            executor.close();
+        }
+        LOGGER.info("Parallel scan of {} files finished ({}): {}", discovered, settings, getStageStats());
+    }
+
+    private List<Item> parseLocal(Item item) {
+        Book book = null;
+        try {
+            if (!isCancelled()) {
+                item.header = metadataService.readHeader(item.path);
+                item.book = book = metadataService.localBook(item.path, item.header);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to extract metadata from file: {}", item.path, e);
+        }
+        return complete(item.seq, book, book == null ? null : item);
+    }
+
+    private CompletableFuture<Void> enrichText(Item item) {
+        if (isCancelled() || item.failed) return CompletableFuture.completedFuture(null);
+        return metadataService.enrichTextAsync(item.book, item.header).handle((result, error) -> {
+            if (error != null) {
+                item.failed = true;
+                LOGGER.warn("Online lookup failed for {}", item.path, error);
+                return null;
             }
+            if (!result.complete()) item.incomplete = true;
+            if (result.book() != item.book) {
+                item.book = result.book();
+                publish(new Update(result.book(), false));
+            }
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> fetchImages(Item item) {
+        if (isCancelled() || item.failed) return CompletableFuture.completedFuture(null);
+        return metadataService.fetchImagesAsync(item.book, item.header).handle((result, error) -> {
+            if (error != null) {
+                LOGGER.warn("Cover fetch failed for {}", item.path, error);
+                return null;
+            }
+            item.book = result.book();
+            publish(new Update(result.book(), false));
+            if (result.complete() && !item.incomplete) {
+                remember(item.path, item.attrs, result.book());
+            } else {
+                LOGGER.debug("Lookups for {} incomplete, not recorded in the catalog", item.path);
+            }
+            return null;
+        });
+    }
+
+    /** Catalog entry for an unchanged file; counts hits and misses when a catalog is set. */
+    private Optional<Book> fromCatalog(Path path, BasicFileAttributes attrs) {
+        if (catalog == null) return Optional.empty();
+        Optional<Book> cached = catalog.lookup(path, attrs);
+        (cached.isPresent() ? catalogHits : catalogMisses).incrementAndGet();
+        return cached;
+    }
+
+    /** Only for books whose lookups all got an answer: the catalog entry is final until the file changes. */
+    private void remember(Path path, BasicFileAttributes attrs, Book book) {
+        // an interrupted or offline extraction may have skipped steps, it must not be remembered as the final result
+        if (catalog != null && !isCancelled() && !Thread.currentThread().isInterrupted() && !metadataService.isOffline()) {
+            catalog.record(path, attrs, book);
         }
     }
 
-    private boolean isBookFile(File f) {
-        String n = f.getName().toLowerCase();
-        return n.endsWith(".pdf") || n.endsWith(".epub") || n.endsWith(".fb2") || n.endsWith(".mobi");
+    /**
+     * Publishes a parsed book (null: nothing to show), in discovery order when ordered.
+     * Returns the pipeline items that became visible and may now be enriched.
+     */
+    private List<Item> complete(long seq, Book book, Item item) {
+        if (!settings.isOrdered()) {
+            inFlight.release();
+            if (book == null) return List.of();
+            publish(new Update(book, true));
+            return item == null ? List.of() : List.of(item);
+        }
+        synchronized (pending) {
+            pending.put(seq, new Parsed(book, item));
+            List<Update> ready = new ArrayList<>();
+            List<Item> visible = new ArrayList<>();
+            int drained = 0;
+            Parsed next;
+            while ((next = pending.remove(nextToPublish)) != null) {
+                if (next.book() != null) ready.add(new Update(next.book(), true));
+                if (next.item() != null) visible.add(next.item());
+                nextToPublish++;
+                drained++;
+            }
+            // publish under the lock so that chunks from different workers keep their order
+            if (!ready.isEmpty()) publish(ready.toArray(new Update[0]));
+            inFlight.release(drained);
+            return visible;
+        }
     }
 
     @Override
-    protected void process(List<Book> chunks) {
-        processedCount += chunks.size();
-        onBooksFound.accept(chunks);
-        onProgress.accept(processedCount);
+    protected void process(List<Update> chunks) {
+        List<Book> added = new ArrayList<>();
+        List<Book> updated = new ArrayList<>();
+        for (Update u : chunks) {
+            // flush at every switch so that an update is never applied before the add it belongs to
+            if (u.added() && !updated.isEmpty()) {
+                flush(added, updated);
+            }
+            (u.added() ? added : updated).add(u.book());
+        }
+        flush(added, updated);
+        // skipped unchanged files still count as done
+        onProgress.accept(processedCount + (settings.isChangesOnly() ? catalogHits.get() : 0));
+    }
+
+    private void flush(List<Book> added, List<Book> updated) {
+        if (!added.isEmpty()) {
+            processedCount += added.size();
+            onBooksFound.accept(List.copyOf(added));
+            added.clear();
+        }
+        if (!updated.isEmpty()) {
+            onBooksUpdated.accept(List.copyOf(updated));
+            updated.clear();
+        }
     }
 
     @Override
@@ -0,0 +1,103 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Single-pass discovery of book files under the dropped roots. Each file is handed to the sink as
+ * soon as the walk reaches it, together with the attributes the walk already read, so nothing is
+ * listed or stat'ed twice. Directory links are followed, link loops are skipped.
+ */
+public class LibraryWalker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibraryWalker.class);
+
+    /** Receives book files in discovery order; may block to apply back-pressure. */
+    public interface Sink {
+        void accept(Path file, BasicFileAttributes attrs) throws InterruptedException;
+    }
+
+    private final BooleanSupplier cancelled;
+
+    public LibraryWalker(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    public static boolean isBookFile(Path path) {
+        String n = path.getFileName().toString().toLowerCase();
+        return n.endsWith(".pdf") || n.endsWith(".epub") || n.endsWith(".fb2")
+                || n.endsWith(".mobi") || n.endsWith(".azw") || n.endsWith(".azw3");
+    }
+
+    /** Walks every root in order and returns the number of book files handed to the sink. */
+    public int walk(List<Path> roots, Sink sink) throws InterruptedException {
+        Visitor visitor = new Visitor(sink);
+        for (Path root : roots) {
+            if (cancelled.getAsBoolean()) break;
+            try {
+                Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to walk {}", root, e);
+            }
+            if (visitor.interrupted != null) throw visitor.interrupted;
+        }
+        return visitor.found;
+    }
+
+    private class Visitor extends SimpleFileVisitor<Path> {
+        private final Sink sink;
+        private int found;
+        // FileVisitor methods may only throw IOException, so an interrupt is carried out by hand
+        private InterruptedException interrupted;
+
+        Visitor(Sink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return cancelled.getAsBoolean() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (cancelled.getAsBoolean()) return FileVisitResult.TERMINATE;
+            if (!attrs.isRegularFile() || !isBookFile(file)) return FileVisitResult.CONTINUE;
+            try {
+                sink.accept(file, attrs);
+                found++;
+                return FileVisitResult.CONTINUE;
+            } catch (InterruptedException e) {
+                interrupted = e;
+                return FileVisitResult.TERMINATE;
+            }
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            if (e instanceof FileSystemLoopException) {
+                LOGGER.debug("Skipping directory link loop at {}", file);
+            } else {
+                LOGGER.warn("Cannot read {}: {}", file, e.toString());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            if (e != null) LOGGER.warn("Listing of {} stopped early: {}", dir, e.toString());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
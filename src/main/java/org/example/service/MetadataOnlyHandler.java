@@ -0,0 +1,87 @@
+package org.example.service;
+
+import org.apache.tika.metadata.Metadata;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.List;
+
+/**
+ * Content handler for metadata-only parsing: body text is dropped instead of being buffered,
+ * and parsing is aborted as soon as the metadata we read in {@link MetadataService} is present.
+ */
+class MetadataOnlyHandler extends DefaultHandler {
+
+    /** The keys MetadataService.fromTika reads; each entry is satisfied by any one of its alternatives. */
+    static final List<List<String>> REQUIRED_KEYS = List.of(
+            List.of("dc:title"),
+            List.of("dc:creator"),
+            List.of("dc:language"),
+            List.of("dc:date", "fb2:date"),
+            List.of("dc:description", "fb2:annotation"));
+    /** Only FB2 metadata has these, so they are waited for once a parser has set an fb2 key. */
+    static final List<List<String>> FB2_KEYS = List.of(
+            List.of("fb2:genre"),
+            List.of("fb2:series-name"),
+            List.of("fb2:cover"));
+
+    private final Metadata metadata;
+    private final List<List<String>> requiredKeys;
+
+    MetadataOnlyHandler(Metadata metadata) {
+        this(metadata, REQUIRED_KEYS);
+    }
+
+    MetadataOnlyHandler(Metadata metadata, List<List<String>> requiredKeys) {
+        this.metadata = metadata;
+        this.requiredKeys = requiredKeys;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        // Parsers fill Metadata before (or while) emitting body elements, so every element is a checkpoint
+        if (hasRequiredKeys()) {
+            throw new StopParsingException();
+        }
+    }
+
+    private boolean hasRequiredKeys() {
+        if (!hasAll(requiredKeys)) return false;
+        for (String name : metadata.names()) {
+            if (name.startsWith("fb2:")) return hasAll(FB2_KEYS);
+        }
+        return true;
+    }
+
+    private boolean hasAll(List<List<String>> keys) {
+        next:
+        for (List<String> alternatives : keys) {
+            for (String key : alternatives) {
+                String v = metadata.get(key);
+                if (v != null && !v.isBlank()) continue next;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    static boolean isStopSignal(Throwable t) {
+        while (t != null) {
+            if (t instanceof StopParsingException) return true;
+            t = t.getCause();
+        }
+        return false;
+    }
+
+    static class StopParsingException extends SAXException {
+        StopParsingException() {
+            super("Required metadata found, body skipped");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Google Books answers that outlive the session: only the extracted {@link ExternalMetadataService.BookInfo}
+ * fields, in an append-only log at {@code ~/.someone/cache/metadata.bin}. The log is read once on first
+ * use into a map, so lookups never touch the disk; a later record for the same key wins. When the file
+ * grows past its cap it is rewritten with the live entries only, dropping those that expire soonest.
+ */
+public class MetadataResponseCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataResponseCache.class);
+    private static final int MAGIC = 0x534D4D43; // "SMMC"
+    // Bump when the meaning of the stored fields changes; older files are discarded
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+    static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private final Path file;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private long fileSize;
+
+    /** A stored answer; {@code info} is null for "no such volume". */
+    public record Entry(ExternalMetadataService.BookInfo info, long expiresAtMillis) {
+        boolean isValid(long now) {
+            return now < expiresAtMillis;
+        }
+    }
+
+    public MetadataResponseCache() {
+        this(Paths.get(System.getProperty("user.home"), ".someone", "cache", "metadata.bin"), DEFAULT_MAX_BYTES);
+    }
+
+    public MetadataResponseCache(Path file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+    }
+
+    /** The stored answer for the key, unless it has expired. */
+    public Optional<Entry> get(String key) {
+        ensureLoaded();
+        Entry entry = entries.get(key);
+        return entry != null && entry.isValid(System.currentTimeMillis()) ? Optional.of(entry) : Optional.empty();
+    }
+
+    public void put(String key, ExternalMetadataService.BookInfo info, Duration ttl) {
+        ensureLoaded();
+        Entry entry = new Entry(info, System.currentTimeMillis() + ttl.toMillis());
+        entries.put(key, entry);
+        synchronized (this) {
+            try {
+                append(encode(key, entry));
+                if (fileSize > maxBytes) compact();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write metadata cache {}: {}", file, e.toString());
+            }
+        }
+    }
+
+    public int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    /** Bytes on disk, stale records included until the next compaction. */
+    public synchronized long fileSize() {
+        ensureLoaded();
+        return fileSize;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            load();
+            loaded = true;
+        }
+    }
+
+    private void load() {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            LOGGER.warn("Metadata cache {} is unreadable, starting from scratch: {}", file, e.toString());
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            LOGGER.info("Metadata cache {} has an old format, starting from scratch", file);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int good = HEADER_SIZE;
+        while (buf.remaining() >= 4) {
+            int length = buf.getInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE || length > buf.remaining()) break;
+            byte[] record = new byte[length];
+            buf.get(record);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+                String key = readString(in);
+                Entry entry = readEntry(in);
+                if (entry.isValid(now)) {
+                    entries.put(key, entry);
+                } else {
+                    entries.remove(key);
+                }
+            } catch (IOException e) {
+                break;
+            }
+            good = buf.position();
+        }
+        fileSize = good;
+        if (good < data.length) {
+            // a record cut short by a crash: drop it so the next append starts on a boundary
+            LOGGER.warn("Metadata cache {} has a damaged tail, truncating at {} of {} bytes", file, good, data.length);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(good);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to truncate metadata cache {}", file, e);
+            }
+        }
+        LOGGER.info("Loaded {} metadata cache entries from {}", entries.size(), file);
+    }
+
+    private void append(byte[] record) throws IOException {
+        if (fileSize == 0) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            writeFile(file, List.of(record));
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(record);
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+        fileSize += record.length;
+    }
+
+    /** Rewrites the log with live entries only, keeping it at three quarters of the cap at most. */
+    private void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(e -> !e.isValid(now));
+        List<Map.Entry<String, Entry>> live = new ArrayList<>(entries.entrySet());
+        // the longest-lived survive: misses and old answers expire first anyway
+        live.sort(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().expiresAtMillis()).reversed());
+        List<byte[]> records = new ArrayList<>();
+        long budget = maxBytes * 3 / 4 - HEADER_SIZE;
+        for (Map.Entry<String, Entry> e : live) {
+            byte[] record = encode(e.getKey(), e.getValue());
+            if (budget < record.length) {
+                entries.remove(e.getKey());
+                continue;
+            }
+            budget -= record.length;
+            records.add(record);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        writeFile(tmp, records);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOGGER.info("Compacted metadata cache {}: {} entries, {} bytes", file, records.size(), fileSize);
+    }
+
+    private void writeFile(Path target, List<byte[]> records) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(target))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long size = HEADER_SIZE;
+            for (byte[] record : records) {
+                out.write(record);
+                size += record.length;
+            }
+            fileSize = size;
+        }
+    }
+
+    /** Length-prefixed: key, expiry, then the four fields when the volume was found. */
+    private static byte[] encode(String key, Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            writeString(out, key);
+            out.writeLong(entry.expiresAtMillis());
+            ExternalMetadataService.BookInfo info = entry.info();
+            out.writeBoolean(info != null);
+            if (info != null) {
+                writeString(out, info.genre());
+                writeString(out, info.year());
+                writeString(out, info.description());
+                writeString(out, info.coverUrl());
+            }
+        }
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(record.length - 4);
+        return record;
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        long expiresAt = in.readLong();
+        if (!in.readBoolean()) return new Entry(null, expiresAt);
+        return new Entry(new ExternalMetadataService.BookInfo(
+                readString(in), readString(in), readString(in), readString(in)), expiresAt);
+    }
+
+    // writeUTF is limited to 64 KB, descriptions can be longer
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > MAX_RECORD_SIZE) throw new EOFException("Corrupt field length " + length);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataResponseCache{" + file + ", entries=" + entries.size() + '}';
+    }
+}
@@ -1,5 +1,6 @@
 package org.example.service;
 
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
@@ -8,40 +9,231 @@ import org.apache.tika.sax.BodyContentHandler;
 import org.example.model.Book;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
 public class MetadataService {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataService.class);
+    private static final Executor WORK = task -> Thread.ofVirtual().name("metadata").start(task);
+
+    public enum ParseMode {
+        /** Tika extracts and buffers the whole body text (old behaviour, the text is never used). */
+        FULL_TEXT,
+        /**
+         * Body text is discarded; parsing stops early only once every key the book is built from is
+         * set (title, creator, language, date, description), which most PDFs never provide.
+         */
+        METADATA_ONLY
+    }
+
     private final Parser parser;
     private final ExternalMetadataService external;
+    private final ParseMode parseMode;
+    private final List<BookHeaderReader> readers;
+    // Tika parsing is CPU-bound: cap it even when many scan threads call us at once
+    private final Semaphore parsePermits;
+    private volatile ThumbnailRenderer thumbnails;
 
     public MetadataService() {
         this(new AutoDetectParser(), new ExternalMetadataService());
     }
 
+    public MetadataService(int parseThreads) {
+        this(new AutoDetectParser(), new ExternalMetadataService(), parseThreads);
+    }
+
     public MetadataService(Parser parser, ExternalMetadataService external) {
+        this(parser, external, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MetadataService(Parser parser, ExternalMetadataService external, int parseThreads) {
+        this(parser, external, parseThreads, ParseMode.METADATA_ONLY);
+    }
+
+    public MetadataService(Parser parser, ExternalMetadataService external, int parseThreads, ParseMode parseMode) {
+        this(parser, external, parseThreads, parseMode, defaultReaders());
+    }
+
+    public MetadataService(Parser parser, ExternalMetadataService external, int parseThreads, ParseMode parseMode,
+                           List<BookHeaderReader> readers) {
         this.parser = parser;
         this.external = external;
+        this.parseMode = parseMode;
+        this.readers = readers;
+        this.parsePermits = new Semaphore(Math.max(1, parseThreads), true);
+    }
+
+    /** Offline: books are built from the files and whatever the local caches already know. */
+    public void setOffline(boolean offline) {
+        external.setOffline(offline);
+    }
+
+    public boolean isOffline() {
+        return external != null && external.isOffline();
+    }
+
+    /** Renders the UI sizes of every cover and author photo as soon as the scan has them; null: off. */
+    public void setThumbnails(ThumbnailRenderer thumbnails) {
+        this.thumbnails = thumbnails;
+    }
+
+    public ExternalMetadataService getExternalService() {
+        return external;
     }
 
+    public static List<BookHeaderReader> defaultReaders() {
+        return List.of(new Fb2HeaderReader(), new EpubHeaderReader(), new PdfHeaderReader(), new MobiHeaderReader());
+    }
+
+    /**
+     * A book from one of the online stages. {@code complete} is false when a lookup got no answer,
+     * because the host was skipped, the request failed or the scan was interrupted: the placeholders
+     * filled in for it are not the final word and the book is worth looking up again.
+     */
+    public record Result(Book book, boolean complete) {}
+
     public Book extractMetadata(Path path) {
-        Metadata md = new Metadata();
+        return extract(path).book();
+    }
 
-        try (InputStream in = Files.newInputStream(path)) {
-            parser.parse(in, new BodyContentHandler(-1), md, new ParseContext());
-        } catch (Exception e) {
-            LOGGER.error("Error parsing metadata for file: {}", path, e);
+    /** The whole scan of one file, local parse and online lookups, waiting for each. */
+    public Result extract(Path path) {
+        BookHeader header = readHeader(path);
+        Book book = localBook(path, header);
+        Result text = await(enrichTextAsync(book, header), book);
+        Result images = await(fetchImagesAsync(text.book(), header), text.book());
+        return new Result(images.book(), text.complete() && images.complete());
+    }
+
+    /** Scan stage 1: the book as far as the file itself describes it, no network calls. */
+    public Book localBook(Path path, BookHeader header) {
+        String title = normalizeTitle(defaultIfBlank(header.getTitle(), stripExtension(path.getFileName().toString())));
+        return Book.builder()
+                .title(title)
+                .author(defaultIfBlank(header.getAuthor(), "Unknown Author"))
+                .language(normalizeLanguage(defaultIfBlank(header.getLanguage(), "Unknown")))
+                .series(defaultIfBlank(header.getSeries(), "No Series"))
+                .seriesIndex(header.getSeriesIndex())
+                .genre(defaultIfBlank(header.getGenre(), null))
+                .year(header.getYear())
+                .description(header.getDescription())
+                .filePath(path)
+                .format(ext(path))
+                .cover(header.getCover())
+                .build();
+    }
+
+    public Book enrichText(Book book, BookHeader header) {
+        return await(enrichTextAsync(book, header), book).book();
+    }
+
+    /**
+     * Scan stage 2: genre, year and description the file did not have, from the online sources.
+     * Completes with the same instance when the file had them all; a failed lookup leaves the
+     * placeholders and an incomplete result.
+     */
+    public CompletableFuture<Result> enrichTextAsync(Book book, BookHeader header) {
+        boolean needGenre = defaultIfBlank(header.getGenre(), null) == null;
+        boolean needYear = header.getYear() == null;
+        boolean needDescription = header.getDescription() == null;
+        if (!needGenre && !needYear && !needDescription) return CompletableFuture.completedFuture(new Result(book, true));
+
+        // one lookup answers all three
+        return external.fetchAllAsync(book.getTitle(), book.getAuthor(), header.getIsbn()).handle((found, error) -> {
+            Optional<ExternalMetadataService.BookInfo> info = error == null ? found : Optional.empty();
+            Book.Builder b = book.toBuilder();
+            if (needGenre) {
+                b.genre(info.map(ExternalMetadataService.BookInfo::genre).orElse("General"));
+            }
+            if (needYear) {
+                b.year(info.map(ExternalMetadataService.BookInfo::year).orElse("Unknown Year"));
+            }
+            if (needDescription) {
+                b.description(info.map(ExternalMetadataService.BookInfo::description).orElse(""));
+            }
+            return new Result(b.build(), error == null);
+        });
+    }
+
+    public Book fetchImages(Book book, BookHeader header) {
+        return await(fetchImagesAsync(book, header), book).book();
+    }
+
+    /** Scan stage 3: the cover when the file has none, and the author photo, fetched side by side. */
+    public CompletableFuture<Result> fetchImagesAsync(Book book, BookHeader header) {
+        CompletableFuture<Optional<byte[]>> cover = header.getCover() == null
+                ? external.fetchCoverAsync(book.getTitle(), book.getAuthor(), header.getIsbn())
+                : CompletableFuture.completedFuture(Optional.empty());
+        CompletableFuture<Optional<byte[]>> photo = external.fetchAuthorPhotoAsync(book.getAuthor());
+        // rendering thumbnails is real work, keep it off whatever thread completed the download
+        return CompletableFuture.allOf(cover, photo).handleAsync((ignored, error) -> {
+            Book.Builder b = book.toBuilder();
+            if (header.getCover() == null) {
+                b.cover(found(cover).orElse(null));
+            }
+            b.authorPhoto(found(photo).orElse(null));
+            Book result = b.build();
+            ThumbnailRenderer renderer = thumbnails;
+            if (renderer != null) {
+                renderer.prepare(result.getCoverRef(), ThumbnailRenderer.Size.TREE, ThumbnailRenderer.Size.DETAILS);
+                renderer.prepare(result.getAuthorPhotoRef(), ThumbnailRenderer.Size.AUTHOR);
+            }
+            return new Result(result, error == null);
+        }, WORK);
+    }
+
+    /** What a finished download brought; nothing when it failed. */
+    private static Optional<byte[]> found(CompletableFuture<Optional<byte[]>> done) {
+        return done.isCompletedExceptionally() ? Optional.empty() : done.join();
+    }
+
+    /** The sequential scan waits for each book; an interrupted wait keeps what the book had. */
+    private static Result await(CompletableFuture<Result> future, Book fallback) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(fallback, false);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw new CompletionException(e.getCause());
         }
+    }
 
-        String title = normalizeTitle(defaultIfBlank(md.get("dc:title"), stripExtension(path.getFileName().toString())));
-        String author = defaultIfBlank(md.get("dc:creator"), "Unknown Author");
-        String language = normalizeLanguage(defaultIfBlank(md.get("dc:language"), "Unknown"));
-        String series = defaultIfBlank(md.get("fb2:series-name"), "No Series");
-        String genre = defaultIfBlank(md.get("fb2:genre"), null);
+    /** Local metadata: a native reader for the format when there is one, Tika otherwise. */
+    BookHeader readHeader(Path path) {
+        try {
+            parsePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BookHeader();
+        }
+        try {
+            for (BookHeaderReader reader : readers) {
+                if (!reader.supports(path)) continue;
+                try {
+                    Optional<BookHeader> header = reader.read(path);
+                    if (header.isPresent()) return header.get();
+                } catch (Exception e) {
+                    LOGGER.warn("{} failed for {}, falling back to Tika", reader.getClass().getSimpleName(), path, e);
+                }
+            }
+            return fromTika(parseLocal(path));
+        } finally {
+            parsePermits.release();
+        }
+    }
+
+    private BookHeader fromTika(Metadata md) {
         String year = md.get("dc:date");
         if (year == null) {
             year = md.get("fb2:date");
@@ -50,45 +242,41 @@ public class MetadataService {
         if (description == null) {
             description = md.get("fb2:annotation");
         }
+        return new BookHeader()
+                .title(md.get("dc:title"))
+                .author(md.get("dc:creator"))
+                .language(md.get("dc:language"))
+                .series(md.get("fb2:series-name"))
+                .genre(md.get("fb2:genre"))
+                .year(year)
+                .description(description)
+                .cover(extractCoverFromTika(md));
+    }
 
-        if (genre == null || year == null || description == null) {
-            if (genre == null) {
-                genre = external.fetchGenre(title, author).orElse("General");
-            }
-            if (year == null) {
-                year = external.fetchYear(title, author).orElse("Unknown Year");
-            }
-            if (description == null) {
-                description = external.fetchDescription(title, author).orElse("");
+    Metadata parseLocal(Path path) {
+        Metadata md = new Metadata();
+        ContentHandler handler = parseMode == ParseMode.FULL_TEXT
+                ? new BodyContentHandler(-1)
+                : new MetadataOnlyHandler(md);
+        // TikaInputStream backed by the file lets PDF/ZIP parsers seek instead of spooling the stream
+        try (InputStream in = TikaInputStream.get(path, md)) {
+            parser.parse(in, handler, md, new ParseContext());
+        } catch (Exception e) {
+            if (MetadataOnlyHandler.isStopSignal(e)) {
+                LOGGER.debug("Stopped parsing {} after the header", path);
+            } else {
+                LOGGER.error("Error parsing metadata for file: {}", path, e);
             }
         }
-
-        byte[] cover = extractCoverFromTika(md);
-        if (cover == null) {
-            cover = external.fetchCover(title, author).orElse(null);
-        }
-        byte[] authorPhoto = external.fetchAuthorPhoto(author).orElse(null);
-
-        return Book.builder()
-                .title(title)
-                .author(author)
-                .language(language)
-                .series(series)
-                .genre(genre)
-                .year(year)
-                .description(description)
-                .filePath(path)
-                .format(ext(path))
-                .cover(cover)
-                .authorPhoto(authorPhoto)
-                .build();
+        return md;
     }
 
     private byte[] extractCoverFromTika(Metadata md) {
         String base64 = md.get("fb2:cover");
         if (base64 != null && !base64.isBlank()) {
             try {
-                return java.util.Base64.getDecoder().decode(base64.replaceAll("\\s", ""));
+                // MIME decoder ignores the line breaks, no need to strip them into a new string first
+                return java.util.Base64.getMimeDecoder().decode(base64);
             } catch (Exception e) {
                 LOGGER.warn("Failed to decode base64 cover", e);
             }
@@ -0,0 +1,162 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.example.service.HeaderSupport.blankToNull;
+import static org.example.service.HeaderSupport.stripTags;
+import static org.example.service.HeaderSupport.year;
+
+/**
+ * Reads MOBI/AZW metadata from the memory-mapped PalmDB container: the record table, the MOBI
+ * header in record 0 and its EXTH block. The cover is the image record referenced by EXTH 201;
+ * text records are never decompressed.
+ */
+public class MobiHeaderReader implements BookHeaderReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MobiHeaderReader.class);
+
+    private static final int PDB_HEADER_SIZE = 78;
+    private static final int PALMDOC_HEADER_SIZE = 16;
+    private static final int NO_INDEX = 0xFFFFFFFF;
+
+    private static final int EXTH_AUTHOR = 100;
+    private static final int EXTH_DESCRIPTION = 103;
+    private static final int EXTH_ISBN = 104;
+    private static final int EXTH_SUBJECT = 105;
+    private static final int EXTH_PUBLISH_DATE = 106;
+    private static final int EXTH_COVER_OFFSET = 201;
+    private static final int EXTH_THUMB_OFFSET = 202;
+    private static final int EXTH_UPDATED_TITLE = 503;
+    private static final int EXTH_LANGUAGE = 524;
+
+    // Windows primary language ids used in the MOBI locale field
+    private static final Map<Integer, String> LOCALES = Map.ofEntries(
+            Map.entry(0x04, "zh"), Map.entry(0x07, "de"), Map.entry(0x09, "en"), Map.entry(0x0A, "es"),
+            Map.entry(0x0C, "fr"), Map.entry(0x10, "it"), Map.entry(0x11, "ja"), Map.entry(0x13, "nl"),
+            Map.entry(0x15, "pl"), Map.entry(0x16, "pt"), Map.entry(0x19, "ru"), Map.entry(0x22, "uk"));
+
+    @Override
+    public boolean supports(Path path) {
+        String n = path.getFileName().toString().toLowerCase();
+        return n.endsWith(".mobi") || n.endsWith(".azw") || n.endsWith(".azw3");
+    }
+
+    @Override
+    public Optional<BookHeader> read(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < PDB_HEADER_SIZE || ch.size() > Integer.MAX_VALUE) return Optional.empty();
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return read(buf);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            LOGGER.warn("Truncated or malformed MOBI file {}: {}", path, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private Optional<BookHeader> read(ByteBuffer buf) {
+        if (!"BOOKMOBI".equals(ascii(buf, 60, 8)) && !"TEXtREAd".equals(ascii(buf, 60, 8))) {
+            return Optional.empty();
+        }
+        int recordCount = buf.getShort(76) & 0xFFFF;
+        if (recordCount == 0) return Optional.empty();
+        int rec0 = recordOffset(buf, 0);
+        // Strings in the MOBI and EXTH headers must lie inside record 0
+        int rec0End = recordCount > 1 ? Math.min(recordOffset(buf, 1), buf.limit()) : buf.limit();
+
+        if (!"MOBI".equals(ascii(buf, rec0 + PALMDOC_HEADER_SIZE, 4))) {
+            return Optional.empty(); // plain PalmDOC without a MOBI header: nothing but the name
+        }
+        int mobiHeaderLength = buf.getInt(rec0 + 20);
+        Charset charset = buf.getInt(rec0 + 28) == 65001 ? StandardCharsets.UTF_8 : Charset.forName("windows-1252");
+        int fullNameOffset = buf.getInt(rec0 + 84);
+        int fullNameLength = buf.getInt(rec0 + 88);
+        int locale = buf.getInt(rec0 + 92);
+        int firstImage = mobiHeaderLength >= 0x5C ? buf.getInt(rec0 + 108) : NO_INDEX;
+        boolean hasExth = mobiHeaderLength >= 0x74 && (buf.getInt(rec0 + 128) & 0x40) != 0;
+
+        BookHeader header = new BookHeader();
+        if (fullNameLength > 0 && fullNameLength < 4096) {
+            header.title(blankToNull(string(buf, rec0 + fullNameOffset, fullNameLength, charset, rec0End)));
+        }
+        header.language(LOCALES.get(locale & 0xFF));
+
+        int coverOffset = NO_INDEX;
+        int thumbOffset = NO_INDEX;
+        if (hasExth) {
+            int exth = rec0 + PALMDOC_HEADER_SIZE + mobiHeaderLength;
+            if ("EXTH".equals(ascii(buf, exth, 4))) {
+                int count = buf.getInt(exth + 8);
+                int pos = exth + 12;
+                for (int i = 0; i < count; i++) {
+                    int type = buf.getInt(pos);
+                    int len = buf.getInt(pos + 4);
+                    if (len < 8) break;
+                    int data = pos + 8;
+                    int dataLen = len - 8;
+                    switch (type) {
+                        case EXTH_AUTHOR -> {
+                            if (header.getAuthor() == null) header.author(blankToNull(string(buf, data, dataLen, charset, rec0End)));
+                        }
+                        case EXTH_DESCRIPTION -> header.description(stripTags(string(buf, data, dataLen, charset, rec0End)));
+                        case EXTH_ISBN -> header.isbn(blankToNull(string(buf, data, dataLen, charset, rec0End)));
+                        case EXTH_SUBJECT -> {
+                            if (header.getGenre() == null) header.genre(blankToNull(string(buf, data, dataLen, charset, rec0End)));
+                        }
+                        case EXTH_PUBLISH_DATE -> header.year(year(string(buf, data, dataLen, charset, rec0End)));
+                        case EXTH_COVER_OFFSET -> coverOffset = dataLen >= 4 ? buf.getInt(data) : NO_INDEX;
+                        case EXTH_THUMB_OFFSET -> thumbOffset = dataLen >= 4 ? buf.getInt(data) : NO_INDEX;
+                        case EXTH_UPDATED_TITLE -> header.title(blankToNull(string(buf, data, dataLen, charset, rec0End)));
+                        case EXTH_LANGUAGE -> header.language(blankToNull(string(buf, data, dataLen, charset, rec0End)));
+                        default -> { }
+                    }
+                    pos += len;
+                }
+            }
+        }
+
+        int imageOffset = coverOffset != NO_INDEX ? coverOffset : thumbOffset;
+        if (firstImage != NO_INDEX && imageOffset != NO_INDEX) {
+            header.cover(record(buf, firstImage + imageOffset, recordCount));
+        }
+        return Optional.of(header);
+    }
+
+    private int recordOffset(ByteBuffer buf, int index) {
+        return buf.getInt(PDB_HEADER_SIZE + index * 8);
+    }
+
+    private byte[] record(ByteBuffer buf, int index, int recordCount) {
+        if (index < 0 || index >= recordCount) return null;
+        int start = recordOffset(buf, index);
+        int end = index + 1 < recordCount ? recordOffset(buf, index + 1) : buf.limit();
+        if (start <= 0 || end <= start || end > buf.limit()) return null;
+        byte[] data = new byte[end - start];
+        buf.get(start, data);
+        return data;
+    }
+
+    private String ascii(ByteBuffer buf, int offset, int length) {
+        return string(buf, offset, length, StandardCharsets.US_ASCII, buf.limit());
+    }
+
+    /** Lengths come from the file: checked against the record before anything is allocated. */
+    private String string(ByteBuffer buf, int offset, int length, Charset charset, int end) {
+        if (offset < 0 || length < 0 || offset > end - length) {
+            throw new IndexOutOfBoundsException("string at " + offset + "+" + length + " outside record ending at " + end);
+        }
+        byte[] bytes = new byte[length];
+        buf.get(offset, bytes);
+        return new String(bytes, charset).replace("\u0000", "");
+    }
+}
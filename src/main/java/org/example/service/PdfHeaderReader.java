@@ -0,0 +1,747 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.example.service.HeaderSupport.blankToNull;
+import static org.example.service.HeaderSupport.year;
+
+/**
+ * Reads the document information dictionary and the XMP packet of a PDF with positional
+ * {@link FileChannel} reads: {@code startxref} from the tail, the xref sections it points to,
+ * then only the trailer, {@code /Info}, catalog and metadata objects. Cost does not depend on
+ * file size. Encrypted or unparseable files return empty so that Tika takes over.
+ */
+public class PdfHeaderReader implements BookHeaderReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfHeaderReader.class);
+    private static final int TAIL_SIZE = 2048;
+    private static final int WINDOW = 4096;
+    private static final int MAX_OBJECT_SIZE = 1024 * 1024;
+    private static final int MAX_XREF_SECTIONS = 64;
+    private static final String DC = "http://purl.org/dc/elements/1.1/";
+
+    @Override
+    public boolean supports(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".pdf");
+    }
+
+    @Override
+    public Optional<BookHeader> read(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            PdfFile pdf = new PdfFile(ch);
+            if (!pdf.loadXref()) {
+                return Optional.empty();
+            }
+            if (pdf.trailer.containsKey("Encrypt")) {
+                LOGGER.debug("{} is encrypted, leaving it to Tika", path);
+                return Optional.empty();
+            }
+            BookHeader header = new BookHeader();
+            if (pdf.resolve(pdf.trailer.get("Info")) instanceof Map<?, ?> info) {
+                header.title(text(pdf.resolve(info.get("Title"))));
+                header.author(text(pdf.resolve(info.get("Author"))));
+                header.description(text(pdf.resolve(info.get("Subject"))));
+            }
+            if (pdf.resolve(pdf.trailer.get("Root")) instanceof Map<?, ?> catalog) {
+                header.language(text(pdf.resolve(catalog.get("Lang"))));
+                Object metadataRef = catalog.get("Metadata");
+                if (header.getTitle() == null || header.getAuthor() == null) {
+                    byte[] xmp = pdf.readStream(metadataRef);
+                    if (xmp != null) {
+                        readXmp(xmp, header);
+                    }
+                }
+            }
+            // the structure was readable: Tika would report the same (possibly empty) Info/XMP
+            return Optional.of(header);
+        } catch (PdfSyntaxException | DataFormatException e) {
+            LOGGER.debug("Cannot read PDF structure of {}: {}", path, e.getMessage());
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            // a malformed file the checks below did not anticipate: still Tika's job, not an error
+            LOGGER.debug("Malformed PDF structure in {}: {}", path, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    /* ===================== XMP ===================== */
+
+    private void readXmp(byte[] xmp, BookHeader header) {
+        try {
+            XMLStreamReader xml = HeaderSupport.xmlFactory().createXMLStreamReader(new ByteArrayInputStream(xmp));
+            try {
+                String property = null; // current dc:* property
+                StringBuilder text = new StringBuilder();
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        if (DC.equals(xml.getNamespaceURI())) {
+                            property = xml.getLocalName();
+                        }
+                        text.setLength(0);
+                    } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                        text.append(xml.getText());
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (property != null && ("li".equals(xml.getLocalName()) || DC.equals(xml.getNamespaceURI()))) {
+                            applyXmp(property, blankToNull(text.toString()), header);
+                        }
+                        if (DC.equals(xml.getNamespaceURI())) {
+                            property = null;
+                        }
+                        text.setLength(0);
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            LOGGER.debug("Malformed XMP packet: {}", e.getMessage());
+        }
+    }
+
+    private void applyXmp(String property, String value, BookHeader header) {
+        if (value == null) return;
+        switch (property) {
+            case "title" -> {
+                if (header.getTitle() == null) header.title(value);
+            }
+            case "creator" -> {
+                if (header.getAuthor() == null) header.author(value);
+            }
+            case "description" -> {
+                if (header.getDescription() == null) header.description(value);
+            }
+            case "language" -> {
+                if (header.getLanguage() == null) header.language(value);
+            }
+            case "date" -> {
+                if (header.getYear() == null) header.year(year(value));
+            }
+            default -> { }
+        }
+    }
+
+    /** PDF text string: UTF-16BE or UTF-8 with a BOM, PDFDocEncoding (close to Latin-1) otherwise. */
+    static String text(Object value) {
+        if (!(value instanceof byte[] b)) return null;
+        String s;
+        if (b.length >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF) {
+            s = new String(b, 2, b.length - 2, StandardCharsets.UTF_16BE);
+        } else if (b.length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF) {
+            s = new String(b, 3, b.length - 3, StandardCharsets.UTF_8);
+        } else {
+            s = new String(b, StandardCharsets.ISO_8859_1);
+        }
+        return blankToNull(s.replace("\u0000", ""));
+    }
+
+    /* ===================== FILE STRUCTURE ===================== */
+
+    record Ref(int num, int gen) { }
+
+    record Name(String value) { }
+
+    /** One xref location: an offset in the file, or an index inside an object stream. */
+    private record XrefEntry(long offset, int objectStream, int index) {
+        boolean compressed() { return objectStream >= 0; }
+    }
+
+    /** Classic xref subsection: entries are fixed 20-byte lines, so any one can be read directly. */
+    private record Subsection(int first, int count, long entriesOffset) { }
+
+    private static class PdfFile {
+        private final FileChannel ch;
+        private final long size;
+        Map<String, Object> trailer;
+        // newest section first; a section is either a list of subsections or a decoded xref stream
+        private final List<Object> sections = new ArrayList<>();
+        private final Map<Integer, List<Object>> objectStreams = new HashMap<>();
+
+        PdfFile(FileChannel ch) throws IOException {
+            this.ch = ch;
+            this.size = ch.size();
+        }
+
+        boolean loadXref() throws IOException, PdfSyntaxException, DataFormatException {
+            int tailLen = (int) Math.min(TAIL_SIZE, size);
+            byte[] tail = readAt(size - tailLen, tailLen);
+            int idx = lastIndexOf(tail, "startxref".getBytes(StandardCharsets.US_ASCII));
+            if (idx < 0) return false;
+            Lexer lx = new Lexer(tail, idx + "startxref".length());
+            if (!(lx.next() instanceof Number start)) return false;
+
+            long offset = start.longValue();
+            Deque<Long> seen = new ArrayDeque<>();
+            while (offset > 0 && offset < size && !seen.contains(offset) && seen.size() < MAX_XREF_SECTIONS) {
+                seen.push(offset);
+                Map<String, Object> dict = readSection(offset);
+                if (trailer == null) {
+                    trailer = dict;
+                }
+                // hybrid files keep compressed objects in an extra xref stream next to the table
+                if (dict.get("XRefStm") instanceof Number stm && stm.longValue() < size) {
+                    readSection(stm.longValue());
+                }
+                offset = dict.get("Prev") instanceof Number prev ? prev.longValue() : -1;
+            }
+            return trailer != null;
+        }
+
+        private Map<String, Object> readSection(long offset) throws IOException, PdfSyntaxException, DataFormatException {
+            byte[] head = readAt(offset, (int) Math.min(WINDOW, size - offset));
+            Lexer lx = new Lexer(head, 0);
+            lx.skipWhitespace();
+            if (lx.startsWith("xref")) {
+                return readXrefTable(offset + lx.pos + 4);
+            }
+            // PDF 1.5 cross-reference stream: "n g obj << /Type /XRef ... >> stream"
+            IndirectObject obj = readObjectAt(offset);
+            if (!(obj.value instanceof Map<?, ?> dict) || !new Name("XRef").equals(dict.get("Type"))) {
+                throw new PdfSyntaxException("startxref does not point to an xref section");
+            }
+            sections.add(decodeXrefStream(castDict(dict), obj.streamData()));
+            return castDict(dict);
+        }
+
+        private Map<String, Object> readXrefTable(long pos) throws IOException, PdfSyntaxException, DataFormatException {
+            List<Subsection> subsections = new ArrayList<>();
+            while (true) {
+                byte[] line = readAt(pos, (int) Math.min(WINDOW, size - pos));
+                Lexer lx = new Lexer(line, 0);
+                lx.skipWhitespace();
+                if (lx.startsWith("trailer")) {
+                    lx.pos += "trailer".length();
+                    sections.add(subsections);
+                    return castDict(readWholeObject(pos + lx.pos, Lexer::next));
+                }
+                if (!(lx.next() instanceof Number first) || !(lx.next() instanceof Number count)) {
+                    throw new PdfSyntaxException("Bad xref subsection header");
+                }
+                lx.skipWhitespace();
+                long entries = pos + lx.pos;
+                subsections.add(new Subsection(first.intValue(), count.intValue(), entries));
+                pos = entries + 20L * count.intValue();
+            }
+        }
+
+        private XrefEntry lookup(int num) throws IOException, PdfSyntaxException {
+            for (Object section : sections) {
+                if (section instanceof Map<?, ?> table) {
+                    XrefEntry e = (XrefEntry) table.get(num);
+                    if (e != null) return e;
+                } else {
+                    for (Object o : (List<?>) section) {
+                        Subsection s = (Subsection) o;
+                        if (num < s.first() || num >= s.first() + s.count()) continue;
+                        byte[] entry = readAt(s.entriesOffset() + 20L * (num - s.first()), 18);
+                        if (entry.length < 18) throw new PdfSyntaxException("Truncated xref entry " + num);
+                        String line = new String(entry, StandardCharsets.US_ASCII);
+                        if (line.charAt(17) != 'n') return null; // free entry
+                        try {
+                            return new XrefEntry(Long.parseLong(line.substring(0, 10).trim()), -1, 0);
+                        } catch (NumberFormatException e) {
+                            throw new PdfSyntaxException("Bad xref entry " + num);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        Object resolve(Object value) throws IOException, PdfSyntaxException, DataFormatException {
+            for (int depth = 0; value instanceof Ref ref && depth < 8; depth++) {
+                value = readObject(ref.num()).value;
+            }
+            return value;
+        }
+
+        IndirectObject readObject(int num) throws IOException, PdfSyntaxException, DataFormatException {
+            XrefEntry entry = lookup(num);
+            if (entry == null) return new IndirectObject(null, -1, null);
+            if (!entry.compressed()) return readObjectAt(entry.offset());
+
+            List<Object> objects = objectStreams.get(entry.objectStream());
+            if (objects == null) {
+                objects = readObjectStream(entry.objectStream());
+                objectStreams.put(entry.objectStream(), objects);
+            }
+            Object value = entry.index() < objects.size() ? objects.get(entry.index()) : null;
+            return new IndirectObject(value, -1, null);
+        }
+
+        private List<Object> readObjectStream(int num) throws IOException, PdfSyntaxException, DataFormatException {
+            IndirectObject stm = readObject(num);
+            if (!(stm.value instanceof Map<?, ?> dict)) throw new PdfSyntaxException("Bad object stream " + num);
+            byte[] data = stm.streamData();
+            int n = count(dict.get("N"), "object stream size");
+            int first = count(dict.get("First"), "object stream offset");
+            // every object takes at least a few bytes of header: a larger N is garbage
+            if (n > data.length || first > data.length) throw new PdfSyntaxException("Bad object stream " + num);
+            Lexer header = new Lexer(data, 0);
+            int[] offsets = new int[n];
+            for (int i = 0; i < n; i++) {
+                header.next(); // object number
+                offsets[i] = count(header.next(), "object offset");
+            }
+            List<Object> objects = new ArrayList<>(n);
+            for (int off : offsets) {
+                objects.add(new Lexer(data, first + off).next());
+            }
+            return objects;
+        }
+
+        /** Object at a file offset; for streams remembers where the data starts. */
+        private IndirectObject readObjectAt(long offset) throws IOException, PdfSyntaxException, DataFormatException {
+            IndirectObject[] result = new IndirectObject[1];
+            readWholeObject(offset, lx -> {
+                lx.next();
+                lx.next();
+                if (!lx.keyword("obj")) throw new PdfSyntaxException("Expected obj at " + offset);
+                Object value = lx.next();
+                long dataStart = -1;
+                if (value instanceof Map<?, ?> && lx.keyword("stream")) {
+                    if (lx.pos < lx.buf.length && lx.buf[lx.pos] == '\r') lx.pos++;
+                    if (lx.pos < lx.buf.length && lx.buf[lx.pos] == '\n') lx.pos++;
+                    dataStart = offset + lx.pos;
+                }
+                result[0] = new IndirectObject(value, dataStart, this);
+                return value;
+            });
+            return result[0];
+        }
+
+        /** Parses with a growing window until the object fits (dictionaries can be long). */
+        private Object readWholeObject(long offset, LexerAction action) throws IOException, PdfSyntaxException, DataFormatException {
+            int window = WINDOW;
+            while (true) {
+                int len = (int) Math.min(window, size - offset);
+                try {
+                    return action.apply(new Lexer(readAt(offset, len), 0));
+                } catch (EndOfBufferException e) {
+                    if (len < window || window >= MAX_OBJECT_SIZE) throw new PdfSyntaxException("Object too large at " + offset);
+                    window *= 4;
+                }
+            }
+        }
+
+        byte[] readStream(Object ref) throws IOException, PdfSyntaxException, DataFormatException {
+            if (!(ref instanceof Ref r)) return null;
+            IndirectObject obj = readObject(r.num());
+            return obj.dataStart >= 0 ? obj.streamData() : null;
+        }
+
+        private Map<Integer, XrefEntry> decodeXrefStream(Map<String, Object> dict, byte[] data) throws PdfSyntaxException {
+            if (!(dict.get("W") instanceof List<?> w) || w.size() != 3) throw new PdfSyntaxException("Bad xref stream widths");
+            int w0 = width(w.get(0)), w1 = width(w.get(1)), w2 = width(w.get(2));
+            int rowLen = w0 + w1 + w2;
+            List<?> index = dict.get("Index") instanceof List<?> l ? l : List.of(0, count(dict.get("Size"), "xref stream size"));
+            Map<Integer, XrefEntry> table = new HashMap<>();
+            int row = 0;
+            for (int i = 0; i + 1 < index.size(); i += 2) {
+                int first = count(index.get(i), "xref stream index");
+                int count = count(index.get(i + 1), "xref stream index");
+                for (int k = 0; k < count; k++, row++) {
+                    int p = row * rowLen;
+                    if (p + rowLen > data.length) throw new PdfSyntaxException("Truncated xref stream");
+                    long type = w0 == 0 ? 1 : field(data, p, w0);
+                    long f2 = field(data, p + w0, w1);
+                    long f3 = field(data, p + w0 + w1, w2);
+                    if (type == 1) {
+                        table.putIfAbsent(first + k, new XrefEntry(f2, -1, 0));
+                    } else if (type == 2) {
+                        table.putIfAbsent(first + k, new XrefEntry(0, (int) f2, (int) f3));
+                    }
+                }
+            }
+            return table;
+        }
+
+        byte[] readAt(long pos, int len) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(Math.max(0, len));
+            while (buf.hasRemaining()) {
+                int n = ch.read(buf, pos + buf.position());
+                if (n < 0) break;
+            }
+            byte[] out = new byte[buf.position()];
+            buf.flip().get(out);
+            return out;
+        }
+    }
+
+    private record IndirectObject(Object value, long dataStart, PdfFile file) {
+        byte[] streamData() throws IOException, PdfSyntaxException, DataFormatException {
+            if (dataStart < 0 || !(value instanceof Map<?, ?> dict)) throw new PdfSyntaxException("Not a stream");
+            Object length = file.resolve(dict.get("Length"));
+            if (!(length instanceof Number n) || n.longValue() < 0 || n.longValue() > MAX_OBJECT_SIZE) {
+                throw new PdfSyntaxException("Bad stream length");
+            }
+            byte[] raw = file.readAt(dataStart, n.intValue());
+            Object filter = dict.get("Filter");
+            if (filter instanceof List<?> list && list.size() == 1) filter = list.get(0);
+            if (filter == null) return raw;
+            if (!new Name("FlateDecode").equals(filter)) throw new PdfSyntaxException("Unsupported filter " + filter);
+            byte[] inflated = inflate(raw);
+            Object parms = file.resolve(dict.get("DecodeParms"));
+            if (parms instanceof List<?> list && list.size() == 1) parms = list.get(0);
+            if (parms instanceof Map<?, ?> p && p.get("Predictor") instanceof Number predictor && predictor.intValue() >= 10) {
+                int columns = p.get("Columns") instanceof Number c ? c.intValue() : 1;
+                return unpredictPng(inflated, columns);
+            }
+            return inflated;
+        }
+    }
+
+    private static byte[] inflate(byte[] raw) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(raw);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length * 3);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                out.write(buf, 0, n);
+                if (out.size() > MAX_OBJECT_SIZE * 4) throw new DataFormatException("Stream too large");
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Undoes PNG row predictors (used by xref and object streams), one filter-type byte per row. */
+    static byte[] unpredictPng(byte[] data, int columns) {
+        int rows = data.length / (columns + 1);
+        byte[] out = new byte[rows * columns];
+        byte[] prev = new byte[columns];
+        for (int r = 0; r < rows; r++) {
+            int type = data[r * (columns + 1)] & 0xFF;
+            int in = r * (columns + 1) + 1;
+            int o = r * columns;
+            for (int c = 0; c < columns; c++) {
+                int x = data[in + c] & 0xFF;
+                int left = c > 0 ? out[o + c - 1] & 0xFF : 0;
+                int up = prev[c] & 0xFF;
+                int upLeft = c > 0 ? prev[c - 1] & 0xFF : 0;
+                int v = switch (type) {
+                    case 1 -> x + left;
+                    case 2 -> x + up;
+                    case 3 -> x + ((left + up) >> 1);
+                    case 4 -> x + paeth(left, up, upLeft);
+                    default -> x;
+                };
+                out[o + c] = (byte) v;
+            }
+            System.arraycopy(out, o, prev, 0, columns);
+        }
+        return out;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        return (pa <= pb && pa <= pc) ? a : (pb <= pc ? b : c);
+    }
+
+    private static long field(byte[] data, int pos, int width) {
+        long v = 0;
+        for (int i = 0; i < width; i++) {
+            v = (v << 8) | (data[pos + i] & 0xFF);
+        }
+        return v;
+    }
+
+    private static int lastIndexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = data.length - pattern.length; i >= 0; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castDict(Object o) throws PdfSyntaxException {
+        if (o instanceof Map<?, ?> m) return (Map<String, Object>) m;
+        throw new PdfSyntaxException("Expected dictionary");
+    }
+
+    /* ===================== LEXER ===================== */
+
+    @FunctionalInterface
+    private interface LexerAction {
+        Object apply(Lexer lx) throws IOException, PdfSyntaxException, DataFormatException;
+    }
+
+    /** A non-negative int, or a syntax error naming what was expected. */
+    private static int count(Object value, String what) throws PdfSyntaxException {
+        if (!(value instanceof Number n) || n.longValue() < 0 || n.longValue() > Integer.MAX_VALUE) {
+            throw new PdfSyntaxException("Bad " + what + ": " + value);
+        }
+        return n.intValue();
+    }
+
+    /** A field width of an xref stream: at most the eight bytes of a long. */
+    private static int width(Object value) throws PdfSyntaxException {
+        int width = count(value, "xref stream width");
+        if (width > 8) throw new PdfSyntaxException("Bad xref stream width: " + width);
+        return width;
+    }
+
+    static class PdfSyntaxException extends Exception {
+        PdfSyntaxException(String message) {
+            super(message);
+        }
+    }
+
+    /** Thrown when an object runs past the bytes read so far; the caller retries with a larger window. */
+    private static class EndOfBufferException extends PdfSyntaxException {
+        EndOfBufferException() {
+            super("Unexpected end of buffer");
+        }
+    }
+
+    /** Minimal PDF object parser: dictionaries, arrays, names, strings, numbers, references. */
+    static class Lexer {
+        final byte[] buf;
+        int pos;
+
+        Lexer(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        Object next() throws PdfSyntaxException {
+            skipWhitespace();
+            int c = peek();
+            switch (c) {
+                case '<':
+                    if (at(pos + 1) == '<') {
+                        pos += 2;
+                        return dict();
+                    }
+                    pos++;
+                    return hexString();
+                case '(':
+                    pos++;
+                    return literalString();
+                case '[':
+                    pos++;
+                    return array();
+                case '/':
+                    pos++;
+                    return new Name(token());
+                default:
+                    if (c == '+' || c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+                        return numberOrRef();
+                    }
+                    String t = token();
+                    return switch (t) {
+                        case "true" -> Boolean.TRUE;
+                        case "false" -> Boolean.FALSE;
+                        case "null" -> null;
+                        default -> throw new PdfSyntaxException("Unexpected token '" + t + "'");
+                    };
+            }
+        }
+
+        private Map<String, Object> dict() throws PdfSyntaxException {
+            Map<String, Object> map = new HashMap<>();
+            while (true) {
+                skipWhitespace();
+                if (peek() == '>' && at(pos + 1) == '>') {
+                    pos += 2;
+                    return map;
+                }
+                if (!(next() instanceof Name key)) throw new PdfSyntaxException("Dictionary key must be a name");
+                map.put(key.value(), next());
+            }
+        }
+
+        private List<Object> array() throws PdfSyntaxException {
+            List<Object> list = new ArrayList<>();
+            while (true) {
+                skipWhitespace();
+                if (peek() == ']') {
+                    pos++;
+                    return list;
+                }
+                list.add(next());
+            }
+        }
+
+        private Object numberOrRef() throws PdfSyntaxException {
+            Object n = number(token());
+            if (n instanceof Long num) {
+                // "12 0 R" — look ahead without consuming if it is not a reference
+                int save = pos;
+                try {
+                    skipWhitespace();
+                    if (isDigit(peek())) {
+                        String genToken = token();
+                        skipWhitespace();
+                        if (peek() == 'R' && isDelimiterOrSpace(at(pos + 1))) {
+                            pos++;
+                            return new Ref(num.intValue(), Integer.parseInt(genToken));
+                        }
+                    }
+                } catch (EndOfBufferException | NumberFormatException e) {
+                    // a plain number at the very end of the data
+                }
+                pos = save;
+            }
+            return n;
+        }
+
+        private Object number(String t) throws PdfSyntaxException {
+            try {
+                if (t.contains(".")) return Double.parseDouble(t);
+                return Long.parseLong(t);
+            } catch (NumberFormatException e) {
+                throw new PdfSyntaxException("Bad number '" + t + "'");
+            }
+        }
+
+        private byte[] literalString() throws PdfSyntaxException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int depth = 1;
+            while (true) {
+                int c = peek();
+                pos++;
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return out.toByteArray();
+                } else if (c == '\\') {
+                    int e = peek();
+                    pos++;
+                    switch (e) {
+                        case 'n' -> c = '\n';
+                        case 'r' -> c = '\r';
+                        case 't' -> c = '\t';
+                        case 'b' -> c = '\b';
+                        case 'f' -> c = '\f';
+                        case '\r' -> {
+                            if (at(pos) == '\n') pos++;
+                            continue;
+                        }
+                        case '\n' -> {
+                            continue;
+                        }
+                        default -> {
+                            if (e >= '0' && e <= '7') {
+                                int v = e - '0';
+                                for (int i = 0; i < 2 && at(pos) >= '0' && at(pos) <= '7'; i++) {
+                                    v = v * 8 + (buf[pos++] - '0');
+                                }
+                                c = v & 0xFF;
+                            } else {
+                                c = e;
+                            }
+                        }
+                    }
+                }
+                out.write(c);
+            }
+        }
+
+        private byte[] hexString() throws PdfSyntaxException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int hi = -1;
+            while (true) {
+                int c = peek();
+                pos++;
+                if (c == '>') break;
+                int d = Character.digit(c, 16);
+                if (d < 0) continue;
+                if (hi < 0) {
+                    hi = d;
+                } else {
+                    out.write(hi * 16 + d);
+                    hi = -1;
+                }
+            }
+            if (hi >= 0) out.write(hi * 16);
+            return out.toByteArray();
+        }
+
+        private String token() throws PdfSyntaxException {
+            int start = pos;
+            while (pos < buf.length && !isDelimiterOrSpace(buf[pos] & 0xFF)) pos++;
+            if (pos == start) throw pos >= buf.length ? new EndOfBufferException() : new PdfSyntaxException("Empty token");
+            return new String(buf, start, pos - start, StandardCharsets.ISO_8859_1);
+        }
+
+        boolean keyword(String word) throws PdfSyntaxException {
+            skipWhitespace();
+            if (!startsWith(word)) return false;
+            pos += word.length();
+            return true;
+        }
+
+        boolean startsWith(String word) throws PdfSyntaxException {
+            if (pos + word.length() > buf.length) throw new EndOfBufferException();
+            for (int i = 0; i < word.length(); i++) {
+                if (buf[pos + i] != word.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        void skipWhitespace() throws PdfSyntaxException {
+            while (true) {
+                int c = peek();
+                if (c == '%') {
+                    while (pos < buf.length && buf[pos] != '\n' && buf[pos] != '\r') pos++;
+                } else if (isSpace(c)) {
+                    pos++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private int peek() throws PdfSyntaxException {
+            if (pos >= buf.length) throw new EndOfBufferException();
+            return buf[pos] & 0xFF;
+        }
+
+        private int at(int i) {
+            return i < buf.length ? buf[i] & 0xFF : -1;
+        }
+
+        private static boolean isDigit(int c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+        }
+
+        private static boolean isDelimiterOrSpace(int c) {
+            return c == -1 || isSpace(c) || "()<>[]{}/%".indexOf(c) >= 0;
+        }
+    }
+}
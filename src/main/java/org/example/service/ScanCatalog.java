@@ -0,0 +1,296 @@
+package org.example.service;
+
+import org.example.model.BlobStore;
+import org.example.model.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Books from previous scans, keyed by absolute path and stamped with size, mtime and file key.
+ * A file whose stamp still matches is served from here instead of going through {@link MetadataService}.
+ * Stored in {@code ~/.someone/catalog.bin}; loaded lazily, written back by {@link #save()}. Covers, author
+ * photos and descriptions are only referenced by content hash: their bytes sit in the cover pack, where
+ * downloaded images already are, and are read from there when a book is shown. An entry whose blobs were
+ * evicted from the pack is dropped, so the file is scanned again.
+ */
+public class ScanCatalog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScanCatalog.class);
+    private static final int MAGIC = 0x534D4354; // "SMCT"
+    // Bump when extraction changes in a way that makes old entries wrong
+    static final int VERSION = 2;
+    private static final String TEXT_KEY = "text:";
+    private static final int MAX_FIELD_SIZE = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final ThumbnailCacheService pack;
+    private final BlobStore.Source images;
+    private final BlobStore.Source texts;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private volatile boolean dirty;
+
+    /** What the file looked like when the book was extracted. */
+    record Stamp(long size, long modifiedMillis, String fileKey) {
+        static Stamp of(BasicFileAttributes attrs) {
+            Object key = attrs.fileKey();
+            return new Stamp(attrs.size(), attrs.lastModifiedTime().toMillis(), key == null ? null : key.toString());
+        }
+
+        boolean matches(Stamp other) {
+            if (size != other.size || modifiedMillis != other.modifiedMillis) return false;
+            // the file key is optional: only compare it when both sides have one
+            return fileKey == null || other.fileKey == null || fileKey.equals(other.fileKey);
+        }
+    }
+
+    private record Entry(Stamp stamp, Book book) {}
+
+    public ScanCatalog() {
+        this(Paths.get(System.getProperty("user.home"), ".someone", "catalog.bin"));
+    }
+
+    public ScanCatalog(Path file) {
+        this(file, ThumbnailCacheService.shared());
+    }
+
+    public ScanCatalog(Path file, ThumbnailCacheService pack) {
+        this.file = file;
+        this.pack = pack;
+        this.images = ref -> pack.get(ExternalMetadataService.IMAGE_KEY + ref.hex());
+        this.texts = ref -> pack.get(TEXT_KEY + ref.hex());
+    }
+
+    /** The cached book if the file has not changed since it was recorded. */
+    public Optional<Book> lookup(Path path, BasicFileAttributes attrs) {
+        ensureLoaded();
+        Entry entry = entries.get(key(path));
+        if (entry == null || !entry.stamp().matches(Stamp.of(attrs))) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.book());
+    }
+
+    public void record(Path path, BasicFileAttributes attrs, Book book) {
+        ensureLoaded();
+        keep(ExternalMetadataService.IMAGE_KEY, book.getCoverRef());
+        keep(ExternalMetadataService.IMAGE_KEY, book.getAuthorPhotoRef());
+        keep(TEXT_KEY, book.getDescriptionRef());
+        entries.put(key(path), new Entry(Stamp.of(attrs), book));
+        dirty = true;
+    }
+
+    /**
+     * Drops the entries under the roots whose files are not among those found there: deleted or
+     * moved since they were recorded. Roots and found paths are absolute. Returns how many went.
+     */
+    public int retainFound(List<Path> roots, Set<Path> found) {
+        ensureLoaded();
+        int removed = 0;
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            Path path = Paths.get(it.next());
+            if (!found.contains(path) && roots.stream().anyMatch(path::startsWith)) {
+                it.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) dirty = true;
+        return removed;
+    }
+
+    public int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    /** Copies a blob into the pack unless it is there already, e.g. as a downloaded image. */
+    private void keep(String prefix, BlobStore.Ref ref) {
+        if (ref == null || ref.length() == 0 || pack.contains(prefix + ref.hex())) return;
+        byte[] data = BlobStore.shared().get(ref);
+        if (data != null) pack.put(prefix + ref.hex(), data);
+    }
+
+    private String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            load();
+            loaded = true;
+        }
+    }
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info("Scan catalog {} has an old format, starting from scratch", file);
+                return;
+            }
+            int count = in.readInt();
+            int evicted = 0;
+            for (int i = 0; i < count; i++) {
+                String path = readString(in);
+                Stamp stamp = new Stamp(in.readLong(), in.readLong(), readString(in));
+                Book book = readBook(in, Paths.get(path));
+                if (book != null) {
+                    entries.put(path, new Entry(stamp, book));
+                } else {
+                    evicted++;
+                }
+            }
+            LOGGER.info("Loaded {} catalog entries from {}", entries.size(), file);
+            if (evicted > 0) {
+                LOGGER.info("Dropped {} catalog entries whose images were evicted from the cover pack", evicted);
+                dirty = true;
+            }
+        } catch (NoSuchFileException e) {
+            // first run
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Scan catalog {} is unreadable, starting from scratch: {}", file, e.toString());
+            entries.clear();
+        }
+    }
+
+    /** Writes the catalog if anything changed, via a temp file so a crash never leaves half a catalog. */
+    public synchronized void save() {
+        if (!dirty) return;
+        dirty = false;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                Map<String, Entry> snapshot = Map.copyOf(entries);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    Stamp stamp = e.getValue().stamp();
+                    writeString(out, e.getKey());
+                    out.writeLong(stamp.size());
+                    out.writeLong(stamp.modifiedMillis());
+                    writeString(out, stamp.fileKey());
+                    writeBook(out, e.getValue().book());
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            dirty = true;
+            LOGGER.warn("Failed to save scan catalog {}", file, e);
+        }
+    }
+
+    private static void writeBook(DataOutputStream out, Book b) throws IOException {
+        writeString(out, b.getTitle());
+        writeString(out, b.getAuthor());
+        writeString(out, b.getSeries());
+        out.writeInt(b.getSeriesIndex() == null ? -1 : b.getSeriesIndex());
+        writeString(out, b.getGenre());
+        writeString(out, b.getLanguage());
+        writeString(out, b.getYear());
+        writeString(out, b.getFormat());
+        writeRef(out, b.getDescriptionRef());
+        writeRef(out, b.getCoverRef());
+        writeRef(out, b.getAuthorPhotoRef());
+    }
+
+    /** The book with its blobs attached from the pack; null when one of them is no longer there. */
+    private Book readBook(DataInputStream in, Path path) throws IOException {
+        Book.Builder b = Book.builder()
+                .filePath(path)
+                .title(readString(in))
+                .author(readString(in))
+                .series(readString(in));
+        int seriesIndex = in.readInt();
+        b.seriesIndex(seriesIndex < 0 ? null : seriesIndex)
+                .genre(readString(in))
+                .language(readString(in))
+                .year(readString(in))
+                .format(readString(in));
+        BlobStore.Ref description = readRef(in);
+        BlobStore.Ref cover = readRef(in);
+        BlobStore.Ref photo = readRef(in);
+        if (!attach(TEXT_KEY, description, texts) || !attach(ExternalMetadataService.IMAGE_KEY, cover, images)
+                || !attach(ExternalMetadataService.IMAGE_KEY, photo, images)) {
+            return null;
+        }
+        return b.descriptionRef(description).coverRef(cover).authorPhotoRef(photo).build();
+    }
+
+    private boolean attach(String prefix, BlobStore.Ref ref, BlobStore.Source source) {
+        if (ref == null) return true;
+        if (!pack.contains(prefix + ref.hex())) return false;
+        BlobStore.shared().attach(ref, source);
+        return true;
+    }
+
+    private static void writeRef(DataOutputStream out, BlobStore.Ref ref) throws IOException {
+        boolean present = ref != null && ref.length() > 0;
+        out.writeInt(present ? ref.length() : -1);
+        if (present) {
+            out.writeLong(ref.hi());
+            out.writeLong(ref.lo());
+        }
+    }
+
+    private static BlobStore.Ref readRef(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > MAX_FIELD_SIZE) throw new IOException("Corrupt blob length " + length);
+        return new BlobStore.Ref(in.readLong(), in.readLong(), length);
+    }
+
+    // writeUTF is limited to 64 KB, descriptions can be longer
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data == null ? -1 : data.length);
+        if (data != null) out.write(data);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > MAX_FIELD_SIZE) throw new IOException("Corrupt field length " + length);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanCatalog{" + file + ", entries=" + entries.size() + '}';
+    }
+}
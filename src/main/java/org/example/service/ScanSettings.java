@@ -0,0 +1,86 @@
+package org.example.service;
+
+/**
+ * Scan tuning: how many files are processed at once (virtual threads, mostly waiting on the network),
+ * how many of them may run the CPU-heavy Tika parse at the same time, and whether books are
+ * published in discovery order or as soon as they are ready. A parallel scan is a pipeline of
+ * local parse, online lookup and cover fetch; the last two get their own limits on books in progress
+ * (default: {@code concurrency}), which wait on the network without holding a thread, and every
+ * stage queue holds {@code queueCapacity} books. With {@code changesOnly} the scan publishes
+ * only files that are new or modified since they were recorded in the {@link ScanCatalog}.
+ */
+public final class ScanSettings {
+
+    private final int concurrency;
+    private final int parseThreads;
+    private final boolean ordered;
+    private final boolean changesOnly;
+    private final int enrichThreads;
+    private final int coverThreads;
+    private final int queueCapacity;
+
+    private ScanSettings(Builder b) {
+        this.concurrency = Math.max(1, b.concurrency);
+        this.parseThreads = Math.max(1, Math.min(b.parseThreads, this.concurrency));
+        this.ordered = b.ordered;
+        this.changesOnly = b.changesOnly;
+        this.enrichThreads = b.enrichThreads > 0 ? b.enrichThreads : this.concurrency;
+        this.coverThreads = b.coverThreads > 0 ? b.coverThreads : this.concurrency;
+        this.queueCapacity = b.queueCapacity > 0 ? b.queueCapacity : this.concurrency * 2;
+    }
+
+    public int getConcurrency() { return concurrency; }
+    public int getParseThreads() { return parseThreads; }
+    public boolean isOrdered() { return ordered; }
+    public boolean isChangesOnly() { return changesOnly; }
+    public int getEnrichThreads() { return enrichThreads; }
+    public int getCoverThreads() { return coverThreads; }
+    public int getQueueCapacity() { return queueCapacity; }
+
+    public boolean isParallel() {
+        return concurrency > 1;
+    }
+
+    public static ScanSettings defaults() {
+        return builder().build();
+    }
+
+    public static ScanSettings sequential() {
+        return builder().concurrency(1).parseThreads(1).ordered(true).build();
+    }
+
+    @Override
+    public String toString() {
+        return "ScanSettings{" +
+                "concurrency=" + concurrency +
+                ", parseThreads=" + parseThreads +
+                ", ordered=" + ordered +
+                ", changesOnly=" + changesOnly +
+                ", enrichThreads=" + enrichThreads +
+                ", coverThreads=" + coverThreads +
+                ", queueCapacity=" + queueCapacity +
+                '}';
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    public static class Builder {
+        private int concurrency = Runtime.getRuntime().availableProcessors() * 4;
+        private int parseThreads = Runtime.getRuntime().availableProcessors();
+        private boolean ordered = false;
+        private boolean changesOnly = false;
+        private int enrichThreads = 0;
+        private int coverThreads = 0;
+        private int queueCapacity = 0;
+
+        public Builder concurrency(int v) { concurrency = v; return this; }
+        public Builder parseThreads(int v) { parseThreads = v; return this; }
+        public Builder ordered(boolean v) { ordered = v; return this; }
+        public Builder changesOnly(boolean v) { changesOnly = v; return this; }
+        public Builder enrichThreads(int v) { enrichThreads = v; return this; }
+        public Builder coverThreads(int v) { coverThreads = v; return this; }
+        public Builder queueCapacity(int v) { queueCapacity = v; return this; }
+
+        public ScanSettings build() { return new ScanSettings(this); }
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One step of the scan pipeline: a bounded queue drained by a fixed number of workers.
+ * {@link #put} blocks while the queue is full, so a slow stage holds back the ones feeding it
+ * instead of letting work pile up in memory. A stage made with {@link #async} has a single worker
+ * that only starts each item: the item counts as active until its future completes, and the
+ * stage lets a fixed number of them be active at once without a thread waiting for any of them.
+ */
+public final class ScanStage<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScanStage.class);
+    // End of input marker; every worker that sees it puts it back for the next one
+    private static final Object END = new Object();
+
+    public interface Handler<T> {
+        void handle(T item) throws InterruptedException;
+    }
+
+    public interface AsyncHandler<T> {
+        CompletableFuture<?> handle(T item);
+    }
+
+    /** Snapshot for the progress display. */
+    public record Stats(String name, int queued, int active, long completed, double perSecond) {}
+
+    private final String name;
+    private final int workers;
+    private final BlockingQueue<Object> queue;
+    private final Handler<T> handler;
+    private final CountDownLatch finished;
+    // Async stages only: one permit per item started and not yet completed
+    private final Semaphore permits;
+    private final int maxActive;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private volatile long startNanos;
+
+    public ScanStage(String name, int workers, int capacity, Handler<T> handler) {
+        this.name = name;
+        this.workers = Math.max(1, workers);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.handler = handler;
+        this.finished = new CountDownLatch(this.workers);
+        this.permits = null;
+        this.maxActive = this.workers;
+    }
+
+    private ScanStage(String name, int maxActive, int capacity, AsyncHandler<T> handler) {
+        this.name = name;
+        this.workers = 1;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.maxActive = Math.max(1, maxActive);
+        this.permits = new Semaphore(this.maxActive);
+        this.handler = item -> begin(item, handler);
+        this.finished = new CountDownLatch(1);
+    }
+
+    /** A stage for work that waits on the network: up to {@code maxActive} items in progress at once. */
+    public static <T> ScanStage<T> async(String name, int maxActive, int capacity, AsyncHandler<T> handler) {
+        return new ScanStage<>(name, maxActive, capacity, handler);
+    }
+
+    public void start(ExecutorService executor) {
+        startNanos = System.nanoTime();
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    public void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    /** No more input: workers stop once everything queued so far is handled. */
+    public void finish() throws InterruptedException {
+        queue.put(END);
+    }
+
+    /** Waits for the workers to stop and, for an async stage, for every item it started. */
+    public void awaitDone() throws InterruptedException {
+        finished.await();
+        if (permits != null) {
+            permits.acquire(maxActive);
+            permits.release(maxActive);
+        }
+    }
+
+    public Stats stats() {
+        long elapsed = System.nanoTime() - startNanos;
+        long done = completed.get();
+        double perSecond = startNanos == 0 || elapsed <= 0 ? 0 : done * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        return new Stats(name, queue.size() - (queue.contains(END) ? 1 : 0), active.get(), done, perSecond);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work() {
+        try {
+            while (true) {
+                Object item = queue.take();
+                if (item == END) {
+                    queue.put(END);
+                    return;
+                }
+                if (permits != null) {
+                    handler.handle((T) item);
+                    continue;
+                }
+                active.incrementAndGet();
+                try {
+                    handler.handle((T) item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Scan stage {} failed on {}", name, item, e);
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void begin(T item, AsyncHandler<T> async) throws InterruptedException {
+        permits.acquire();
+        active.incrementAndGet();
+        CompletableFuture<?> future;
+        try {
+            future = async.handle(item);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, error) -> {
+            if (error != null) LOGGER.warn("Scan stage {} failed on {}", name, item, error);
+            active.decrementAndGet();
+            completed.incrementAndGet();
+            permits.release();
+        });
+    }
+}
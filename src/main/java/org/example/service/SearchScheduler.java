@@ -0,0 +1,154 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs search-as-you-type queries off the Event Dispatch Thread. A typed query waits for a pause
+ * in typing before it starts; a newer query cancels the one waiting or running, and a result that
+ * is no longer the latest is dropped instead of shown. Each result is handed over once, on the
+ * executor given (the EDT), so the caller can apply it in a single update. The timings of every
+ * query are logged and summed up in {@link #stats()}.
+ * <p>
+ * When the data changes underneath, e.g. while a scan adds books, {@link #refresh} reruns the query
+ * without cancelling the one in flight: refreshes arriving meanwhile become one more run after it.
+ */
+public final class SearchScheduler<R> implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchScheduler.class);
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 150;
+
+    /** The query itself; should give up with InterruptedException once its thread is interrupted. */
+    public interface Search<R> {
+        R run(String query) throws InterruptedException;
+    }
+
+    /** One query, from the last keystroke to its result being applied. */
+    public record Latency(String query, long waitMillis, long searchMillis, long applyMillis) {
+        public long totalMillis() {
+            return waitMillis + searchMillis + applyMillis;
+        }
+    }
+
+    /** Queries shown and queries superseded before their result was shown. */
+    public record Stats(long completed, long cancelled, Latency last, double averageMillis, long maxMillis) {}
+
+    private final long debounceMillis;
+    private final Search<R> search;
+    private final Executor deliver;
+    private final BiConsumer<String, R> onResult;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("search").factory());
+    private final AtomicLong generation = new AtomicLong();
+    // Guarded by this
+    private ScheduledFuture<?> pending;
+    // Query to run again once the one in flight has been shown
+    private String refreshAfter;
+    private long applied;
+    private long completed;
+    private long cancelled;
+    private long totalMillis;
+    private long maxMillis;
+    private Latency last;
+
+    public SearchScheduler(long debounceMillis, Search<R> search, Executor deliver, BiConsumer<String, R> onResult) {
+        this.debounceMillis = debounceMillis;
+        this.search = search;
+        this.deliver = deliver;
+        this.onResult = onResult;
+    }
+
+    /** A query being typed: runs once there has been no newer one for the debounce delay. */
+    public void submit(String query) {
+        schedule(query, debounceMillis);
+    }
+
+    /** A query to run right away, e.g. on Enter. */
+    public void submitNow(String query) {
+        schedule(query, 0);
+    }
+
+    /**
+     * The data changed: runs the query again, but lets a query already running finish and be shown
+     * first. One that is still waiting will see the new data anyway.
+     */
+    public synchronized void refresh(String query) {
+        if (pending != null && !pending.isDone()) {
+            if (pending.getDelay(TimeUnit.NANOSECONDS) <= 0) refreshAfter = query;
+            return;
+        }
+        schedule(query, 0);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(completed, cancelled, last, completed == 0 ? 0 : totalMillis / (double) completed, maxMillis);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private synchronized void schedule(String query, long delay) {
+        long gen = generation.incrementAndGet();
+        refreshAfter = null;
+        if (pending != null) pending.cancel(true);
+        // the previous query will never be shown now
+        if (applied < gen - 1) cancelled++;
+        long typed = System.nanoTime();
+        pending = executor.schedule(() -> run(gen, query, typed), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(long gen, String query, long typed) {
+        long started = System.nanoTime();
+        R result;
+        try {
+            result = search.run(query);
+        } catch (InterruptedException e) {
+            return;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Search for '{}' failed", query, e);
+            // the data changed meanwhile, so the refresh may well succeed
+            refreshQueued(gen);
+            return;
+        }
+        if (gen != generation.get()) return;
+        long searched = System.nanoTime();
+        deliver.execute(() -> {
+            if (gen != generation.get()) return;
+            onResult.accept(query, result);
+            Latency latency = new Latency(query, millis(started - typed), millis(searched - started),
+                    millis(System.nanoTime() - searched));
+            record(gen, latency);
+            LOGGER.debug("Search '{}': waited {} ms, searched {} ms, applied {} ms", query,
+                    latency.waitMillis(), latency.searchMillis(), latency.applyMillis());
+            refreshQueued(gen);
+        });
+    }
+
+    private synchronized void record(long gen, Latency latency) {
+        applied = gen;
+        completed++;
+        totalMillis += latency.totalMillis();
+        maxMillis = Math.max(maxMillis, latency.totalMillis());
+        last = latency;
+    }
+
+    private synchronized void refreshQueued(long gen) {
+        if (refreshAfter == null || gen != generation.get()) return;
+        // the query just shown, or just failed, is done: nothing to cancel
+        pending = null;
+        schedule(refreshAfter, 0);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -4,47 +4,625 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
 
+/**
+ * Downloaded images on disk, packed into one append-only file instead of one file per image.
+ * <ul>
+ *   <li>{@code covers.pack}: header, then records of key digest, length, CRC and the image bytes.</li>
+ *   <li>{@code covers.idx}: memory-mapped open-addressing table from key hash to record offset.</li>
+ * </ul>
+ * A lookup is an index probe in memory and one positional read. The index remembers how much of the
+ * pack it covers; on open, records past that point are replayed and a torn tail is cut off, and an
+ * index that does not belong to the pack is rebuilt from it. Replaced entries leave dead bytes that
+ * a background compaction drops, which also evicts the oldest images once the pack outgrows its cap.
+ */
 public class ThumbnailCacheService {
     private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailCacheService.class);
+    private static final int PACK_MAGIC = 0x534D5043; // "SMPC"
+    private static final int INDEX_MAGIC = 0x534D4958; // "SMIX"
+    static final int VERSION = 1;
+    // magic, version, generation
+    private static final int PACK_HEADER = 16;
+    // digest (16), length, crc
+    private static final int RECORD_HEADER = 24;
+    // magic, version, capacity, count, generation, covered pack length
+    private static final int INDEX_HEADER = 32;
+    // key hash, record offset, length, unused
+    private static final int SLOT = 24;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_ENTRY = 32 * 1024 * 1024;
+    // Dead bytes below this are not worth a rewrite
+    private static final long MIN_DEAD_BYTES = 4L * 1024 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+    private static volatile ThumbnailCacheService shared;
+
     private final Path cacheDir;
+    private final Path packFile;
+    private final Path indexFile;
+    private volatile long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // Two rewrites at once would both write covers.pack.new
+    private final Object compactionLock = new Object();
+
+    // Guarded by lock
+    private boolean opened;
+    private boolean available;
+    private boolean legacyFiles;
+    private FileChannel pack;
+    private FileLock packLock;
+    private long packSize;
+    private long generation;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private long liveBytes;
 
     public ThumbnailCacheService() {
-        this.cacheDir = Paths.get(System.getProperty("user.home"), ".someone", "cache", "covers");
+        this(Paths.get(System.getProperty("user.home"), ".someone", "cache", "covers"), DEFAULT_MAX_BYTES);
+    }
+
+    public ThumbnailCacheService(Path cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.packFile = cacheDir.resolve("covers.pack");
+        this.indexFile = cacheDir.resolve("covers.idx");
+        this.maxBytes = maxBytes;
+    }
+
+    /** The store in {@code ~/.someone/cache/covers}; one per process, since the pack is locked while open. */
+    public static ThumbnailCacheService shared() {
+        ThumbnailCacheService s = shared;
+        if (s == null) {
+            synchronized (ThumbnailCacheService.class) {
+                if (shared == null) shared = new ThumbnailCacheService();
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    /** Size cap of the pack in bytes; a lower cap evicts the oldest images at the next compaction. */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        maybeCompact();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public byte[] get(String key) {
+        byte[] digest = digest(key);
+        ensureOpen();
+        byte[] data = null;
+        boolean checkLegacy;
+        lock.readLock().lock();
+        try {
+            if (!available) return null;
+            int slot = find(hash(digest));
+            if (slot >= 0) data = read(index.getLong(slot + 8), index.getInt(slot + 16), digest);
+            checkLegacy = data == null && legacyFiles;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return checkLegacy ? migrateLegacy(key) : data;
+    }
+
+    /** Whether the key has an entry, without reading it. */
+    public boolean contains(String key) {
+        byte[] digest = digest(key);
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            return available && find(hash(digest)) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, byte[] data) {
+        if (data == null || data.length > MAX_ENTRY) return;
+        byte[] digest = digest(key);
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + data.length);
+        record.put(digest).putInt(data.length).putInt((int) crc.getValue()).put(data).flip();
+        ensureOpen();
+        lock.writeLock().lock();
+        try {
+            if (!available) return;
+            long offset = packSize;
+            writeFully(pack, record, offset);
+            packSize += record.capacity();
+            insert(hash(digest), offset, data.length);
+            index.putLong(24, packSize);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to cache thumbnail for {}: {}", key, e.toString());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        maybeCompact();
+    }
+
+    /** Entries currently reachable. */
+    int size() {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Bytes in the pack file, dead records included. */
+    long packSize() {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            return packSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Flushes and releases the files; later calls reopen them. */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (available) {
+                index.force();
+                pack.force(true);
+                pack.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close thumbnail cache {}", cacheDir, e);
+        } finally {
+            available = false;
+            opened = false;
+            index = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* ===================== OPEN AND RECOVERY ===================== */
+
+    private void ensureOpen() {
+        lock.readLock().lock();
+        try {
+            if (opened) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (opened) return;
+            opened = true;
+            open();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void open() {
         try {
             Files.createDirectories(cacheDir);
+            pack = FileChannel.open(packFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!lockPack()) return;
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER);
+            if (pack.size() >= PACK_HEADER) readFully(pack, header, 0);
+            if (pack.size() < PACK_HEADER || header.getInt(0) != PACK_MAGIC || header.getInt(4) != VERSION) {
+                if (pack.size() > 0) LOGGER.info("Thumbnail pack {} has an old format, starting from scratch", packFile);
+                generation = newGeneration();
+                pack.truncate(0);
+                writeFully(pack, packHeader(generation), 0);
+            } else {
+                generation = header.getLong(8);
+            }
+            packSize = pack.size();
+
+            long covered = loadIndex();
+            if (covered < 0) {
+                LOGGER.info("Rebuilding thumbnail index from {}", packFile);
+                index = createIndex(indexFile, capacityFor(packSize / 4096));
+                covered = PACK_HEADER;
+            }
+            replay(covered);
+            legacyFiles = hasLegacyFiles();
+            available = true;
+            LOGGER.info("Thumbnail cache {}: {} entries, {} MB", cacheDir, count, packSize / (1024 * 1024));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to open thumbnail cache {}, covers will not be kept on disk", cacheDir, e);
+            available = false;
+        }
+    }
+
+    private boolean lockPack() throws IOException {
+        try {
+            packLock = pack.tryLock();
+        } catch (OverlappingFileLockException e) {
+            packLock = null;
+        }
+        if (packLock == null) {
+            LOGGER.warn("Thumbnail cache {} is in use by another instance, covers will not be kept on disk", cacheDir);
+            pack.close();
+            return false;
+        }
+        return true;
+    }
+
+    /** Maps the index and returns how much of the pack it covers, or -1 if it has to be rebuilt. */
+    private long loadIndex() throws IOException {
+        if (!Files.isRegularFile(indexFile) || Files.size(indexFile) < INDEX_HEADER) return -1;
+        try (FileChannel ch = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            int cap = map.getInt(8);
+            long covered = map.getLong(24);
+            boolean valid = map.getInt(0) == INDEX_MAGIC && map.getInt(4) == VERSION
+                    && map.getLong(16) == generation
+                    && cap >= MIN_CAPACITY && Integer.bitCount(cap) == 1
+                    && ch.size() == INDEX_HEADER + (long) cap * SLOT
+                    && covered >= PACK_HEADER && covered <= packSize;
+            if (!valid) return -1;
+            index = map;
+            capacity = cap;
+            count = 0;
+            liveBytes = 0;
+            for (int i = 0; i < cap; i++) {
+                int slot = INDEX_HEADER + i * SLOT;
+                if (map.getLong(slot) == 0) continue;
+                long offset = map.getLong(slot + 8);
+                int length = map.getInt(slot + 16);
+                // lost writes after a power failure: the pack is the truth
+                if (offset < PACK_HEADER || offset + RECORD_HEADER + length > covered) return -1;
+                count++;
+                liveBytes += RECORD_HEADER + length;
+            }
+            map.putInt(12, count);
+            return covered;
+        }
+    }
+
+    /** Indexes the records from {@code from} on, cutting the pack at the first one that is incomplete. */
+    private void replay(long from) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        long offset = from;
+        int replayed = 0;
+        while (offset + RECORD_HEADER <= packSize) {
+            header.clear();
+            readFully(pack, header, offset);
+            byte[] digest = Arrays.copyOf(header.array(), 16);
+            int length = header.getInt(16);
+            if (length < 0 || length > MAX_ENTRY || offset + RECORD_HEADER + length > packSize) break;
+            if (read(offset, length, digest) == null) break;
+            insert(hash(digest), offset, length);
+            offset += RECORD_HEADER + length;
+            replayed++;
+        }
+        if (offset < packSize) {
+            LOGGER.warn("Thumbnail pack {} has a damaged tail, truncating at {} of {} bytes", packFile, offset, packSize);
+            pack.truncate(offset);
+            packSize = offset;
+        }
+        index.putLong(24, packSize);
+        if (replayed > 0) LOGGER.info("Recovered {} thumbnail records past the index", replayed);
+    }
+
+    /* ===================== INDEX ===================== */
+
+    private MappedByteBuffer createIndex(Path file, int cap) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) cap * SLOT);
+            map.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putInt(8, cap).putInt(12, 0)
+                    .putLong(16, generation).putLong(24, PACK_HEADER);
+            capacity = cap;
+            count = 0;
+            liveBytes = 0;
+            return map;
+        }
+    }
+
+    private static int capacityFor(long entries) {
+        long wanted = Math.max(MIN_CAPACITY, entries * 2);
+        return (int) Math.min(1 << 30, Long.highestOneBit(wanted - 1) << 1);
+    }
+
+    private int find(long hash) {
+        int mask = capacity - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            int slot = INDEX_HEADER + i * SLOT;
+            long h = index.getLong(slot);
+            if (h == hash) return slot;
+            if (h == 0) return -1;
+        }
+    }
+
+    private void insert(long hash, long offset, int length) throws IOException {
+        if ((count + 1) * 10L > capacity * 7L) grow();
+        int mask = capacity - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            int slot = INDEX_HEADER + i * SLOT;
+            long h = index.getLong(slot);
+            if (h == hash) {
+                liveBytes -= RECORD_HEADER + index.getInt(slot + 16);
+            } else if (h != 0) {
+                continue;
+            } else {
+                count++;
+                index.putInt(12, count);
+            }
+            // offset and length first: a slot with a hash always points at a whole record
+            index.putLong(slot + 8, offset);
+            index.putInt(slot + 16, length);
+            index.putLong(slot, hash);
+            liveBytes += RECORD_HEADER + length;
+            return;
+        }
+    }
+
+    private void grow() throws IOException {
+        List<long[]> entries = slots();
+        Path tmp = indexFile.resolveSibling("covers.idx.new");
+        long covered = index.getLong(24);
+        index = createIndex(tmp, capacity * 2);
+        for (long[] e : entries) insert(e[0], e[1], (int) e[2]);
+        index.putLong(24, covered);
+        replaceIndexFile(tmp);
+    }
+
+    /** Every live slot as {hash, offset, length}. */
+    private List<long[]> slots() {
+        List<long[]> entries = new ArrayList<>(count);
+        for (int i = 0; i < capacity; i++) {
+            int slot = INDEX_HEADER + i * SLOT;
+            long h = index.getLong(slot);
+            if (h != 0) entries.add(new long[]{h, index.getLong(slot + 8), index.getInt(slot + 16)});
+        }
+        return entries;
+    }
+
+    private void replaceIndexFile(Path tmp) {
+        try {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            LOGGER.error("Failed to create cache directory", e);
+            // Windows refuses to replace a mapped file: this session keeps using the new one,
+            // the next start finds the stale index and rebuilds it
+            LOGGER.warn("Failed to replace thumbnail index {}: {}", indexFile, e.toString());
         }
     }
 
-    public byte[] get(String key) {
-        Path path = cacheDir.resolve(hash(key));
-        if (Files.exists(path)) {
+    /* ===================== COMPACTION ===================== */
+
+    private void maybeCompact() {
+        boolean needed;
+        lock.readLock().lock();
+        try {
+            long dead = packSize - PACK_HEADER - liveBytes;
+            needed = available && (packSize > maxBytes || dead > MIN_DEAD_BYTES && dead > packSize / 2);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (needed && compacting.compareAndSet(false, true)) {
+            Thread.ofPlatform().daemon().name("thumbnail-compaction").start(() -> {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /** Rewrites the pack with live records only, keeping the newest ones within three quarters of the cap. */
+    void compact() {
+        synchronized (compactionLock) {
+            rewrite();
+        }
+    }
+
+    private void rewrite() {
+        Path tmpPack = packFile.resolveSibling("covers.pack.new");
+        Path tmpIndex = indexFile.resolveSibling("covers.idx.new");
+        List<long[]> kept = new ArrayList<>();
+        long snapshotEnd;
+        FileChannel source;
+        lock.readLock().lock();
+        try {
+            if (!available) return;
+            snapshotEnd = packSize;
+            source = pack;
+            List<long[]> live = slots();
+            live.sort(Comparator.comparingLong((long[] e) -> e[1]).reversed());
+            long budget = packSize > maxBytes ? maxBytes * 3 / 4 : Long.MAX_VALUE;
+            for (long[] e : live) {
+                long size = RECORD_HEADER + e[2];
+                if (budget < size) break;
+                budget -= size;
+                kept.add(e);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        kept.sort(Comparator.comparingLong(e -> e[1]));
+        long newGeneration = newGeneration();
+        try (FileChannel target = FileChannel.open(tmpPack, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(target, packHeader(newGeneration), 0);
+            long position = PACK_HEADER;
+            // the old pack is append-only, records before the snapshot can be copied without the lock
+            for (long[] e : kept) {
+                position = copy(source, e, target, position);
+            }
+            lock.writeLock().lock();
             try {
-                return Files.readAllBytes(path);
-            } catch (IOException e) {
-                LOGGER.warn("Failed to read cached thumbnail for {}", key);
+                if (!available || pack != source) return;
+                // whatever was added meanwhile comes along too
+                List<long[]> added = new ArrayList<>();
+                for (long[] e : slots()) {
+                    if (e[1] >= snapshotEnd) added.add(e);
+                }
+                added.sort(Comparator.comparingLong(e -> e[1]));
+                for (long[] e : added) {
+                    position = copy(source, e, target, position);
+                    kept.add(e);
+                }
+                target.force(true);
+                long oldSize = packSize;
+                generation = newGeneration;
+                index = createIndex(tmpIndex, capacityFor(kept.size()));
+                long offset = PACK_HEADER;
+                for (long[] e : kept) {
+                    insert(e[0], offset, (int) e[2]);
+                    offset += RECORD_HEADER + e[2];
+                }
+                index.putLong(24, position);
+                index.force();
+
+                packLock.release();
+                pack.close();
+                Files.move(tmpPack, packFile, StandardCopyOption.REPLACE_EXISTING);
+                pack = FileChannel.open(packFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                packSize = pack.size();
+                if (!lockPack()) {
+                    available = false;
+                    return;
+                }
+                replaceIndexFile(tmpIndex);
+                LOGGER.info("Compacted thumbnail cache {}: {} entries, {} -> {} MB", cacheDir, count,
+                        oldSize / (1024 * 1024), packSize / (1024 * 1024));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Thumbnail cache compaction failed", e);
+            lock.writeLock().lock();
+            try {
+                // a failure after the old pack was closed leaves nothing usable
+                if (!pack.isOpen()) available = false;
+            } finally {
+                lock.writeLock().unlock();
             }
         }
-        return null;
     }
 
-    public void put(String key, byte[] data) {
-        Path path = cacheDir.resolve(hash(key));
+    private static long copy(FileChannel source, long[] entry, FileChannel target, long position) throws IOException {
+        long size = RECORD_HEADER + entry[2];
+        long done = 0;
+        while (done < size) {
+            long n = source.transferTo(entry[1] + done, size - done, target.position(position + done));
+            if (n <= 0) throw new IOException("Thumbnail pack ended inside a record at " + entry[1]);
+            done += n;
+        }
+        return position + size;
+    }
+
+    /* ===================== RECORDS ===================== */
+
+    /** The record's image, or null if it is damaged or belongs to another key. */
+    private byte[] read(long offset, int length, byte[] digest) {
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER + length);
+            readFully(pack, buf, offset);
+            byte[] stored = Arrays.copyOf(buf.array(), 16);
+            if (!Arrays.equals(stored, digest) || buf.getInt(16) != length) return null;
+            CRC32C crc = new CRC32C();
+            crc.update(buf.array(), RECORD_HEADER, length);
+            if ((int) crc.getValue() != buf.getInt(20)) return null;
+            return Arrays.copyOfRange(buf.array(), RECORD_HEADER, RECORD_HEADER + length);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read cached thumbnail at {}: {}", offset, e.toString());
+            return null;
+        }
+    }
+
+    private static ByteBuffer packHeader(long generation) {
+        return ByteBuffer.allocate(PACK_HEADER).putInt(PACK_MAGIC).putInt(VERSION).putLong(generation).flip();
+    }
+
+    private static long newGeneration() {
+        return ThreadLocalRandom.current().nextLong() | 1;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) throw new IOException("Unexpected end of " + ch);
+        }
+        buf.flip();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf, position + buf.position());
+        }
+    }
+
+    private static byte[] digest(String key) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long hash(byte[] digest) {
+        long h = ByteBuffer.wrap(digest).getLong();
+        return h == 0 ? 1 : h; // zero marks an empty slot
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /* ===================== ONE FILE PER IMAGE, BEFORE THE PACK ===================== */
+
+    private boolean hasLegacyFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir,
+                p -> !p.getFileName().toString().startsWith("covers."))) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    /** Moves an image cached by the old layout into the pack. */
+    private byte[] migrateLegacy(String key) {
+        Path legacy = cacheDir.resolve(legacyName(key));
         try {
-            Files.write(path, data);
+            if (!Files.isRegularFile(legacy)) return null;
+            byte[] data = Files.readAllBytes(legacy);
+            put(key, data);
+            Files.deleteIfExists(legacy);
+            return data;
         } catch (IOException e) {
-            LOGGER.warn("Failed to cache thumbnail for {}", key);
+            LOGGER.warn("Failed to read cached thumbnail for {}", key);
+            return null;
         }
     }
 
-    private String hash(String key) {
+    static String legacyName(String key) {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
             byte[] hash = md.digest(key.getBytes());
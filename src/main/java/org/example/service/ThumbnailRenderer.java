@@ -0,0 +1,186 @@
+package org.example.service;
+
+import org.example.model.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+/**
+ * The scaled images the UI shows, rendered once per source image instead of on every paint.
+ * The scan calls {@link #prepare} right after a cover or photo arrives: the source is decoded once,
+ * every size it needs is resampled from that one decode and stored as PNG in the thumbnail cache,
+ * keyed by the blob's content hash. {@link #get} then only reads a small ready-made image; a source that
+ * was never prepared (e.g. a catalog hit from an older version) is rendered on the spot and stored.
+ */
+public class ThumbnailRenderer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailRenderer.class);
+    /** Decoded thumbnails kept on the heap, in bytes of pixel data. */
+    private static final long MEMORY_BUDGET = 16L * 1024 * 1024;
+    private static volatile ThumbnailRenderer shared;
+
+    /** The sizes the UI paints at. */
+    public enum Size {
+        TREE(24, 24),
+        DETAILS(200, 280),
+        AUTHOR(150, 150);
+
+        private final int width;
+        private final int height;
+
+        Size(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public int width() {
+            return width;
+        }
+
+        public int height() {
+            return height;
+        }
+    }
+
+    private final ThumbnailCacheService disk;
+    private final BlobStore blobs;
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+
+    /** {@code disk} null: thumbnails are kept in memory only. Sources are read from {@code blobs}. */
+    public ThumbnailRenderer(ThumbnailCacheService disk, BlobStore blobs) {
+        this.disk = disk;
+        this.blobs = blobs;
+    }
+
+    /** Renders into the shared thumbnail cache. */
+    public static ThumbnailRenderer shared() {
+        ThumbnailRenderer s = shared;
+        if (s == null) {
+            synchronized (ThumbnailRenderer.class) {
+                if (shared == null) shared = new ThumbnailRenderer(ThumbnailCacheService.shared(), BlobStore.shared());
+                s = shared;
+            }
+        }
+        return s;
+    }
+
+    /** Renders the sizes that are not cached yet; the source is read and decoded at most once. */
+    public void prepare(BlobStore.Ref image, Size... sizes) {
+        if (image == null || image.length() == 0) return;
+        BufferedImage source = null;
+        for (Size size : sizes) {
+            String key = key(image, size);
+            if (disk != null && disk.contains(key)) continue;
+            if (source == null) {
+                source = decode(blobs.get(image));
+                if (source == null) return;
+            }
+            store(key, scale(source, size.width(), size.height()));
+        }
+    }
+
+    /** The image at the given size; empty when the blob is not a readable image. */
+    public Optional<BufferedImage> get(BlobStore.Ref image, Size size) {
+        if (image == null || image.length() == 0) return Optional.empty();
+        String key = key(image, size);
+        synchronized (memory) {
+            BufferedImage hot = memory.get(key);
+            if (hot != null) return Optional.of(hot);
+        }
+        byte[] stored = disk == null ? null : disk.get(key);
+        BufferedImage thumb = stored == null ? null : decode(stored);
+        if (thumb != null) {
+            remember(key, thumb);
+            return Optional.of(thumb);
+        }
+        BufferedImage source = decode(blobs.get(image));
+        if (source == null) return Optional.empty();
+        thumb = scale(source, size.width(), size.height());
+        store(key, thumb);
+        return Optional.of(thumb);
+    }
+
+    /**
+     * Downscales by repeated halving with bilinear filtering and finishes with one bicubic step.
+     * Every pass averages 2x2 source pixels, so the result is as smooth as an area average
+     * at a fraction of the cost of {@link Image#SCALE_SMOOTH}.
+     */
+    public static BufferedImage scale(BufferedImage source, int width, int height) {
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        while (w / 2 >= width || h / 2 >= height) {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            current = draw(current, w, h, type, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        if (w != width || h != height || current == source) {
+            current = draw(current, width, height, type, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        }
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage from, int width, int height, int type, Object interpolation) {
+        BufferedImage to = new BufferedImage(width, height, type);
+        Graphics2D g = to.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(from, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return to;
+    }
+
+    private void store(String key, BufferedImage thumb) {
+        remember(key, thumb);
+        if (disk == null) return;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(thumb, "png", out);
+            disk.put(key, out.toByteArray());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to store thumbnail {}: {}", key, e.toString());
+        }
+    }
+
+    private void remember(String key, BufferedImage thumb) {
+        long bytes = 4L * thumb.getWidth() * thumb.getHeight();
+        synchronized (memory) {
+            BufferedImage old = memory.put(key, thumb);
+            if (old != null) memoryBytes -= 4L * old.getWidth() * old.getHeight();
+            memoryBytes += bytes;
+            Iterator<BufferedImage> it = memory.values().iterator();
+            while (memoryBytes > MEMORY_BUDGET && it.hasNext()) {
+                BufferedImage oldest = it.next();
+                it.remove();
+                memoryBytes -= 4L * oldest.getWidth() * oldest.getHeight();
+            }
+        }
+    }
+
+    private static BufferedImage decode(byte[] data) {
+        if (data == null) return null;
+        try {
+            return ImageIO.read(new ByteArrayInputStream(data));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unreadable image ({} bytes): {}", data.length, e.toString());
+            return null;
+        }
+    }
+
+    static String key(BlobStore.Ref image, Size size) {
+        return "thumb:" + size.name().toLowerCase() + ":" + image.hex();
+    }
+}
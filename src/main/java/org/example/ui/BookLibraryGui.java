@@ -4,18 +4,32 @@ import com.formdev.flatlaf.FlatLaf;
 import com.formdev.flatlaf.extras.FlatAnimatedLafChange;
 import com.formdev.flatlaf.themes.FlatMacDarkLaf;
 import com.formdev.flatlaf.themes.FlatMacLightLaf;
+import org.example.model.BlobStore;
 import org.example.model.Book;
+import org.example.model.LibraryStore;
+import org.example.model.SymbolTable;
 import org.example.service.BookOrganizer;
 import org.example.service.FileService;
 import org.example.service.GenreImageService;
+import org.example.service.HostRateLimiter;
+import org.example.service.ImageMemoryCache;
 import org.example.service.LibraryScanner;
 import org.example.service.MetadataService;
+import org.example.service.ScanCatalog;
+import org.example.service.ScanSettings;
+import org.example.service.ScanStage;
+import org.example.service.SearchScheduler;
+import org.example.service.ThumbnailCacheService;
+import org.example.service.ThumbnailRenderer;
 import org.example.ui.components.BookDetailsPanel;
+import org.example.ui.components.CoverIconLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.border.LineBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
@@ -31,18 +45,29 @@ import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.List;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 public class BookLibraryGui extends JFrame {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BookLibraryGui.class);
-    private final MetadataService metadataService = new MetadataService();
+    private final MetadataService metadataService;
     private final BookOrganizer bookOrganizer = new BookOrganizer();
     private final FileService fileService = new FileService();
     private final GenreImageService genreImageService = new GenreImageService();
-
-    private final List<Book> currentBooks = new ArrayList<>();
+    private final ScanCatalog scanCatalog = new ScanCatalog();
+    private final ThumbnailRenderer thumbnails = ThumbnailRenderer.shared();
+    private final CoverIconLoader coverIcons = new CoverIconLoader(thumbnails, 2_000);
+
+    // Columns rather than Book objects: a million-book library fits, scans stay in the milliseconds
+    private final LibraryStore library = new LibraryStore();
+    // Queries and tree rebuilds run off the EDT; the tree gets the groups of the latest one only
+    private final SearchScheduler<List<DefaultMutableTreeNode>> search = new SearchScheduler<>(
+            SearchScheduler.DEFAULT_DEBOUNCE_MILLIS, this::searchTree, SwingUtilities::invokeLater, this::showSearchResult);
     private final Preferences prefs = Preferences.userNodeForPackage(BookLibraryGui.class);
+    private ScanSettings scanSettings;
+    // Last dropped files, for "rescan changes only"
+    private List<File> lastScanRoots;
 
     private DefaultMutableTreeNode root;
     private DefaultTreeModel treeModel;
@@ -57,6 +82,8 @@ public class BookLibraryGui extends JFrame {
     private BookDetailsPanel detailsPanel;
     private JTextField searchField;
     private JComboBox<String> groupModeCombo;
+    // Read by the search thread: 0-Genre, 1-Author, 2-Year
+    private volatile int groupMode;
 
     private SwingWorker<?, ?> currentWorker;
     private ResourceBundle messages;
@@ -64,9 +91,22 @@ public class BookLibraryGui extends JFrame {
 
     // Для подсчета времени сканирования
     private long startTime;
+    // Сколько книг сканер уже нашел при обходе папок
+    private int discoveredTotal;
 
     public BookLibraryGui() {
         initLocale(new Locale(prefs.get("language", "en")));
+        scanSettings = loadScanSettings();
+        // Google Books and Open Library quotas are shared by every scan worker
+        HostRateLimiter.shared().setDefaultRate(prefs.getDouble("net.requestsPerSecond", HostRateLimiter.DEFAULT_RATE));
+        loadHostRates();
+        metadataService = new MetadataService(scanSettings.getParseThreads());
+        metadataService.getExternalService().setImageCacheBudget(
+                prefs.getLong("cache.imageMemoryMb", ImageMemoryCache.DEFAULT_BUDGET / (1024 * 1024)) * 1024 * 1024);
+        ThumbnailCacheService.shared().setMaxBytes(
+                prefs.getLong("cache.coverDiskMb", ThumbnailCacheService.DEFAULT_MAX_BYTES / (1024 * 1024)) * 1024 * 1024);
+        metadataService.setOffline(prefs.getBoolean("net.offline", false));
+        metadataService.setThumbnails(thumbnails);
         initLookAndFeel();
         initUI();
         initMenuBar();
@@ -88,6 +128,42 @@ public class BookLibraryGui extends JFrame {
         } catch (Exception ignored) {}
     }
 
+    /** Per-host overrides stored as {@code net.requestsPerSecond.<host>}, e.g. for www.googleapis.com. */
+    private void loadHostRates() {
+        String prefix = "net.requestsPerSecond.";
+        try {
+            for (String key : prefs.keys()) {
+                if (!key.startsWith(prefix) || key.length() == prefix.length()) continue;
+                double rate = prefs.getDouble(key, -1);
+                if (rate > 0) {
+                    HostRateLimiter.shared().setRate(key.substring(prefix.length()), rate);
+                } else {
+                    LOGGER.warn("Ignoring invalid request rate {}={}", key, prefs.get(key, null));
+                }
+            }
+        } catch (BackingStoreException e) {
+            LOGGER.warn("Could not read per-host request rates", e);
+        }
+    }
+
+    private ScanSettings loadScanSettings() {
+        return loadScanSettings(false);
+    }
+
+    private ScanSettings loadScanSettings(boolean changesOnly) {
+        ScanSettings defaults = ScanSettings.defaults();
+        return ScanSettings.builder()
+                .concurrency(prefs.getInt("scan.concurrency", defaults.getConcurrency()))
+                .parseThreads(prefs.getInt("scan.parseThreads", defaults.getParseThreads()))
+                .ordered(prefs.getBoolean("scan.ordered", defaults.isOrdered()))
+                .changesOnly(changesOnly)
+                // 0 = derived from concurrency
+                .enrichThreads(prefs.getInt("scan.enrichThreads", 0))
+                .coverThreads(prefs.getInt("scan.coverThreads", 0))
+                .queueCapacity(prefs.getInt("scan.queueCapacity", 0))
+                .build();
+    }
+
     private void setupContextMenus() {
         JPopupMenu popupMenu = new JPopupMenu();
         JMenuItem openItem = new JMenuItem("Open"); // Localize later if needed
@@ -108,8 +184,8 @@ public class BookLibraryGui extends JFrame {
         removeItem.addActionListener(e -> {
             DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
             if (node != null && node.getUserObject() instanceof Book book) {
-                currentBooks.remove(book);
-                updateTree(currentBooks);
+                library.remove(book.getFilePath());
+                refreshTree();
             }
         });
         popupMenu.add(openItem);
@@ -140,8 +216,8 @@ public class BookLibraryGui extends JFrame {
             public void actionPerformed(java.awt.event.ActionEvent e) {
                 DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
                 if (node != null && node.getUserObject() instanceof Book book) {
-                    currentBooks.remove(book);
-                    updateTree(currentBooks);
+                    library.remove(book.getFilePath());
+                    refreshTree();
                 }
             }
         });
@@ -177,7 +253,7 @@ public class BookLibraryGui extends JFrame {
         tree.setShowsRootHandles(true);
         tree.setCellRenderer(new BookTreeCellRenderer());
 
-        detailsPanel = new BookDetailsPanel(messages);
+        detailsPanel = new BookDetailsPanel(messages, thumbnails);
         add(detailsPanel, BorderLayout.EAST);
 
         tree.addTreeSelectionListener(e -> {
@@ -240,6 +316,14 @@ public class BookLibraryGui extends JFrame {
         searchField = new JTextField();
         searchField.putClientProperty("JTextField.placeholderText", messages.getString("search.placeholder"));
         searchField.addActionListener(e -> filterBooks(searchField.getText()));
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { search.submit(searchField.getText()); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { search.submit(searchField.getText()); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { search.submit(searchField.getText()); }
+        });
         
         JButton searchButton = new JButton(messages.getString("button.search"));
         searchButton.addActionListener(e -> filterBooks(searchField.getText()));
@@ -257,7 +341,10 @@ public class BookLibraryGui extends JFrame {
                 messages.getString("filter.year")
         };
         groupModeCombo = new JComboBox<>(modes);
-        groupModeCombo.addActionListener(e -> updateTree(currentBooks));
+        groupModeCombo.addActionListener(e -> {
+            groupMode = Math.max(0, groupModeCombo.getSelectedIndex());
+            refreshTree();
+        });
 
         JPanel searchBar = new JPanel(new BorderLayout());
         searchBar.add(searchField, BorderLayout.CENTER);
@@ -300,17 +387,40 @@ public class BookLibraryGui extends JFrame {
         theme.add(light);
         theme.add(dark);
 
+        JCheckBoxMenuItem ordered = new JCheckBoxMenuItem(messages.getString("menu.scan_ordered"), scanSettings.isOrdered());
+        ordered.addActionListener(e -> {
+            prefs.putBoolean("scan.ordered", ordered.isSelected());
+            scanSettings = loadScanSettings();
+        });
+
+        JCheckBoxMenuItem offline = new JCheckBoxMenuItem(messages.getString("menu.offline"), metadataService.isOffline());
+        offline.addActionListener(e -> {
+            prefs.putBoolean("net.offline", offline.isSelected());
+            metadataService.setOffline(offline.isSelected());
+        });
+
         settings.add(lang);
         settings.add(theme);
+        settings.addSeparator();
+        settings.add(ordered);
+        settings.add(offline);
 
         JMenu tools = new JMenu(messages.getString("menu.tools"));
         JMenuItem stats = new JMenuItem(messages.getString("menu.stats"));
         stats.addActionListener(e -> showStatistics());
         JMenuItem dups = new JMenuItem(messages.getString("menu.duplicates"));
         dups.addActionListener(e -> findDuplicates());
-        
+        JMenuItem rescan = new JMenuItem(messages.getString("menu.rescan_changes"));
+        rescan.addActionListener(e -> {
+            if (lastScanRoots != null && (currentWorker == null || currentWorker.isDone())) {
+                processFiles(lastScanRoots, true);
+            }
+        });
+
         tools.add(stats);
         tools.add(dups);
+        tools.addSeparator();
+        tools.add(rescan);
 
         bar.add(settings);
         bar.add(tools);
@@ -318,32 +428,41 @@ public class BookLibraryGui extends JFrame {
     }
 
     private void showStatistics() {
-        if (currentBooks.isEmpty()) return;
-
-        long genresCount = currentBooks.stream().map(Book::getGenre).distinct().count();
-        long authorsCount = currentBooks.stream().map(Book::getAuthor).distinct().count();
-        Map<String, Long> formats = currentBooks.stream()
-                .collect(java.util.stream.Collectors.groupingBy(Book::getFormat, java.util.stream.Collectors.counting()));
+        if (library.isEmpty()) return;
+
+        int genresCount = library.distinct(LibraryStore.Column.GENRE);
+        int authorsCount = library.distinct(LibraryStore.Column.AUTHOR);
+        int[] formatCounts = library.countBy(LibraryStore.Column.FORMAT, library.rows());
+        SymbolTable formatNames = library.symbols(LibraryStore.Column.FORMAT);
+        Map<String, Integer> formats = new TreeMap<>();
+        for (int id = 0; id < formatCounts.length; id++) {
+            if (formatCounts[id] > 0) formats.put(formatNames.value(id), formatCounts[id]);
+        }
 
         StringBuilder sb = new StringBuilder();
-        sb.append(MessageFormat.format(messages.getString("stats.total_books"), currentBooks.size())).append("\n");
+        sb.append(MessageFormat.format(messages.getString("stats.total_books"), library.size())).append("\n");
         sb.append(MessageFormat.format(messages.getString("stats.genres"), genresCount)).append("\n");
         sb.append(MessageFormat.format(messages.getString("stats.authors"), authorsCount)).append("\n\n");
         sb.append(messages.getString("stats.formats")).append("\n");
         formats.forEach((f, c) -> sb.append(f.isEmpty() ? "Unknown" : f).append(": ").append(c).append("\n"));
+        BlobStore.Stats blobs = library.imageStats();
+        sb.append("\n").append(MessageFormat.format(messages.getString("stats.images"),
+                blobs.blobs(), blobs.references(), blobs.savedBytes() / 1048576.0));
+        SearchScheduler.Stats queries = search.stats();
+        if (queries.completed() > 0) {
+            sb.append("\n").append(MessageFormat.format(messages.getString("stats.search"),
+                    queries.completed(), queries.averageMillis(), queries.maxMillis(), queries.cancelled()));
+        }
 
         JOptionPane.showMessageDialog(this, sb.toString(), messages.getString("stats.title"), JOptionPane.INFORMATION_MESSAGE);
     }
 
     private void findDuplicates() {
-        if (currentBooks.isEmpty()) return;
+        if (library.isEmpty()) return;
 
-        Map<String, List<Book>> map = currentBooks.stream()
-                .collect(java.util.stream.Collectors.groupingBy(b -> (b.getTitle() + "|" + b.getAuthor()).toLowerCase()));
-
-        List<String> duplicates = map.entrySet().stream()
-                .filter(e -> e.getValue().size() > 1)
-                .map(e -> e.getValue().get(0).getTitle() + " (" + e.getValue().get(0).getAuthor() + ") x" + e.getValue().size())
+        List<String> duplicates = library.duplicates().stream()
+                .map(rows -> library.title(rows[0]) + " ("
+                        + library.value(LibraryStore.Column.AUTHOR, rows[0]) + ") x" + rows.length)
                 .toList();
 
         if (duplicates.isEmpty()) {
@@ -423,17 +542,17 @@ public class BookLibraryGui extends JFrame {
     }
 
     private void filterBooks(String query) {
-        if (query == null || query.isBlank()) {
-            updateTree(currentBooks);
-            return;
-        }
-        String q = query.toLowerCase();
-        List<Book> filtered = currentBooks.stream()
-                .filter(b -> b.getTitle().toLowerCase().contains(q) ||
-                        b.getAuthor().toLowerCase().contains(q) ||
-                        b.getGenre().toLowerCase().contains(q))
-                .toList();
-        updateTree(filtered);
+        search.submitNow(query == null ? "" : query);
+    }
+
+    /** Rebuilds the tree for what is in the search field. */
+    private void refreshTree() {
+        filterBooks(searchField.getText());
+    }
+
+    /** Same for books the scanner added or enriched: never cancels a tree being built, only queues one more. */
+    private void refreshTreeAfterScan() {
+        search.refresh(searchField.getText());
     }
 
     private void openBook(Book book) {
@@ -489,31 +608,50 @@ public class BookLibraryGui extends JFrame {
     /* ===================== SCAN FILES ===================== */
 
     private void processFiles(List<File> files) {
-        currentBooks.clear();
+        processFiles(files, false);
+    }
+
+    /**
+     * Scans the files. Unchanged books come from the catalog; with {@code changesOnly} the current
+     * list is kept and only new or modified files are added to it or replace their old entry; books
+     * whose files are no longer under the scanned folders are dropped once the walk is complete.
+     */
+    private void processFiles(List<File> files, boolean changesOnly) {
+        lastScanRoots = List.copyOf(files);
+        if (!changesOnly) {
+            library.clear();
+        }
         organizeButton.setEnabled(false);
         cancelButton.setEnabled(true);
         startTime = System.currentTimeMillis();
         statusLabel.setText(messages.getString("status.preparing"));
-        
-        int approxTotal = estimateFileCount(files);
-        progressBar.setIndeterminate(approxTotal == 0);
-        progressBar.setMaximum(approxTotal > 0 ? approxTotal : 100);
+
+        // the total grows while the scanner walks the tree; until the first count arrives there is none
+        discoveredTotal = 0;
+        progressBar.setIndeterminate(true);
+        progressBar.setMaximum(100);
         progressBar.setValue(0);
+        progressBar.setStringPainted(false);
         progressBar.setVisible(true);
 
-        LibraryScanner scanner = new LibraryScanner(files, metadataService, 
+        LibraryScanner scanner = new LibraryScanner(files, metadataService, loadScanSettings(changesOnly),
             books -> {
-                currentBooks.addAll(books);
-                updateTree(currentBooks);
+                // a rescanned file overwrites its row
+                books.forEach(library::add);
+                refreshTreeAfterScan();
             },
             processed -> {
-                int total = approxTotal;
+                int total = discoveredTotal;
                 int remaining = Math.max(0, total - processed);
                 long elapsed = System.currentTimeMillis() - startTime;
 
                 if (!progressBar.isIndeterminate()) {
                     progressBar.setValue(processed);
                 }
+                if (currentWorker instanceof LibraryScanner running && !running.getStageStats().isEmpty()) {
+                    progressBar.setStringPainted(true);
+                    progressBar.setString(formatStages(running.getStageStats()));
+                }
 
                 statusLabel.setText(
                         MessageFormat.format(
@@ -527,28 +665,70 @@ public class BookLibraryGui extends JFrame {
             },
             () -> {
                 cancelButton.setEnabled(false);
-                organizeButton.setEnabled(!currentBooks.isEmpty());
-                statusLabel.setText(
-                        MessageFormat.format(messages.getString("status.found"), currentBooks.size())
-                );
+                organizeButton.setEnabled(!library.isEmpty());
+                if (changesOnly && currentWorker instanceof LibraryScanner finished) {
+                    removeGone(finished);
+                }
+                LOGGER.info("Image cache: {}", metadataService.getExternalService().getImageCacheStats());
+                LOGGER.info("Covers and photos: {}; {} downloads ({} KB) matched an image already on disk",
+                        library.imageStats(), metadataService.getExternalService().getSharedDownloads(),
+                        metadataService.getExternalService().getSharedDownloadBytes() / 1024);
+                if (currentWorker instanceof LibraryScanner finished && finished.getCatalogHits() > 0) {
+                    statusLabel.setText(MessageFormat.format(messages.getString("status.catalog"),
+                            library.size(), finished.getCatalogHits(), finished.getCatalogMisses()));
+                } else {
+                    statusLabel.setText(
+                            MessageFormat.format(messages.getString("status.found"), library.size())
+                    );
+                }
                 progressBar.setVisible(false);
             }
         );
         scanner.setStartTime(startTime);
+        scanner.setCatalog(scanCatalog);
+        scanner.setOnBooksUpdated(this::replaceBooks);
+        scanner.addPropertyChangeListener(evt -> {
+            if ("discovered".equals(evt.getPropertyName())) {
+                discoveredTotal = (Integer) evt.getNewValue();
+                progressBar.setIndeterminate(false);
+                progressBar.setMaximum(Math.max(1, discoveredTotal));
+            }
+        });
         currentWorker = scanner;
-        scanner.execute();
+        scanner.start();
     }
 
-    private int estimateFileCount(List<File> files) {
-        int count = 0;
-        for (File f : files) {
-            if (f.isFile() && isBookFile(f)) count++;
-            else if (f.isDirectory()) {
-                File[] children = f.listFiles();
-                if (children != null) count += estimateFileCount(Arrays.asList(children));
-            }
+    /** Drops the books whose files the rescan no longer found. */
+    private void removeGone(LibraryScanner scanner) {
+        boolean removed = false;
+        for (int row : library.rows()) {
+            Path path = library.path(row);
+            if (scanner.isGone(path)) removed |= library.remove(path);
+        }
+        if (removed) refreshTree();
+    }
+
+    /** Swaps in enriched versions of books already in the list, matched by file path. */
+    private void replaceBooks(List<Book> books) {
+        Map<Path, Book> byPath = new HashMap<>();
+        books.forEach(b -> {
+            if (library.update(b)) byPath.put(b.getFilePath(), b);
+        });
+        refreshTreeAfterScan();
+        Book shown = detailsPanel.getCurrentBook();
+        if (shown != null && byPath.containsKey(shown.getFilePath())) {
+            detailsPanel.updateDetails(byPath.get(shown.getFilePath()));
+        }
+    }
+
+    private String formatStages(List<ScanStage.Stats> stats) {
+        StringBuilder sb = new StringBuilder();
+        for (ScanStage.Stats st : stats) {
+            if (sb.length() > 0) sb.append("  |  ");
+            sb.append(MessageFormat.format(messages.getString("status.stage"),
+                    messages.getString("stage." + st.name()), st.queued(), st.perSecond()));
         }
-        return count;
+        return sb.toString();
     }
 
     private String formatTime(long millis) {
@@ -590,7 +770,8 @@ public class BookLibraryGui extends JFrame {
         organizeButton.setEnabled(false);
 
         progressBar.setIndeterminate(false);
-        progressBar.setMaximum(currentBooks.size());
+        int[] rows = library.rows();
+        progressBar.setMaximum(rows.length);
         progressBar.setValue(0);
         progressBar.setVisible(true);
 
@@ -598,8 +779,10 @@ public class BookLibraryGui extends JFrame {
             @Override
             protected Void doInBackground() {
                 int i = 0;
-                for (Book book : currentBooks) {
+                for (int row : rows) {
                     if (isCancelled()) break;
+                    Book book = library.book(row);
+                    if (book == null) continue;
                     try {
                         fileService.organizeBook(book, targetDir);
                         publish(++i);
@@ -616,7 +799,7 @@ public class BookLibraryGui extends JFrame {
                         MessageFormat.format(
                                 messages.getString("status.copying"),
                                 processed,
-                                currentBooks.size()
+                                rows.length
                         )
                 );
             }
@@ -638,42 +821,36 @@ public class BookLibraryGui extends JFrame {
 
     /* ===================== TREE ===================== */
 
-    private void updateTree(List<Book> books) {
-        root.removeAllChildren();
-        if (books != null) {
-            int mode = groupModeCombo.getSelectedIndex(); // 0-Genre, 1-Author, 2-Year
-            Map<String, List<Book>> grouped = new TreeMap<>();
-
-            for (Book b : books) {
-                String key;
-                if (mode == 1) key = b.getAuthor();
-                else if (mode == 2) key = b.getYear();
-                else key = b.getGenre();
-
-                grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(b);
-            }
-
-            for (Map.Entry<String, List<Book>> entry : grouped.entrySet()) {
-                DefaultMutableTreeNode groupNode = new DefaultMutableTreeNode(entry.getKey());
-                for (Book b : entry.getValue()) {
-                    groupNode.add(new DefaultMutableTreeNode(b));
-                }
-                root.add(groupNode);
-            }
+    /** Runs on the search thread: the group nodes for the query, not yet attached to the tree. */
+    private List<DefaultMutableTreeNode> searchTree(String query) throws InterruptedException {
+        LibraryStore.Column column = groupMode == 1 ? LibraryStore.Column.AUTHOR
+                : groupMode == 2 ? LibraryStore.Column.YEAR : LibraryStore.Column.GENRE;
+        List<DefaultMutableTreeNode> groups = new ArrayList<>();
+        for (LibraryStore.Group group : library.searchGroups(query, column)) {
+            DefaultMutableTreeNode groupNode = new DefaultMutableTreeNode(group.value());
+            for (Book book : group.books()) groupNode.add(new DefaultMutableTreeNode(book));
+            groups.add(groupNode);
         }
-        treeModel.reload();
+        return groups;
     }
 
-    private boolean isBookFile(File f) {
-        String n = f.getName().toLowerCase();
-        return n.endsWith(".pdf") || n.endsWith(".epub") || n.endsWith(".fb2") || n.endsWith(".mobi");
+    /** On the EDT: swaps the whole tree in one go. */
+    private void showSearchResult(String query, List<DefaultMutableTreeNode> groups) {
+        root.removeAllChildren();
+        int books = 0;
+        for (DefaultMutableTreeNode group : groups) {
+            books += group.getChildCount();
+            root.add(group);
+        }
+        treeModel.reload();
+        if (!query.isBlank() && (currentWorker == null || currentWorker.isDone())) {
+            statusLabel.setText(MessageFormat.format(messages.getString("status.search"), books, query));
+        }
     }
 
     /* ===================== RENDERER ===================== */
 
     private class BookTreeCellRenderer extends DefaultTreeCellRenderer {
-        private final Map<Book, ImageIcon> coverCache = new WeakHashMap<>();
-
         @Override
         public Component getTreeCellRendererComponent(JTree tree, Object value,
                                                       boolean sel, boolean exp, boolean leaf, int row, boolean focus) {
@@ -684,20 +861,8 @@ public class BookLibraryGui extends JFrame {
                 Object userObject = node.getUserObject();
                 if (userObject instanceof Book book) {
                     setText(book.getTitle());
-                    ImageIcon icon = null;
-                    if (book.getCover() != null && book.getCover().length > 0) {
-                        icon = coverCache.computeIfAbsent(book, b -> {
-                            try {
-                                ImageIcon original = new ImageIcon(b.getCover());
-                                if (original.getIconWidth() > 0) {
-                                    Image img = original.getImage().getScaledInstance(24, 24, Image.SCALE_SMOOTH);
-                                    return new ImageIcon(img);
-                                }
-                            } catch (Exception ignored) {}
-                            return null;
-                        });
-                    }
-                    
+                    // the placeholder stays until the loader has the cover, then the row is repainted
+                    ImageIcon icon = coverIcons.icon(book.getCoverRef(), tree, row);
                     if (icon == null) {
                         icon = genreImageService.getDefaultBookIcon();
                     }
@@ -717,6 +882,7 @@ public class BookLibraryGui extends JFrame {
         if (currentWorker != null && !currentWorker.isDone()) {
             currentWorker.cancel(true);
         }
+        search.close();
         dispose();
         System.exit(0);
     }
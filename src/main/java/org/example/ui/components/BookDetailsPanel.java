@@ -1,25 +1,49 @@
 package org.example.ui.components;
 
+import org.example.model.BlobStore;
 import org.example.model.Book;
+import org.example.service.ThumbnailRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Optional;
 import java.util.ResourceBundle;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The selected book. The text is shown right away; the cover and author photo are decoded and
+ * scaled on a background worker and applied on the EDT, unless another book was selected meanwhile.
+ */
 public class BookDetailsPanel extends JPanel {
     private static final Logger LOGGER = LoggerFactory.getLogger(BookDetailsPanel.class);
+
+    private record Images(Optional<BufferedImage> cover, Optional<BufferedImage> photo) {}
+
     private final JLabel coverLabel;
     private final JLabel authorPhotoLabel;
     private final JTextArea infoArea;
     private final JButton descriptionButton;
     private final JButton youtubeButton;
+    private final ThumbnailRenderer thumbnails;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("book-details").factory());
+    // Bumped on every selection; a load for an older one is skipped or dropped
+    private final AtomicLong generation = new AtomicLong();
     private ResourceBundle messages;
     private Book currentBook;
 
     public BookDetailsPanel(ResourceBundle messages) {
+        this(messages, new ThumbnailRenderer(null, BlobStore.shared()));
+    }
+
+    public BookDetailsPanel(ResourceBundle messages, ThumbnailRenderer thumbnails) {
         this.messages = messages;
+        this.thumbnails = thumbnails;
         setLayout(new BorderLayout());
         setPreferredSize(new Dimension(300, 0));
         updateBorder();
@@ -74,32 +98,9 @@ public class BookDetailsPanel extends JPanel {
 
     public void updateDetails(Book book) {
         this.currentBook = book;
-        if (book.getCover() != null) {
-            ImageIcon icon = new ImageIcon(book.getCover());
-            if (icon.getIconWidth() > 0) {
-                Image img = icon.getImage().getScaledInstance(200, 280, Image.SCALE_SMOOTH);
-                coverLabel.setIcon(new ImageIcon(img));
-                coverLabel.setText(null);
-            } else {
-                showNoCover();
-            }
-        } else {
-            showNoCover();
-        }
-
-        if (book.getAuthorPhoto() != null) {
-            ImageIcon icon = new ImageIcon(book.getAuthorPhoto());
-            if (icon.getIconWidth() > 0) {
-                Image img = icon.getImage().getScaledInstance(150, 150, Image.SCALE_SMOOTH);
-                authorPhotoLabel.setIcon(new ImageIcon(img));
-                authorPhotoLabel.setText(null);
-                authorPhotoLabel.setVisible(true);
-            } else {
-                authorPhotoLabel.setVisible(false);
-            }
-        } else {
-            authorPhotoLabel.setVisible(false);
-        }
+        long gen = generation.incrementAndGet();
+        clearImages();
+        loader.execute(() -> loadImages(gen, book));
 
         String info = java.text.MessageFormat.format(
                 "{0}: {1}\n{2}: {3}\n{4}: {5}\n{6}: {7}\n{8}: {9}\n{10}: {11}\n{12}: {13}",
@@ -119,6 +120,46 @@ public class BookDetailsPanel extends JPanel {
         youtubeButton.setVisible(hasTitleAndAuthor);
     }
 
+    private void loadImages(long gen, Book book) {
+        if (gen != generation.get()) return;
+        Images images;
+        try {
+            images = new Images(thumbnails.get(book.getCoverRef(), ThumbnailRenderer.Size.DETAILS),
+                    thumbnails.get(book.getAuthorPhotoRef(), ThumbnailRenderer.Size.AUTHOR));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to load images for {}", book.getFilePath(), e);
+            images = new Images(Optional.empty(), Optional.empty());
+        }
+        Images ready = images;
+        SwingUtilities.invokeLater(() -> {
+            if (gen == generation.get()) showImages(ready);
+        });
+    }
+
+    private void showImages(Images images) {
+        if (images.cover().isPresent()) {
+            coverLabel.setIcon(new ImageIcon(images.cover().get()));
+            coverLabel.setText(null);
+        } else {
+            showNoCover();
+        }
+        if (images.photo().isPresent()) {
+            authorPhotoLabel.setIcon(new ImageIcon(images.photo().get()));
+            authorPhotoLabel.setText(null);
+            authorPhotoLabel.setVisible(true);
+        } else {
+            authorPhotoLabel.setVisible(false);
+        }
+    }
+
+    /** Blank until this book's images are loaded, so the previous book's cover is not shown with it. */
+    private void clearImages() {
+        coverLabel.setIcon(null);
+        coverLabel.setText(null);
+        authorPhotoLabel.setIcon(null);
+        authorPhotoLabel.setText(null);
+    }
+
     private void showNoCover() {
         coverLabel.setIcon(null);
         coverLabel.setText(messages.getString("details.no_cover"));
@@ -155,6 +196,10 @@ public class BookDetailsPanel extends JPanel {
         }
     }
 
+    public Book getCurrentBook() {
+        return currentBook;
+    }
+
     public void setMessages(ResourceBundle messages) {
         this.messages = messages;
         updateBorder();
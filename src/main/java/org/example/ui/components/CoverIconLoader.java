@@ -0,0 +1,121 @@
+package org.example.ui.components;
+
+import org.example.model.BlobStore;
+import org.example.service.ThumbnailRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.tree.TreePath;
+import java.awt.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Tree cover icons, decoded off the Event Dispatch Thread. The renderer asks for an icon while
+ * painting a row; when it is not ready yet the renderer paints a placeholder and a background
+ * worker loads the thumbnail, then repaints just the rows that asked for it. The newest request is served first,
+ * so the rows on screen win over the ones scrolled past, and requests nobody painted again for
+ * a while are dropped. Ready icons live in a bounded LRU; everything but the workers runs on the EDT.
+ */
+public class CoverIconLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoverIconLoader.class);
+    /** Requests beyond this many are the rows scrolled past the longest ago; they are dropped. */
+    private static final int MAX_QUEUED = 256;
+    // Remembered for covers that cannot be decoded, so they are not retried on every paint
+    private static final ImageIcon NONE = new ImageIcon();
+
+    private record Request(BlobStore.Ref cover, JTree tree) {}
+
+    private final ThumbnailRenderer thumbnails;
+    private final int maxIcons;
+    // Keyed by content: every edition with the same cover shares one icon
+    private final LinkedHashMap<BlobStore.Ref, ImageIcon> icons;
+    // Rows waiting for each queued cover; rows of editions sharing a cover wait for the same request
+    private final Map<BlobStore.Ref, Set<TreePath>> pending = new HashMap<>();
+    private final BlockingDeque<Request> queue = new LinkedBlockingDeque<>();
+
+    public CoverIconLoader(ThumbnailRenderer thumbnails, int maxIcons) {
+        this(thumbnails, maxIcons, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public CoverIconLoader(ThumbnailRenderer thumbnails, int maxIcons, int workers) {
+        this.thumbnails = thumbnails;
+        this.maxIcons = maxIcons;
+        this.icons = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BlobStore.Ref, ImageIcon> eldest) {
+                return size() > CoverIconLoader.this.maxIcons;
+            }
+        };
+        ThreadFactory factory = Thread.ofPlatform().daemon().name("cover-icons-", 0).factory();
+        for (int i = 0; i < workers; i++) {
+            factory.newThread(this::work).start();
+        }
+    }
+
+    /**
+     * The 24x24 icon for a cover, or null while it is loading or when the cover is unreadable.
+     * A missing icon is queued and every row that asked for it is repainted once it is ready. EDT only.
+     */
+    public ImageIcon icon(BlobStore.Ref cover, JTree tree, int row) {
+        if (cover == null || cover.length() == 0) return null;
+        ImageIcon icon = icons.get(cover);
+        if (icon != null) return icon == NONE ? null : icon;
+        Set<TreePath> rows = pending.get(cover);
+        if (rows == null) {
+            rows = new LinkedHashSet<>();
+            pending.put(cover, rows);
+            queue.offerFirst(new Request(cover, tree));
+            while (queue.size() > MAX_QUEUED) {
+                Request stale = queue.pollLast();
+                if (stale != null) pending.remove(stale.cover());
+            }
+        }
+        rows.add(tree.getPathForRow(row));
+        return null;
+    }
+
+    private void work() {
+        while (true) {
+            Request request;
+            try {
+                request = queue.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            ImageIcon icon;
+            try {
+                icon = thumbnails.get(request.cover(), ThumbnailRenderer.Size.TREE).map(ImageIcon::new).orElse(NONE);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to load cover icon", e);
+                icon = NONE;
+            }
+            ImageIcon ready = icon;
+            SwingUtilities.invokeLater(() -> loaded(request, ready));
+        }
+    }
+
+    private void loaded(Request request, ImageIcon icon) {
+        Set<TreePath> rows = pending.remove(request.cover());
+        // dropped meanwhile: still worth keeping, it was decoded already
+        icons.put(request.cover(), icon);
+        if (icon == NONE || rows == null) return;
+        JTree tree = request.tree();
+        for (TreePath path : rows) {
+            // rows asked for outside of painting (size computations) have no path
+            Rectangle bounds = path == null ? null : tree.getPathBounds(path);
+            if (bounds == null) {
+                tree.repaint();
+                return;
+            }
+            tree.repaint(bounds);
+        }
+    }
+}
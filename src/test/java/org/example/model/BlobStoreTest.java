@@ -0,0 +1,101 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlobStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(int size, int seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testRoundTripThroughFile() throws Exception {
+        Path file = tempDir.resolve("blobs.bin");
+        BlobStore store = new BlobStore(file, 1024);
+        List<BlobStore.Ref> refs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            refs.add(store.put(bytes(100 + i * 37, i)));
+        }
+        // far more than the hot budget, so most reads come from the file
+        for (int i = 0; i < 200; i++) {
+            assertArrayEquals(bytes(100 + i * 37, i), store.get(refs.get(i)));
+        }
+        assertTrue(store.fileSize() > 100_000);
+        store.close();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testIdenticalContentIsStoredOnce() throws Exception {
+        Path file = tempDir.resolve("blobs.bin");
+        BlobStore store = new BlobStore(file, BlobStore.DEFAULT_HOT_BYTES);
+        BlobStore.Ref first = store.put(bytes(5_000, 1));
+        BlobStore.Ref second = store.put(bytes(5_000, 1));
+        assertEquals(first, second);
+        assertEquals(Integer.valueOf(1), Integer.valueOf(store.size()));
+        assertEquals(5_000, store.fileSize());
+        assertNotEquals(first, store.put(bytes(5_000, 2)));
+        store.close();
+    }
+
+    @Test
+    public void testHeapOnlyStore() {
+        BlobStore store = new BlobStore(null, 0);
+        BlobStore.Ref ref = store.put(bytes(300, 7));
+        assertArrayEquals(bytes(300, 7), store.get(ref));
+        assertNull(store.get(BlobStore.Ref.of(bytes(300, 8))));
+        assertNull(store.get(null));
+    }
+
+    @Test
+    public void testAttachedBlobIsReadOnDemand() {
+        BlobStore store = new BlobStore(null, BlobStore.DEFAULT_HOT_BYTES);
+        byte[] data = bytes(400, 9);
+        BlobStore.Ref ref = BlobStore.Ref.of(data);
+        int[] reads = new int[1];
+        store.attach(ref, r -> {
+            reads[0]++;
+            return data;
+        });
+        assertEquals(0, reads[0]);
+        assertArrayEquals(data, store.get(ref));
+        assertArrayEquals(data, store.get(ref));
+        assertEquals(1, reads[0]);
+
+        BlobStore.Ref gone = BlobStore.Ref.of(bytes(400, 10));
+        store.attach(gone, r -> null);
+        assertNull(store.get(gone));
+    }
+
+    @Test
+    public void testBookKeepsOnlyHandles() {
+        byte[] cover = bytes(2_000, 3);
+        Book book = Book.builder()
+                .title("Solaris")
+                .filePath(Paths.get("solaris.fb2"))
+                .description("Ocean")
+                .cover(cover)
+                .build();
+        Book copy = book.toBuilder().genre("Science Fiction").build();
+        assertEquals(book.getCoverRef(), copy.getCoverRef());
+        assertArrayEquals(cover, copy.getCover());
+        assertEquals("Ocean", copy.getDescription());
+        assertNull(copy.getAuthorPhoto());
+        assertEquals("", Book.builder().filePath(Paths.get("x.pdf")).build().getDescription());
+    }
+}
@@ -0,0 +1,295 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryStoreTest {
+
+    private static Book book(String title, String author, String genre, String path) {
+        return Book.builder().title(title).author(author).genre(genre).filePath(Paths.get(path)).build();
+    }
+
+    @Test
+    public void testRowsRoundTrip() {
+        LibraryStore store = new LibraryStore();
+        Book original = Book.builder()
+                .title("Пикник на обочине")
+                .author("Стругацкие")
+                .series("Полдень")
+                .seriesIndex(3)
+                .genre("Science Fiction")
+                .language("ru")
+                .year("1972")
+                .format("FB2")
+                .filePath(Paths.get("/library/strugatsky/picnic.fb2"))
+                .description("Зона")
+                .build();
+        int row = store.add(original);
+        Book copy = store.book(row);
+        assertEquals(original, copy);
+        assertEquals("Полдень", copy.getSeries());
+        assertEquals(Integer.valueOf(3), copy.getSeriesIndex());
+        assertEquals("FB2", copy.getFormat());
+        assertEquals("Зона", copy.getDescription());
+        assertEquals(original.getFilePath(), store.path(row));
+        assertNull(store.book(store.add(book("Untitled", null, null, "notes.txt"))).getSeriesIndex());
+        assertEquals(Paths.get("notes.txt"), store.path(1));
+    }
+
+    @Test
+    public void testSameFileOverwritesItsRow() {
+        LibraryStore store = new LibraryStore();
+        int row = store.add(book("Draft", "A", "Drama", "/b/draft.epub"));
+        store.add(book("Other", "B", "Drama", "/b/other.epub"));
+        assertEquals(row, store.add(book("A much longer final title", "A", "Horror", "/b/draft.epub")));
+        assertEquals(2, store.size());
+        assertEquals("A much longer final title", store.title(row));
+        assertEquals("Other", store.title(1));
+
+        assertTrue(store.update(book("Final", "A", "Horror", "/b/draft.epub")));
+        assertFalse(store.update(book("New", "A", "Horror", "/b/new.epub")));
+        assertEquals("Final", store.title(row));
+
+        assertTrue(store.remove(Paths.get("/b/draft.epub")));
+        assertFalse(store.remove(Paths.get("/b/draft.epub")));
+        assertNull(store.book(row));
+        assertArrayEquals(new int[]{1}, store.rows());
+        assertEquals(row, store.add(book("Back", "A", "Horror", "/b/draft.epub")));
+        assertEquals(2, store.size());
+
+        store.clear();
+        assertTrue(store.isEmpty());
+        assertEquals(0, store.add(book("Other", "B", "Drama", "/b/other.epub")));
+    }
+
+    @Test
+    public void testFilterCountAndGroup() {
+        LibraryStore store = new LibraryStore();
+        for (int i = 0; i < 1_000; i++) {
+            store.add(book("Book " + i, "Store author " + (i % 7), "Store genre " + (i % 3), "/g/" + i + ".pdf"));
+        }
+        store.remove(Paths.get("/g/0.pdf"));
+        SymbolTable genres = store.symbols(LibraryStore.Column.GENRE);
+        int genre = genres.id("Store genre 0");
+        int[] rows = store.filter(LibraryStore.Column.GENRE, genre);
+        assertEquals(333, rows.length);
+        for (int row : rows) assertEquals("Store genre 0", store.book(row).getGenre());
+
+        int[] counts = store.countBy(LibraryStore.Column.GENRE, store.rows());
+        assertEquals(333, counts[genre]);
+        assertEquals(333, counts[genres.id("Store genre 1")]);
+        assertEquals(3, store.distinct(LibraryStore.Column.GENRE));
+        assertEquals(7, store.distinct(LibraryStore.Column.AUTHOR));
+
+        int[][] groups = store.groupBy(LibraryStore.Column.AUTHOR, rows);
+        int total = 0;
+        for (int[] group : groups) {
+            if (group == null) continue;
+            total += group.length;
+            int author = store.id(LibraryStore.Column.AUTHOR, group[0]);
+            for (int row : group) assertEquals(author, store.id(LibraryStore.Column.AUTHOR, row));
+        }
+        assertEquals(rows.length, total);
+    }
+
+    @Test
+    public void testValuesAreScopedToTheStore() {
+        LibraryStore other = new LibraryStore();
+        for (int i = 0; i < 500; i++) other.add(book("Elsewhere " + i, "Other author " + i, "Other genre", "/o/" + i + ".epub"));
+
+        LibraryStore store = new LibraryStore();
+        store.add(book("Kept", "Scoped author", "Scoped genre", "/k/1.epub"));
+        store.add(book("Gone", "Scoped author", "Dropped genre", "/k/2.epub"));
+        assertEquals(2, store.countBy(LibraryStore.Column.GENRE, store.rows()).length);
+        assertEquals(1, store.groupBy(LibraryStore.Column.AUTHOR, store.rows()).length);
+        assertEquals(0, store.search("other author").length);
+
+        store.clear();
+        store.add(book("Kept", "Scoped author", "Scoped genre", "/k/1.epub"));
+        assertEquals(1, store.countBy(LibraryStore.Column.GENRE, store.rows()).length);
+        assertEquals("Scoped genre", store.value(LibraryStore.Column.GENRE, 0));
+        assertEquals("Scoped genre", store.book(0).getGenre());
+        assertEquals(Book.GENRES.id("Scoped genre"), store.book(0).getGenreId());
+    }
+
+    @Test
+    public void testSearchAndDuplicates() {
+        LibraryStore store = new LibraryStore();
+        store.add(book("Мастер и Маргарита", "Булгаков", "Classic", "/s/1.fb2"));
+        store.add(book("Dune", "Frank Herbert", "Science Fiction", "/s/2.epub"));
+        store.add(book("dune", "FRANK HERBERT", "Science Fiction", "/s/3.pdf"));
+        store.add(book("Emma", "Jane Austen", "Romance", "/s/4.epub"));
+
+        assertArrayEquals(new int[]{0}, store.search("МАРГАР"));
+        assertArrayEquals(new int[]{1, 2}, store.search("herb"));
+        assertArrayEquals(new int[]{1, 2}, store.search("fiction"));
+        assertArrayEquals(new int[]{3}, store.search("emm"));
+        assertEquals(0, store.search("nothing").length);
+
+        List<int[]> duplicates = store.duplicates();
+        assertEquals(1, duplicates.size());
+        assertArrayEquals(new int[]{1, 2}, duplicates.get(0));
+    }
+
+    @Test
+    public void testSearchGroups() throws InterruptedException {
+        LibraryStore store = new LibraryStore();
+        store.add(book("Emma", "Jane Austen", "Romance", "/g/1.epub"));
+        store.add(book("Dune", "Frank Herbert", "Science Fiction", "/g/2.epub"));
+        store.add(book("Persuasion", "Jane Austen", "Romance", "/g/3.epub"));
+        store.remove(Paths.get("/g/2.epub"));
+        store.add(book("Dune Messiah", "Frank Herbert", "Science Fiction", "/g/4.epub"));
+
+        List<LibraryStore.Group> all = store.searchGroups("", LibraryStore.Column.AUTHOR);
+        assertEquals(List.of("Frank Herbert", "Jane Austen"), all.stream().map(LibraryStore.Group::value).toList());
+        assertEquals(List.of("Dune Messiah"), all.get(0).books().stream().map(Book::getTitle).toList());
+        assertEquals(List.of("Emma", "Persuasion"), all.get(1).books().stream().map(Book::getTitle).toList());
+
+        List<LibraryStore.Group> found = store.searchGroups("dune", LibraryStore.Column.GENRE);
+        assertEquals(1, found.size());
+        assertEquals("Science Fiction", found.get(0).value());
+        assertEquals(Paths.get("/g/4.epub"), found.get(0).books().get(0).getFilePath());
+
+        store.clear();
+        assertTrue(store.searchGroups("", LibraryStore.Column.AUTHOR).isEmpty());
+    }
+
+    @Test
+    public void testSearchEmptyStore() {
+        LibraryStore store = new LibraryStore();
+        assertEquals(0, store.search("abc").length);
+        assertEquals(0, store.search("a").length);
+        assertEquals(0, store.search("no series").length);
+
+        store.add(book("Alphabet", "Abc author", "Abc", "/e/1.epub"));
+        store.clear();
+        assertEquals(0, store.search("abc").length);
+    }
+
+    @Test
+    public void testSearchFollowsRewrittenRows() {
+        LibraryStore store = new LibraryStore();
+        for (int i = 0; i < 3_000; i++) {
+            store.add(book("Volume " + i, "Rewrite author", "Rewrite genre", "/r/" + i + ".epub"));
+        }
+        store.update(book("Solaris", "Rewrite author", "Rewrite genre", "/r/5.epub"));
+        store.add(book("Eden", "Stanisław Lem", "Rewrite genre", "/r/6.epub"));
+        assertArrayEquals(new int[]{5}, store.search("solar"));
+        assertArrayEquals(new int[]{6}, store.search("lem"));
+        assertEquals(0, store.search("volume 5 ").length);
+
+        // enough rewrites to rebuild the index
+        for (int i = 0; i < 3_000; i += 2) {
+            store.update(book("Tome " + i, "Rewrite author", "Rewrite genre", "/r/" + i + ".epub"));
+        }
+        assertEquals(1_500, store.search("tome").length);
+        assertEquals(1_499, store.search("volume").length);
+        store.remove(Paths.get("/r/7.epub"));
+        assertEquals(1_498, store.search("volume").length);
+
+        store.add(Book.builder().title("Untitled").series("Rewrite saga").filePath(Paths.get("/r/saga.fb2")).build());
+        assertArrayEquals(new int[]{3_000}, store.search("saga"));
+        assertEquals(0, store.search("no series").length);
+    }
+
+    @Test
+    public void testImageStatsCountLiveRows() {
+        LibraryStore store = new LibraryStore();
+        byte[] cover = new byte[1_000];
+        byte[] photo = new byte[300];
+        photo[0] = 1;
+        for (int round = 0; round < 3; round++) {
+            // a rescan overwrites the rows instead of adding references
+            for (int i = 0; i < 4; i++) {
+                store.add(Book.builder().title("Edition " + i).cover(cover).authorPhoto(photo)
+                        .description("Same blurb").filePath(Paths.get("/i/" + i + ".epub")).build());
+            }
+        }
+        store.remove(Paths.get("/i/3.epub"));
+
+        BlobStore.Stats stats = store.imageStats();
+        assertEquals(2, stats.blobs());
+        assertEquals(6, stats.references());
+        assertEquals(1_300, stats.storedBytes());
+        assertEquals(2 * 1_300, stats.savedBytes());
+    }
+
+    /**
+     * Memory and scan times for a million books, as {@link Book} objects in a list and as columns. Run
+     * with {@code mvn test -Dtest=LibraryStoreTest -Dbenchmark=true} (give the JVM -Xmx2g).
+     */
+    @Test
+    public void benchmarkMillionBooks() {
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "Benchmark disabled, use -Dbenchmark=true");
+
+        int count = 1_000_000;
+        long before = usedHeap();
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(Book.builder()
+                    .title("A reasonably long book title number " + i)
+                    .author("Author " + (i % 20_000))
+                    .genre("Genre " + (i % 60))
+                    .year(String.valueOf(1900 + i % 120))
+                    .format(i % 2 == 0 ? "EPUB" : "FB2")
+                    .filePath(Paths.get("/home/reader/library/shelf " + (i % 500) + "/book " + i + ".epub"))
+                    .build());
+        }
+        long objects = usedHeap() - before;
+
+        before = usedHeap();
+        LibraryStore store = new LibraryStore();
+        for (Book b : books) store.add(b);
+        long columns = usedHeap() - before;
+        System.out.printf("%d books: objects %.0f MB, columns %.0f MB (%d MB estimated)%n", count,
+                objects / 1048576.0, columns / 1048576.0, store.memoryBytes() / 1048576);
+
+        int genre = store.symbols(LibraryStore.Column.GENRE).id("Genre 7");
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long filtered = books.stream().filter(b -> b.getGenre().equals("Genre 7")).count();
+            long streamFilter = System.nanoTime() - start;
+            start = System.nanoTime();
+            long grouped = books.stream().map(Book::getAuthor).distinct().count();
+            long streamGroup = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int[] rows = store.filter(LibraryStore.Column.GENRE, genre);
+            long storeFilter = System.nanoTime() - start;
+            start = System.nanoTime();
+            int[][] groups = store.groupBy(LibraryStore.Column.AUTHOR, store.rows());
+            long storeGroup = System.nanoTime() - start;
+            assertEquals(filtered, rows.length);
+            long distinct = 0;
+            for (int[] g : groups) if (g != null) distinct++;
+            assertEquals(grouped, distinct);
+
+            start = System.nanoTime();
+            long titles = books.stream().filter(b -> b.getTitle().toLowerCase().contains("number 4242")).count();
+            long streamSearch = System.nanoTime() - start;
+            start = System.nanoTime();
+            int[] found = store.search("number 4242");
+            long storeSearch = System.nanoTime() - start;
+            assertEquals(titles, found.length);
+
+            System.out.printf("streams vs columns: filter %.1f / %.1f ms, group-by %.1f / %.1f ms, search %.1f / %.1f ms%n",
+                    streamFilter / 1e6, storeFilter / 1e6, streamGroup / 1e6, storeGroup / 1e6,
+                    streamSearch / 1e6, storeSearch / 1e6);
+        }
+        Path last = books.get(count - 1).getFilePath();
+        assertEquals(last, store.path(store.rows()[count - 1]));
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SymbolTableTest {
+
+    @Test
+    public void testIdsAreDenseAndStable() {
+        SymbolTable table = new SymbolTable();
+        assertEquals(0, table.id("Fantasy"));
+        assertEquals(1, table.id("Horror"));
+        assertEquals(0, table.id(new String("Fantasy")));
+        assertEquals("Horror", table.value(1));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testSortedIdsFollowTheValues() {
+        SymbolTable table = new SymbolTable();
+        for (String v : List.of("Romance", "Fantasy", "Unknown", "Action", "Horror")) table.id(v);
+        int[] sorted = table.sortedIds();
+        String[] names = Arrays.stream(sorted).mapToObj(table::value).toArray(String[]::new);
+        assertArrayEquals(new String[]{"Action", "Fantasy", "Horror", "Romance", "Unknown"}, names);
+
+        table.id("Drama");
+        assertEquals("Drama", table.value(table.sortedIds()[1]), "new values join the order");
+    }
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        SymbolTable table = new SymbolTable();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            results.add(pool.submit(() -> {
+                int[] ids = new int[5_000];
+                for (int i = 0; i < ids.length; i++) ids[i] = table.id("author " + i);
+                return ids;
+            }));
+        }
+        int[] first = results.get(0).get();
+        for (Future<int[]> f : results) assertArrayEquals(first, f.get());
+        pool.shutdown();
+        assertEquals(5_000, table.size());
+        Set<Integer> distinct = new HashSet<>();
+        for (int id : first) distinct.add(id);
+        assertEquals(5_000, distinct.size());
+        for (int i = 0; i < first.length; i++) assertEquals("author " + i, table.value(first[i]));
+    }
+
+    @Test
+    public void testBooksShareTheirValues() {
+        Book a = Book.builder().author(new String("Ursula K. Le Guin")).filePath(Paths.get("a.epub")).build();
+        Book b = Book.builder().author(new String("Ursula K. Le Guin")).filePath(Paths.get("b.fb2")).build();
+        assertEquals(a.getAuthorId(), b.getAuthorId());
+        assertSame(a.getAuthor(), b.getAuthor());
+        assertEquals("Unknown Year", a.toBuilder().build().getYear());
+    }
+}
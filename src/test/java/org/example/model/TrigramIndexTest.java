@@ -0,0 +1,115 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrigramIndexTest {
+
+    @Test
+    public void testPostingListRoundTrip() {
+        PostingList list = new PostingList();
+        int[] rows = new int[1_000];
+        Random random = new Random(5);
+        int row = 0;
+        for (int i = 0; i < rows.length; i++) {
+            row += 1 + random.nextInt(i % 10 == 0 ? 100_000 : 20);
+            rows[i] = row;
+            list.add(row);
+            list.add(row);
+        }
+        assertEquals(rows.length, list.size());
+        assertArrayEquals(rows, list.toArray());
+        assertThrows(IllegalArgumentException.class, () -> list.add(3));
+    }
+
+    @Test
+    public void testCursorSeeksAcrossBlocks() {
+        PostingList list = new PostingList();
+        for (int row = 0; row < 10_000; row += 3) list.add(row);
+        PostingList.Cursor cursor = list.cursor();
+        assertEquals(0, cursor.seek(0));
+        assertEquals(300, cursor.seek(299));
+        assertEquals(300, cursor.seek(300));
+        assertEquals(6_000, cursor.seek(5_999));
+        assertEquals(9_999, cursor.seek(9_998));
+        assertEquals(PostingList.END, cursor.seek(10_000));
+        assertEquals(PostingList.END, new PostingList().cursor().seek(0));
+    }
+
+    @Test
+    public void testCandidatesHaveEveryTrigram() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(0, "the left hand of darkness");
+        index.add(1, "darkness at noon");
+        index.add(4, "heart of darkness");
+        index.add(7, "дюна");
+
+        assertArrayEquals(new int[]{0, 1, 4}, index.candidates("darkness"));
+        assertArrayEquals(new int[]{0, 4}, index.candidates("of dark"));
+        assertArrayEquals(new int[]{7}, index.candidates("дюн"));
+        assertEquals(0, index.candidates("light").length);
+        assertNull(index.candidates("of"));
+    }
+
+    /**
+     * Title search over a million books: the linear scan filterBooks did vs. the store's index. Run
+     * with {@code mvn test -Dtest=TrigramIndexTest -Dbenchmark=true} (give the JVM -Xmx3g).
+     */
+    @Test
+    public void benchmarkSearch() {
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "Benchmark disabled, use -Dbenchmark=true");
+
+        Random random = new Random(42);
+        String[] words = new String[20_000];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder w = new StringBuilder();
+            for (int j = 4 + random.nextInt(6); j > 0; j--) w.append((char) ('a' + random.nextInt(26)));
+            words[i] = w.toString();
+        }
+        int count = 1_000_000;
+        List<Book> books = new ArrayList<>(count);
+        LibraryStore store = new LibraryStore();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Book book = Book.builder()
+                    .title(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                            + " " + words[random.nextInt(words.length)])
+                    .author("Author " + (i % 20_000))
+                    .genre("Genre " + (i % 60))
+                    .filePath(Paths.get("/library/shelf " + (i % 500) + "/book " + i + ".epub"))
+                    .build();
+            books.add(book);
+            store.add(book);
+        }
+        System.out.printf("%d books stored and indexed in %.0f ms, index %.0f MB%n", count,
+                (System.nanoTime() - start) / 1e6, store.indexBytes() / 1048576.0);
+
+        String[] queries = {words[1], words[2].substring(0, 3), "Author 1234", words[3] + " " + words[4].substring(0, 2), "zzzq"};
+        for (int round = 0; round < 3; round++) {
+            for (String query : queries) {
+                start = System.nanoTime();
+                String q = query.toLowerCase();
+                long scanned = books.stream()
+                        .filter(b -> b.getTitle().toLowerCase().contains(q) ||
+                                b.getAuthor().toLowerCase().contains(q) ||
+                                b.getGenre().toLowerCase().contains(q))
+                        .count();
+                long scan = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int[] found = store.search(query);
+                long indexed = System.nanoTime() - start;
+                assertEquals(scanned, found.length, query);
+                System.out.printf("%-18s %7d hits: scan %7.1f ms, index %6.2f ms%n",
+                        "'" + query + "'", found.length, scan / 1e6, indexed / 1e6);
+            }
+        }
+    }
+}
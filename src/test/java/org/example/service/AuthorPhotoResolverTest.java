@@ -0,0 +1,119 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthorPhotoResolverTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRemembersBothOutcomesAcrossRestarts() {
+        Path file = tempDir.resolve("authors.tsv");
+        AtomicInteger lookups = new AtomicInteger();
+        AuthorPhotoResolver.AsyncFinder finder = author -> {
+            lookups.incrementAndGet();
+            return CompletableFuture.completedFuture(
+                    author.startsWith("Ursula") ? Optional.of("https://example.org/" + author.length() + ".jpg") : Optional.empty());
+        };
+
+        AuthorPhotoResolver resolver = new AuthorPhotoResolver(file);
+        assertEquals(Optional.of("https://example.org/17.jpg"), resolver.resolveAsync("Ursula K. Le Guin", finder).join());
+        assertEquals(Optional.empty(), resolver.resolveAsync("Anonymous", finder).join());
+        assertEquals(Optional.of("https://example.org/17.jpg"), resolver.resolveAsync("ursula k. le guin ", finder).join());
+        assertEquals(2, lookups.get());
+
+        AuthorPhotoResolver reloaded = new AuthorPhotoResolver(file);
+        assertEquals(Optional.of("https://example.org/17.jpg"), reloaded.resolveAsync("Ursula K. Le Guin", finder).join());
+        assertEquals(Optional.empty(), reloaded.resolveAsync("Anonymous", finder).join());
+        assertEquals(2, lookups.get(), "Both answers come from the file");
+    }
+
+    @Test
+    public void testFailuresAreNotRemembered() {
+        AtomicInteger lookups = new AtomicInteger();
+        AuthorPhotoResolver resolver = new AuthorPhotoResolver(null);
+        AuthorPhotoResolver.AsyncFinder failing = author -> {
+            lookups.incrementAndGet();
+            return CompletableFuture.failedFuture(new IOException("offline"));
+        };
+        CompletionException first = assertThrows(CompletionException.class,
+                () -> resolver.resolveAsync("Stanisław Lem", failing).join());
+        assertTrue(first.getCause() instanceof IOException);
+        assertThrows(CompletionException.class, () -> resolver.resolveAsync("Stanisław Lem", failing).join());
+        assertEquals(2, lookups.get());
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    public void testExpiredAnswersAreLookedUpAgain() {
+        AtomicInteger lookups = new AtomicInteger();
+        AuthorPhotoResolver resolver = new AuthorPhotoResolver(tempDir.resolve("authors.tsv"));
+        resolver.setTtl(Duration.ofDays(1), Duration.ZERO);
+        AuthorPhotoResolver.AsyncFinder none = author -> {
+            lookups.incrementAndGet();
+            return CompletableFuture.completedFuture(Optional.empty());
+        };
+        resolver.resolveAsync("Nobody", none).join();
+        resolver.resolveAsync("Nobody", none).join();
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testTornLastLineIsIgnored() throws IOException {
+        Path file = tempDir.resolve("authors.tsv");
+        AuthorPhotoResolver resolver = new AuthorPhotoResolver(file);
+        resolver.resolveAsync("Frank Herbert", author -> CompletableFuture.completedFuture(Optional.of("https://example.org/fh.jpg"))).join();
+        Files.writeString(file, Long.MAX_VALUE + "\tisaac asimov\thttps://exa", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        AtomicInteger lookups = new AtomicInteger();
+        AuthorPhotoResolver reloaded = new AuthorPhotoResolver(file);
+        reloaded.resolveAsync("Isaac Asimov", author -> {
+            lookups.incrementAndGet();
+            return CompletableFuture.completedFuture(Optional.of("https://example.org/ia.jpg"));
+        }).join();
+        assertEquals(1, lookups.get());
+        assertEquals(2, new AuthorPhotoResolver(file).size());
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOne() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        AuthorPhotoResolver resolver = new AuthorPhotoResolver(null);
+        CompletableFuture<Optional<String>> answer = new CompletableFuture<>();
+        List<Future<Optional<String>>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 16; i++) {
+                results.add(pool.submit(() -> resolver.resolveAsync("Terry Pratchett", author -> {
+                    lookups.incrementAndGet();
+                    return answer;
+                }).join()));
+            }
+            Thread.sleep(200);
+            answer.complete(Optional.of("https://example.org/tp.jpg"));
+        }
+        for (Future<Optional<String>> r : results) {
+            assertEquals(Optional.of("https://example.org/tp.jpg"), r.get());
+        }
+        assertEquals(1, lookups.get());
+    }
+}
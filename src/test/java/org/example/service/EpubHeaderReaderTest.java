@@ -0,0 +1,142 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EpubHeaderReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final byte[] COVER = new byte[2048];
+
+    static {
+        for (int i = 0; i < COVER.length; i++) COVER[i] = (byte) (i * 7);
+    }
+
+    private static final String CONTAINER = "<?xml version=\"1.0\"?>\n" +
+            "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">\n" +
+            "  <rootfiles><rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/></rootfiles>\n" +
+            "</container>";
+
+    private static String opf(String extraMeta, String coverItem) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\">\n" +
+                " <metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:opf=\"http://www.idpf.org/2007/opf\">\n" +
+                "  <dc:title>Foundation</dc:title>\n" +
+                "  <dc:creator opf:role=\"aut\">Isaac Asimov</dc:creator>\n" +
+                "  <dc:creator opf:role=\"ill\">Someone Else</dc:creator>\n" +
+                "  <dc:language>en-US</dc:language>\n" +
+                "  <dc:subject>Science Fiction</dc:subject>\n" +
+                "  <dc:date>1951-06-01</dc:date>\n" +
+                "  <dc:description>&lt;p&gt;The &lt;b&gt;Galactic&lt;/b&gt; Empire is dying.&lt;/p&gt;</dc:description>\n" +
+                extraMeta +
+                " </metadata>\n" +
+                " <manifest>\n" +
+                "  <item id=\"ch1\" href=\"text/chapter1.xhtml\" media-type=\"application/xhtml+xml\"/>\n" +
+                coverItem +
+                " </manifest>\n" +
+                " <spine><itemref idref=\"ch1\"/></spine>\n" +
+                "</package>";
+    }
+
+    private Path epub(String name, String opf, String coverPath) throws IOException {
+        Path file = tempDir.resolve(name);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            ZipEntry mimetype = new ZipEntry("mimetype");
+            byte[] mt = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
+            CRC32 crc = new CRC32();
+            crc.update(mt);
+            mimetype.setMethod(ZipEntry.STORED);
+            mimetype.setSize(mt.length);
+            mimetype.setCrc(crc.getValue());
+            zip.putNextEntry(mimetype);
+            zip.write(mt);
+            put(zip, "META-INF/container.xml", CONTAINER.getBytes(StandardCharsets.UTF_8));
+            put(zip, "OEBPS/content.opf", opf.getBytes(StandardCharsets.UTF_8));
+            put(zip, "OEBPS/text/chapter1.xhtml", "<html><body>Chapter</body></html>".getBytes(StandardCharsets.UTF_8));
+            if (coverPath != null) {
+                put(zip, coverPath, COVER);
+            }
+        }
+        return file;
+    }
+
+    private void put(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    @Test
+    public void testEpub2MetadataAndCover() throws IOException {
+        Path file = epub("foundation.epub",
+                opf("  <meta name=\"cover\" content=\"cover-img\"/>\n" +
+                    "  <meta name=\"calibre:series\" content=\"Foundation\"/>\n" +
+                    "  <meta name=\"calibre:series_index\" content=\"1.0\"/>\n",
+                    "  <item id=\"cover-img\" href=\"images/front%20page.jpg\" media-type=\"image/jpeg\"/>\n"),
+                "OEBPS/images/front page.jpg");
+
+        BookHeader h = new EpubHeaderReader().read(file).orElseThrow();
+
+        assertEquals("Foundation", h.getTitle());
+        assertEquals("Isaac Asimov", h.getAuthor());
+        assertEquals("en-US", h.getLanguage());
+        assertEquals("Science Fiction", h.getGenre());
+        assertEquals("1951", h.getYear());
+        assertEquals("The Galactic Empire is dying.", h.getDescription());
+        assertEquals("Foundation", h.getSeries());
+        assertEquals(Integer.valueOf(1), h.getSeriesIndex());
+        assertArrayEquals(COVER, h.getCover());
+    }
+
+    @Test
+    public void testEpub3CoverImageProperty() throws IOException {
+        Path file = epub("epub3.epub",
+                opf("", "  <item id=\"img\" href=\"../Images/c.png\" media-type=\"image/png\" properties=\"cover-image\"/>\n"),
+                "Images/c.png");
+
+        BookHeader h = new EpubHeaderReader().read(file).orElseThrow();
+
+        assertArrayEquals(COVER, h.getCover());
+    }
+
+    @Test
+    public void testMissingCoverEntry() throws IOException {
+        Path file = epub("nocover.epub",
+                opf("  <meta name=\"cover\" content=\"cover-img\"/>\n",
+                    "  <item id=\"cover-img\" href=\"missing.jpg\" media-type=\"image/jpeg\"/>\n"),
+                null);
+
+        BookHeader h = new EpubHeaderReader().read(file).orElseThrow();
+
+        assertEquals("Foundation", h.getTitle());
+        assertNull(h.getCover());
+    }
+
+    @Test
+    public void testNoContainerFallsBack() throws IOException {
+        Path file = tempDir.resolve("empty.epub");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            put(zip, "readme.txt", "nothing".getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(new EpubHeaderReader().read(file).isEmpty());
+    }
+
+    @Test
+    public void testResolve() {
+        assertEquals("OEBPS/images/a b.jpg", EpubHeaderReader.resolve("OEBPS/content.opf", "images/a%20b.jpg"));
+        assertEquals("Images/c.png", EpubHeaderReader.resolve("OEBPS/content.opf", "../Images/c.png"));
+        assertEquals("cover.jpg", EpubHeaderReader.resolve("content.opf", "./cover.jpg#frag"));
+    }
+}
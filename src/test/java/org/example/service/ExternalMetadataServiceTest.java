@@ -1,11 +1,47 @@
 package org.example.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ExternalMetadataServiceTest {
+
+    private static final String VOLUME = "{\"items\":[{\"volumeInfo\":{\"categories\":[\"Fiction\"]," +
+            "\"publishedDate\":\"1965-08-01\",\"description\":\"Desert planet\"," +
+            "\"imageLinks\":{\"smallThumbnail\":\"http://books.google.com/small.png\"}}}]}";
+
+    @TempDir
+    Path tempDir;
+
     @Test
     public void testFetchGenre() {
         // Пропускаем тест, если нет сети или если мы в CI без настройки.
@@ -20,4 +56,430 @@ public class ExternalMetadataServiceTest {
             Assumptions.assumeTrue(false, "Network issue or API limit: " + e.getMessage());
         }
     }
+
+    @Test
+    public void testFetchAllReadsEveryField() {
+        FakeHttpClient http = new FakeHttpClient(req -> FakeHttpClient.Reply.json(VOLUME));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+
+        ExternalMetadataService.BookInfo info = service.fetchAll("Dune", "Frank Herbert").orElseThrow();
+
+        assertEquals("Fiction", info.genre());
+        assertEquals("1965", info.year());
+        assertEquals("Desert planet", info.description());
+        assertEquals("http://books.google.com/small.png", info.coverUrl());
+        assertEquals(Optional.of("1965"), service.fetchYear("DUNE", "frank herbert"), "Key is case-insensitive");
+        assertEquals(1, service.getRequestCount());
+    }
+
+    @Test
+    public void testIsbnIsAskedFirst() throws Exception {
+        List<String> queries = new java.util.concurrent.CopyOnWriteArrayList<>();
+        FakeHttpClient http = new FakeHttpClient(req -> {
+            String q = req.uri().getQuery();
+            queries.add(q);
+            return q.contains("isbn:9780441172719") || q.contains("intitle:") ? FakeHttpClient.Reply.json(VOLUME)
+                    : FakeHttpClient.Reply.json("{\"totalItems\":0}");
+        });
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+
+        assertTrue(service.fetchAllAsync("Dune", "Frank Herbert", "978-0-441-17271-9").get().isPresent());
+        assertEquals(List.of("q=isbn:9780441172719"), queries);
+
+        // an ISBN Google Books does not know falls back to title and author
+        assertTrue(service.fetchAllAsync("Dune", "Frank Herbert", "0-00-000000-0").get().isPresent());
+        assertEquals(3, queries.size());
+        assertTrue(queries.get(2).startsWith("q=intitle:Dune"), queries.get(2));
+
+        assertNull(ExternalMetadataService.normalizeIsbn("not an isbn"));
+        assertEquals("000000000X", ExternalMetadataService.normalizeIsbn("0 00 000000 x"));
+    }
+
+    @Test
+    public void testMissIsLookedUpOnce() {
+        FakeHttpClient http = new FakeHttpClient(req -> FakeHttpClient.Reply.json("{\"totalItems\":0}"));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+
+        assertTrue(service.fetchGenre("Nothing", "Nobody").isEmpty());
+        assertTrue(service.fetchYear("Nothing", "Nobody").isEmpty());
+        assertTrue(service.fetchDescription("Nothing", "Nobody").isEmpty());
+        assertTrue(service.fetchCover("Nothing", "Nobody").isEmpty());
+
+        assertEquals(1, service.getRequestCount(), "Before: one request per field, three or more per miss");
+    }
+
+    @Test
+    public void testErrorsExpire() {
+        FakeHttpClient http = new FakeHttpClient(req -> FakeHttpClient.Reply.status(403));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setNegativeCacheTtl(Duration.ofHours(1), Duration.ZERO);
+
+        service.fetchGenre("Quota", "Exceeded");
+        service.fetchGenre("Quota", "Exceeded");
+
+        assertEquals(2, service.getRequestCount(), "An expired error is retried");
+
+        service.setNegativeCacheTtl(Duration.ofHours(1), Duration.ofHours(1));
+        service.fetchGenre("Quota", "Again");
+        service.fetchGenre("Quota", "Again");
+        assertEquals(3, service.getRequestCount());
+    }
+
+    @Test
+    public void testFailedLookupIsNotAMiss() throws Exception {
+        FakeHttpClient http = new FakeHttpClient(req -> req.uri().getQuery().contains("Nothing")
+                ? FakeHttpClient.Reply.json("{\"totalItems\":0}") : FakeHttpClient.Reply.status(403));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+
+        assertTrue(service.fetchAllAsync("Nothing", "Nobody").get().isEmpty());
+        ExecutionException failed = assertThrows(ExecutionException.class,
+                () -> service.fetchAllAsync("Quota", "Exceeded").get());
+        assertTrue(failed.getCause() instanceof IOException, failed.getCause().toString());
+        assertTrue(service.fetchAllAsync("Quota", "Exceeded").isCompletedExceptionally(),
+                "A remembered failure is still a failure");
+        assertTrue(service.fetchAll("Quota", "Exceeded").isEmpty());
+        assertEquals(2, service.getRequestCount());
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneRequest() throws Exception {
+        FakeHttpClient http = new FakeHttpClient(req -> FakeHttpClient.Reply.json(VOLUME));
+        http.delayMillis = 300;
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+
+        List<Future<Optional<String>>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> service.fetchGenre("Dune", "Frank Herbert")));
+            }
+        }
+
+        for (Future<Optional<String>> r : results) {
+            assertEquals(Optional.of("Fiction"), r.get());
+        }
+        assertEquals(1, service.getRequestCount());
+    }
+
+    @Test
+    public void testWarmDiskCacheWorksOffline() {
+        Path file = tempDir.resolve("metadata.bin");
+        FakeHttpClient online = new FakeHttpClient(req -> req.uri().getQuery().contains("Dune")
+                ? FakeHttpClient.Reply.json(VOLUME) : FakeHttpClient.Reply.json("{\"totalItems\":0}"));
+        ExternalMetadataService first = new ExternalMetadataService(online, new ObjectMapper(), null,
+                new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES));
+        first.fetchAll("Dune", "Frank Herbert");
+        first.fetchAll("Nothing", "Nobody");
+        assertEquals(2, first.getRequestCount());
+
+        // next session, no network at all
+        FakeHttpClient offline = new FakeHttpClient(req -> null);
+        ExternalMetadataService second = new ExternalMetadataService(offline, new ObjectMapper(), null,
+                new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES));
+        assertEquals(Optional.of("Fiction"), second.fetchGenre("Dune", "Frank Herbert"));
+        assertEquals(Optional.of("Desert planet"), second.fetchDescription("Dune", "Frank Herbert"));
+        assertTrue(second.fetchAll("Nothing", "Nobody").isEmpty());
+        assertEquals(0, second.getRequestCount());
+    }
+
+    @Test
+    public void testErrorsAreNotPersisted() {
+        Path file = tempDir.resolve("metadata.bin");
+        FakeHttpClient failing = new FakeHttpClient(req -> FakeHttpClient.Reply.status(403));
+        new ExternalMetadataService(failing, new ObjectMapper(), null,
+                new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES)).fetchAll("Dune", "Frank Herbert");
+
+        FakeHttpClient online = new FakeHttpClient(req -> FakeHttpClient.Reply.json(VOLUME));
+        ExternalMetadataService next = new ExternalMetadataService(online, new ObjectMapper(), null,
+                new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES));
+        assertEquals(Optional.of("1965"), next.fetchYear("Dune", "Frank Herbert"));
+        assertEquals(1, next.getRequestCount());
+    }
+
+    @Test
+    public void testRetriesServerErrors() {
+        AtomicInteger calls = new AtomicInteger();
+        FakeHttpClient http = new FakeHttpClient(req -> calls.incrementAndGet() < 3
+                ? FakeHttpClient.Reply.status(503) : FakeHttpClient.Reply.json(VOLUME));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(0));
+        service.setRetryBaseDelay(Duration.ofMillis(10));
+
+        assertEquals(Optional.of("Fiction"), service.fetchGenre("Dune", "Frank Herbert"));
+        assertEquals(3, service.getRequestCount());
+    }
+
+    @Test
+    public void testHonoursRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+        FakeHttpClient http = new FakeHttpClient(req -> calls.incrementAndGet() == 1
+                ? new FakeHttpClient.Reply(429, Map.of("Retry-After", List.of("1")), new byte[0])
+                : FakeHttpClient.Reply.json(VOLUME));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        HostRateLimiter limiter = new HostRateLimiter(0);
+        service.setRateLimiter(limiter);
+        service.setRetryBaseDelay(Duration.ofMillis(10));
+
+        long start = System.nanoTime();
+        assertEquals(Optional.of("1965"), service.fetchYear("Dune", "Frank Herbert"));
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 900, "The retry waits for Retry-After");
+        assertEquals(2, service.getRequestCount());
+    }
+
+    @Test
+    public void testGivesUpOnLongRetryAfter() {
+        FakeHttpClient http = new FakeHttpClient(req ->
+                new FakeHttpClient.Reply(429, Map.of("Retry-After", List.of("3600")), new byte[0]));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(0));
+
+        assertTrue(service.fetchAll("Dune", "Frank Herbert").isEmpty());
+        assertEquals(1, service.getRequestCount());
+    }
+
+    @Test
+    public void testRetryAfterFormats() throws Exception {
+        String date = ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        for (String value : List.of("30", date)) {
+            FakeHttpClient http = new FakeHttpClient(req ->
+                    new FakeHttpClient.Reply(429, Map.of("Retry-After", List.of(value)), new byte[0]));
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create("https://example.org/")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            long seconds = ExternalMetadataService.retryAfter(response).orElseThrow().toSeconds();
+            assertTrue(seconds >= 28 && seconds <= 30, value + " -> " + seconds);
+        }
+    }
+
+    @Test
+    public void testStreamingSkipsUnusedFields() {
+        String json = "{\"kind\":\"books#volumes\",\"totalItems\":2,\"items\":[{\"id\":\"x\"," +
+                "\"saleInfo\":{\"offers\":[{\"price\":{\"amount\":1}},[1,2,[3]]]}," +
+                "\"volumeInfo\":{\"title\":\"Dune\",\"authors\":[\"Frank Herbert\"],\"industryIdentifiers\":[{\"type\":\"ISBN_10\"}]," +
+                "\"categories\":[{\"nested\":true},\"Fiction\"],\"publishedDate\":1965,\"description\":null," +
+                "\"imageLinks\":{\"smallThumbnail\":\"http://s\",\"thumbnail\":\"http://t\",\"extra\":{\"a\":[]}}," +
+                "\"language\":\"en\"}}";
+        // the second item is never read, so garbage after the first one does not matter
+        FakeHttpClient http = new FakeHttpClient(req -> FakeHttpClient.Reply.json(json + ",{{{ not json"));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+
+        ExternalMetadataService.BookInfo info = service.fetchAll("Dune", "Frank Herbert").orElseThrow();
+
+        assertNull(info.genre(), "Only the first category is considered");
+        assertEquals("1965", info.year());
+        assertNull(info.description());
+        assertEquals("http://t", info.coverUrl(), "thumbnail wins over smallThumbnail");
+    }
+
+    @Test
+    public void testStreamingEdgeCases() {
+        Map<String, String> bodies = Map.of(
+                "Empty", "{\"items\":[]}",
+                "NoVolumeInfo", "{\"items\":[{\"id\":\"x\"}]}",
+                "NoCategories", "{\"items\":[{\"volumeInfo\":{\"categories\":[],\"publishedDate\":\"20\"}}]}",
+                "ItemsLast", "{\"totalItems\":1,\"x\":{\"items\":[]},\"items\":[{\"volumeInfo\":{\"categories\":[\"Poetry\",\"Drama\"]}}]}");
+        FakeHttpClient http = new FakeHttpClient(req -> {
+            String query = req.uri().getQuery();
+            return bodies.entrySet().stream().filter(e -> query.contains("intitle:" + e.getKey()))
+                    .findFirst().map(e -> FakeHttpClient.Reply.json(e.getValue())).orElseThrow();
+        });
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+
+        assertTrue(service.fetchAll("Empty", "A").isEmpty());
+        assertEquals(new ExternalMetadataService.BookInfo(null, null, null, null),
+                service.fetchAll("NoVolumeInfo", "A").orElseThrow());
+        ExternalMetadataService.BookInfo noCategories = service.fetchAll("NoCategories", "A").orElseThrow();
+        assertNull(noCategories.genre());
+        assertNull(noCategories.year(), "A two-digit date has no year");
+        assertEquals(Optional.of("Poetry"), service.fetchGenre("ItemsLast", "A"));
+    }
+
+    private static byte[] png(int size) throws IOException {
+        // noise does not compress, so the file is well over the placeholder size
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(size);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) img.setRGB(x, y, random.nextInt());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testAuthorPhotoIsResolvedOncePerAuthor() throws IOException {
+        // unique per run, the downloaded bytes also land in the shared disk cache
+        String olid = "OL" + System.nanoTime() + "A";
+        byte[] photo = png(40);
+        FakeHttpClient http = new FakeHttpClient(req -> switch (req.uri().getHost()) {
+            case "openlibrary.org" -> FakeHttpClient.Reply.json("{\"numFound\":1,\"docs\":[{\"key\":\"/authors/" + olid + "\"}]}");
+            case "covers.openlibrary.org" -> new FakeHttpClient.Reply(200, Map.of("Content-Type", List.of("image/png"),
+                    "Content-Length", List.of(String.valueOf(photo.length))), photo);
+            default -> null;
+        });
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(0));
+
+        for (int book = 0; book < 200; book++) {
+            assertArrayEquals(photo, service.fetchAuthorPhoto("Frank Herbert").orElseThrow());
+        }
+
+        assertEquals(1, http.count("openlibrary.org"));
+        assertEquals(2, http.count("covers.openlibrary.org"), "One HEAD probe and one download");
+        assertEquals(0, http.count("www.googleapis.com"));
+    }
+
+    @Test
+    public void testIdenticalCoversAreStoredOnce() throws IOException {
+        byte[] cover = png(60);
+        // every edition has its own cover URL, all of them serve the same picture
+        FakeHttpClient http = new FakeHttpClient(req -> switch (req.uri().getHost()) {
+            case "www.googleapis.com" -> FakeHttpClient.Reply.json("{\"items\":[{\"volumeInfo\":{\"imageLinks\":"
+                    + "{\"thumbnail\":\"http://books.google.com/" + req.uri().getQuery().hashCode() + ".png\"}}}]}");
+            case "books.google.com" -> FakeHttpClient.Reply.image(cover);
+            default -> null;
+        });
+        ThumbnailCacheService disk = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(0));
+        service.setDiskCache(disk);
+
+        for (String format : List.of("pdf", "epub", "fb2")) {
+            assertArrayEquals(cover, service.fetchCover("Dune " + format, "Frank Herbert").orElseThrow());
+        }
+        assertEquals(3, http.count("books.google.com"));
+        assertEquals(2, service.getSharedDownloads());
+        assertEquals(2L * cover.length, service.getSharedDownloadBytes());
+        assertEquals(Integer.valueOf(1), Integer.valueOf(service.getImageCacheStats().entries()));
+        // one image and three URL pointers
+        assertEquals(Integer.valueOf(4), Integer.valueOf(disk.size()));
+        assertTrue(disk.packSize() < 2L * cover.length);
+
+        ExternalMetadataService restarted = new ExternalMetadataService(http, new ObjectMapper(), null);
+        restarted.setRateLimiter(new HostRateLimiter(0));
+        restarted.setDiskCache(disk);
+        assertArrayEquals(cover, restarted.fetchCover("Dune epub", "Frank Herbert").orElseThrow());
+        assertEquals(3, http.count("books.google.com"), "Served from the pack");
+        disk.close();
+    }
+
+    @Test
+    public void testCoversCachedByUrlAreMigrated() throws IOException {
+        byte[] cover = png(30);
+        FakeHttpClient http = new FakeHttpClient(req -> switch (req.uri().getHost()) {
+            case "www.googleapis.com" -> FakeHttpClient.Reply.json(VOLUME);
+            default -> null;
+        });
+        ThumbnailCacheService disk = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        disk.put("http://books.google.com/small.png", cover);
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setDiskCache(disk);
+
+        assertArrayEquals(cover, service.fetchCover("Dune", "Frank Herbert").orElseThrow());
+        assertEquals(0, http.count("books.google.com"));
+        assertTrue(disk.contains("img:" + org.example.model.BlobStore.Ref.of(cover).hex()));
+        disk.close();
+    }
+
+    @Test
+    public void testPlaceholderIsRejectedWithoutDownload() {
+        FakeHttpClient http = new FakeHttpClient(req -> switch (req.uri().getHost()) {
+            case "openlibrary.org" -> FakeHttpClient.Reply.json("{\"docs\":[{\"key\":\"/authors/OL1A\"}]}");
+            case "covers.openlibrary.org" -> new FakeHttpClient.Reply(200, Map.of("Content-Type", List.of("image/gif"),
+                    "Content-Length", List.of("43")), new byte[43]);
+            default -> null;
+        });
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(0));
+
+        assertTrue(service.fetchAuthorPhoto("Anonymous").isEmpty());
+        assertTrue(service.fetchAuthorPhoto("Anonymous").isEmpty());
+
+        assertEquals(1, http.count("covers.openlibrary.org"));
+        assertEquals("HEAD", http.requests.get(1).method());
+        assertEquals(2, http.requests.size(), "The absent photo is remembered");
+    }
+
+    @Test
+    public void testFailedPhotoCheckIsNotRememberedAsAbsent() throws IOException {
+        byte[] photo = png(40);
+        AtomicInteger phase = new AtomicInteger();
+        FakeHttpClient http = new FakeHttpClient(req -> switch (req.uri().getHost()) {
+            case "openlibrary.org" -> FakeHttpClient.Reply.json("{\"docs\":[{\"key\":\"/authors/OL2A\"}]}");
+            case "covers.openlibrary.org" -> switch (phase.get()) {
+                case 0 -> FakeHttpClient.Reply.status(503);
+                // no size in the HEAD answer, and then the download fails
+                case 1 -> req.method().equals("HEAD") ? new FakeHttpClient.Reply(200, Map.of(), new byte[0])
+                        : FakeHttpClient.Reply.status(500);
+                default -> FakeHttpClient.Reply.image(photo);
+            };
+            default -> null;
+        });
+        ThumbnailCacheService disk = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(0));
+        service.setRetryBaseDelay(Duration.ofMillis(1));
+        service.setCircuitBreaker(new HostCircuitBreaker(1_000, Duration.ofHours(1), Duration.ofHours(1)));
+        service.setDiskCache(disk);
+
+        assertTrue(service.fetchAuthorPhoto("Frank Herbert").isEmpty());
+        phase.set(1);
+        assertTrue(service.fetchAuthorPhoto("Frank Herbert").isEmpty());
+        phase.set(2);
+        assertArrayEquals(photo, service.fetchAuthorPhoto("Frank Herbert").orElseThrow(),
+                "Neither failure was taken for a missing photo");
+        assertEquals(3, http.count("openlibrary.org"));
+        disk.close();
+    }
+
+    @Test
+    public void testRateLimitedLookupsHoldNoThread() throws Exception {
+        FakeHttpClient http = new FakeHttpClient(req -> FakeHttpClient.Reply.json(VOLUME));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(10));
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Optional<ExternalMetadataService.BookInfo>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 30; i++) lookups.add(service.fetchAllAsync("Book " + i, "Author"));
+        long startedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (CompletableFuture<Optional<ExternalMetadataService.BookInfo>> lookup : lookups) {
+            assertTrue(lookup.get(10, TimeUnit.SECONDS).isPresent());
+        }
+        // at 10 per second the last of them goes out two seconds later, the caller did not wait for it
+        assertTrue(startedMillis < 500, "Starting the lookups took " + startedMillis + " ms");
+        assertEquals(30, service.getRequestCount());
+    }
+
+    @Test
+    public void testUnreachableHostFailsFast() {
+        FakeHttpClient unplugged = new FakeHttpClient(req -> null);
+        ExternalMetadataService service = new ExternalMetadataService(unplugged, new ObjectMapper(), null);
+        service.setRateLimiter(new HostRateLimiter(0));
+        service.setRetryBaseDelay(Duration.ofMillis(1));
+        service.setCircuitBreaker(new HostCircuitBreaker(3, Duration.ofHours(1), Duration.ofHours(1)));
+
+        for (int i = 0; i < 1_000; i++) {
+            service.fetchAll("Book " + i, "Author");
+            service.fetchCover("Book " + i, "Author");
+        }
+
+        assertEquals(3, service.getRequestCount(), "Only the failures that open the circuit reach the wire");
+        assertEquals(java.util.Set.of("www.googleapis.com"), service.getUnreachableHosts());
+    }
+
+    @Test
+    public void testOfflineUsesCachesOnly() {
+        FakeHttpClient http = new FakeHttpClient(req -> FakeHttpClient.Reply.json(VOLUME));
+        ExternalMetadataService service = new ExternalMetadataService(http, new ObjectMapper(), null);
+        service.fetchAll("Dune", "Frank Herbert");
+
+        service.setOffline(true);
+        assertEquals(Optional.of("Fiction"), service.fetchGenre("Dune", "Frank Herbert"));
+        assertTrue(service.fetchAll("Solaris", "Stanisław Lem").isEmpty());
+        assertTrue(service.fetchAuthorPhoto("Stanisław Lem").isEmpty());
+        assertEquals(1, service.getRequestCount());
+
+        service.setOffline(false);
+        assertTrue(service.fetchAll("Solaris", "Stanisław Lem").isPresent(), "Offline misses are not remembered");
+        assertEquals(2, service.getRequestCount());
+    }
 }
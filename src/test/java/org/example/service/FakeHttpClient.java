@@ -0,0 +1,123 @@
+package org.example.service;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/** HttpClient that answers from a function instead of the network and records every request. */
+class FakeHttpClient extends HttpClient {
+
+    record Reply(int status, Map<String, List<String>> headers, byte[] body) {
+        static Reply json(String json) {
+            return new Reply(200, Map.of("Content-Type", List.of("application/json")), json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Reply image(byte[] data) {
+            return new Reply(200, Map.of("Content-Type", List.of("image/png")), data);
+        }
+
+        static Reply status(int status) {
+            return new Reply(status, Map.of(), new byte[0]);
+        }
+    }
+
+    final List<HttpRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    private final Function<HttpRequest, Reply> routes;
+    volatile long delayMillis;
+
+    FakeHttpClient(Function<HttpRequest, Reply> routes) {
+        this.routes = routes;
+    }
+
+    long count(String host) {
+        synchronized (requests) {
+            return requests.stream().filter(r -> host.equals(r.uri().getHost())).count();
+        }
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        requests.add(request);
+        if (delayMillis > 0) Thread.sleep(delayMillis);
+        Reply reply = routes.apply(request);
+        if (reply == null) throw new IOException("Connection refused: " + request.uri());
+        HttpHeaders headers = HttpHeaders.of(reply.headers(), (k, v) -> true);
+        HttpResponse.BodySubscriber<T> subscriber = handler.apply(new HttpResponse.ResponseInfo() {
+            @Override public int statusCode() { return reply.status(); }
+            @Override public HttpHeaders headers() { return headers; }
+            @Override public Version version() { return Version.HTTP_1_1; }
+        });
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override public void request(long n) {}
+            @Override public void cancel() {}
+        });
+        if (request.method().equals("HEAD") || reply.body().length == 0) {
+            subscriber.onNext(List.of());
+        } else {
+            subscriber.onNext(List.of(ByteBuffer.wrap(reply.body())));
+        }
+        subscriber.onComplete();
+        T body = subscriber.getBody().toCompletableFuture().join();
+        return new Response<>(request, reply.status(), headers, body);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request, handler);
+            } catch (IOException e) {
+                throw new java.util.concurrent.CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.util.concurrent.CompletionException(e);
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                            HttpResponse.PushPromiseHandler<T> push) {
+        return sendAsync(request, handler);
+    }
+
+    private record Response<T>(HttpRequest request, int statusCode, HttpHeaders headers, T body)
+            implements HttpResponse<T> {
+        @Override public Optional<HttpResponse<T>> previousResponse() { return Optional.empty(); }
+        @Override public Optional<SSLSession> sslSession() { return Optional.empty(); }
+        @Override public URI uri() { return request.uri(); }
+        @Override public HttpClient.Version version() { return HttpClient.Version.HTTP_1_1; }
+    }
+
+    @Override public Optional<CookieHandler> cookieHandler() { return Optional.empty(); }
+    @Override public Optional<Duration> connectTimeout() { return Optional.empty(); }
+    @Override public Redirect followRedirects() { return Redirect.NEVER; }
+    @Override public Optional<ProxySelector> proxy() { return Optional.empty(); }
+    @Override public SSLContext sslContext() { return null; }
+    @Override public SSLParameters sslParameters() { return null; }
+    @Override public Optional<Authenticator> authenticator() { return Optional.empty(); }
+    @Override public Version version() { return Version.HTTP_1_1; }
+    @Override public Optional<Executor> executor() { return Optional.empty(); }
+}
@@ -0,0 +1,112 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Fb2HeaderReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final byte[] COVER = new byte[3000];
+
+    static {
+        for (int i = 0; i < COVER.length; i++) COVER[i] = (byte) (i * 31);
+    }
+
+    private String fb2(String body) {
+        String base64 = Base64.getMimeEncoder(76, "\n".getBytes()).encodeToString(COVER);
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<FictionBook xmlns=\"http://www.gribuser.ru/xml/fictionbook/2.0\" xmlns:l=\"http://www.w3.org/1999/xlink\">\n" +
+                " <description>\n" +
+                "  <title-info>\n" +
+                "   <genre>sf_fantasy</genre>\n" +
+                "   <genre>adventure</genre>\n" +
+                "   <author><first-name>Сергей</first-name><last-name>Лукьяненко</last-name></author>\n" +
+                "   <book-title>Ночной дозор</book-title>\n" +
+                "   <annotation><p>Первый абзац.</p>\n   <p>Второй <emphasis>абзац</emphasis>.</p></annotation>\n" +
+                "   <date value=\"1998-01-01\">1998</date>\n" +
+                "   <coverpage><image l:href=\"#cover.jpg\"/></coverpage>\n" +
+                "   <lang>ru</lang>\n" +
+                "   <translator><first-name>Not</first-name><last-name>Author</last-name></translator>\n" +
+                "   <sequence name=\"Дозоры\" number=\"1\"/>\n" +
+                "  </title-info>\n" +
+                "  <document-info><author><nickname>robot</nickname></author><date>2005</date></document-info>\n" +
+                " </description>\n" +
+                body +
+                " <binary id=\"other.png\" content-type=\"image/png\">AAAA</binary>\n" +
+                " <binary id=\"cover.jpg\" content-type=\"image/jpeg\">\n" + base64 + "\n</binary>\n" +
+                "</FictionBook>\n";
+    }
+
+    @Test
+    public void testReadsHeaderAndCover() throws IOException {
+        Path file = tempDir.resolve("book.fb2");
+        Files.writeString(file, fb2(" <body><section><p>Текст</p></section></body>\n"));
+
+        Optional<BookHeader> header = new Fb2HeaderReader().read(file);
+
+        assertTrue(header.isPresent());
+        BookHeader h = header.get();
+        assertEquals("Ночной дозор", h.getTitle());
+        assertEquals("Сергей Лукьяненко", h.getAuthor());
+        assertEquals("sf_fantasy", h.getGenre());
+        assertEquals("ru", h.getLanguage());
+        assertEquals("1998", h.getYear());
+        assertEquals("Дозоры", h.getSeries());
+        assertEquals(Integer.valueOf(1), h.getSeriesIndex());
+        assertEquals("Первый абзац.\nВторой абзац.", h.getDescription());
+        assertArrayEquals(COVER, h.getCover());
+    }
+
+    @Test
+    public void testStopsBeforeBody() throws IOException {
+        // The body is not well-formed XML: a full parse would fail, a header-only read must not notice
+        Path file = tempDir.resolve("broken-body.fb2");
+        Files.writeString(file, fb2(" <body><section><p>unclosed</section>&bogus;</body>\n"));
+
+        BookHeader h = new Fb2HeaderReader().read(file).orElseThrow();
+
+        assertEquals("Ночной дозор", h.getTitle());
+        assertArrayEquals(COVER, h.getCover());
+    }
+
+    @Test
+    public void testWindows1251Encoding() throws IOException {
+        Path file = tempDir.resolve("cp1251.fb2");
+        Charset cp1251 = Charset.forName("windows-1251");
+        String xml = fb2("").replace("encoding=\"UTF-8\"", "encoding=\"windows-1251\"");
+        Files.write(file, xml.getBytes(cp1251));
+
+        BookHeader h = new Fb2HeaderReader().read(file).orElseThrow();
+
+        assertEquals("Ночной дозор", h.getTitle());
+        assertArrayEquals(COVER, h.getCover());
+    }
+
+    @Test
+    public void testMissingCoverBinary() throws IOException {
+        Path file = tempDir.resolve("nocover.fb2");
+        Files.writeString(file, fb2("").replace("id=\"cover.jpg\"", "id=\"something-else.jpg\""));
+
+        BookHeader h = new Fb2HeaderReader().read(file).orElseThrow();
+
+        assertNull(h.getCover());
+    }
+
+    @Test
+    public void testNotFb2() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("plain.fb2"), "just some text");
+        assertTrue(new Fb2HeaderReader().read(file).isEmpty());
+        assertFalse(new Fb2HeaderReader().supports(tempDir.resolve("book.epub")));
+    }
+}
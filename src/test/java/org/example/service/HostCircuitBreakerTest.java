@@ -0,0 +1,60 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostCircuitBreakerTest {
+
+    private static void await(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        HostCircuitBreaker breaker = new HostCircuitBreaker(3, Duration.ofHours(1), Duration.ofHours(1));
+        breaker.failure("books.example.org");
+        breaker.failure("books.example.org");
+        breaker.success("books.example.org");
+        breaker.failure("books.example.org");
+        breaker.failure("books.example.org");
+        assertTrue(breaker.allow("books.example.org"), "A success resets the count");
+
+        breaker.failure("books.example.org");
+        assertFalse(breaker.allow("books.example.org"));
+        assertTrue(breaker.allow("covers.example.org"));
+        assertEquals(Set.of("books.example.org"), breaker.openHosts());
+    }
+
+    @Test
+    public void testProbeClosesTheCircuit() throws InterruptedException {
+        HostCircuitBreaker breaker = new HostCircuitBreaker(1, Duration.ofMillis(50), Duration.ofMillis(200));
+        AtomicInteger probes = new AtomicInteger();
+        AtomicBoolean up = new AtomicBoolean(false);
+        breaker.setProber(host -> {
+            probes.incrementAndGet();
+            return up.get() ? CompletableFuture.completedFuture(true) : CompletableFuture.failedFuture(new java.io.IOException("down"));
+        });
+
+        breaker.failure("books.example.org");
+        assertFalse(breaker.allow("books.example.org"));
+        await(() -> probes.get() >= 2);
+        assertFalse(breaker.allow("books.example.org"), "Failed probes keep it open");
+
+        up.set(true);
+        await(() -> breaker.allow("books.example.org"));
+        assertTrue(breaker.allow("books.example.org"));
+        int probesWhenClosed = probes.get();
+        Thread.sleep(300);
+        assertEquals(probesWhenClosed, probes.get(), "No probes while the host is up");
+    }
+}
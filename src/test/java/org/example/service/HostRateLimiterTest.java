@@ -0,0 +1,56 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostRateLimiterTest {
+
+    @Test
+    public void testBurstThenSteadyRate() {
+        HostRateLimiter limiter = new HostRateLimiter(10);
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> permits = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            permits.add(limiter.acquire("books.example.org"));
+        }
+        long callerMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(callerMillis < 200, "acquire must not block the caller: " + callerMillis + "ms");
+        assertTrue(permits.get(9).isDone(), "The burst goes out at once");
+        assertFalse(permits.get(19).isDone());
+
+        CompletableFuture.allOf(permits.toArray(new CompletableFuture[0])).join();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis >= 900, "Ten more at 10/s take about a second: " + elapsedMillis + "ms");
+    }
+
+    @Test
+    public void testHostsAreIndependent() {
+        HostRateLimiter limiter = new HostRateLimiter(1);
+        limiter.acquire("a.example.org");
+        assertFalse(limiter.acquire("a.example.org").isDone());
+        assertTrue(limiter.acquire("b.example.org").isDone());
+
+        limiter.setRate("c.example.org", 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.acquire("c.example.org").isDone(), "Zero means unlimited");
+        }
+    }
+
+    @Test
+    public void testPauseHoldsEveryone() {
+        HostRateLimiter limiter = new HostRateLimiter(100);
+        limiter.pause("books.example.org", Duration.ofMillis(300));
+        long start = System.nanoTime();
+        CompletableFuture<Void> permit = limiter.acquire("books.example.org");
+        assertFalse(permit.isDone());
+        permit.join();
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 250);
+        assertTrue(limiter.acquire("other.example.org").isDone());
+    }
+}
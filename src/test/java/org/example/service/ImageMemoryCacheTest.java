@@ -0,0 +1,98 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageMemoryCacheTest {
+
+    private static byte[] image(int size) {
+        return new byte[size];
+    }
+
+    @Test
+    public void testStaysWithinBudget() {
+        ImageMemoryCache cache = new ImageMemoryCache(10_000);
+        for (int i = 0; i < 100; i++) {
+            cache.put("cover" + i, image(1_000));
+        }
+        ImageMemoryCache.Stats stats = cache.stats();
+        assertEquals(10_000, stats.residentBytes());
+        assertEquals(10, stats.entries());
+        assertEquals(90, stats.evictions());
+        assertNotNull(cache.get("cover99"));
+        assertNull(cache.get("cover0"));
+    }
+
+    @Test
+    public void testRepeatedImagesSurviveOneOffs() {
+        ImageMemoryCache cache = new ImageMemoryCache(10_000);
+        cache.put("author", image(1_000));
+        assertNotNull(cache.get("author"), "Second access promotes it");
+        // a long run of covers seen only once
+        for (int i = 0; i < 1_000; i++) {
+            cache.put("cover" + i, image(1_000));
+        }
+        assertNotNull(cache.get("author"));
+    }
+
+    @Test
+    public void testHugeImagesAreNotKept() {
+        ImageMemoryCache cache = new ImageMemoryCache(1_000);
+        cache.put("small", image(100));
+        cache.put("huge", image(5_000));
+        assertNull(cache.get("huge"));
+        assertNotNull(cache.get("small"));
+    }
+
+    @Test
+    public void testReplaceAndShrink() {
+        ImageMemoryCache cache = new ImageMemoryCache(10_000);
+        cache.put("a", image(4_000));
+        cache.put("a", image(2_000));
+        assertEquals(2_000, cache.stats().residentBytes());
+        cache.put("b", image(2_000));
+        cache.get("b");
+        cache.setBudget(3_000);
+        assertEquals(2_000, cache.stats().residentBytes());
+        assertNotNull(cache.get("b"), "Protected entries go last");
+    }
+
+    @Test
+    public void testStats() {
+        ImageMemoryCache cache = new ImageMemoryCache(10_000);
+        cache.put("a", image(10));
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        ImageMemoryCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(2.0 / 3, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        ImageMemoryCache cache = new ImageMemoryCache(50_000);
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        String key = "k" + ((i * 31 + seed) % 200);
+                        if (cache.get(key) == null) cache.put(key, image(100 + i % 900));
+                    }
+                }));
+            }
+        }
+        for (Future<?> f : futures) f.get();
+        assertTrue(cache.stats().residentBytes() <= 50_000);
+    }
+}
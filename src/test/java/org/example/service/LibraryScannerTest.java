@@ -0,0 +1,343 @@
+package org.example.service;
+
+import org.example.model.Book;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryScannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ThumbnailCacheService pack;
+
+    @AfterEach
+    public void closePack() {
+        if (pack != null) pack.close();
+    }
+
+    /** The catalog in the temp dir; every instance shares one cover pack, as in the application. */
+    private ScanCatalog catalog() {
+        if (pack == null) pack = new ThumbnailCacheService(tempDir.resolve("covers"), ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        return new ScanCatalog(tempDir.resolve("catalog").resolve("catalog.bin"), pack);
+    }
+
+    /**
+     * Pretends to scan a file: the local parse burns some CPU under the parse cap, the online
+     * lookup "waits on the network".
+     */
+    private static class SlowMetadataService extends MetadataService {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger online = new AtomicInteger();
+        final AtomicInteger maxOnline = new AtomicInteger();
+        // false: every online lookup goes unanswered, as with the host unreachable
+        volatile boolean answered = true;
+        private final long cpuMicros;
+        private final long ioMillis;
+        private final Semaphore cpu;
+
+        SlowMetadataService(long cpuMicros, long ioMillis) {
+            this(cpuMicros, ioMillis, Integer.MAX_VALUE);
+        }
+
+        SlowMetadataService(long cpuMicros, long ioMillis, int parseThreads) {
+            super(null, null);
+            this.cpuMicros = cpuMicros;
+            this.ioMillis = ioMillis;
+            this.cpu = new Semaphore(parseThreads);
+        }
+
+        @Override
+        BookHeader readHeader(Path path) {
+            calls.incrementAndGet();
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            try {
+                cpu.acquire();
+                try {
+                    long end = System.nanoTime() + cpuMicros * 1000;
+                    while (System.nanoTime() < end) {
+                        Thread.onSpinWait();
+                    }
+                } finally {
+                    cpu.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+            return new BookHeader().title(path.getFileName().toString());
+        }
+
+        @Override
+        public CompletableFuture<MetadataService.Result> enrichTextAsync(Book book, BookHeader header) {
+            online.incrementAndGet();
+            maxOnline.accumulateAndGet(online.get(), Math::max);
+            // a request held back by the rate limiter: a timer, no thread
+            Executor later = CompletableFuture.delayedExecutor(ThreadLocalRandom.current().nextLong(ioMillis + 1),
+                    TimeUnit.MILLISECONDS);
+            return CompletableFuture.supplyAsync(() -> {
+                online.decrementAndGet();
+                return new MetadataService.Result(book.toBuilder().genre("Enriched").build(), answered);
+            }, later);
+        }
+
+        @Override
+        public CompletableFuture<MetadataService.Result> fetchImagesAsync(Book book, BookHeader header) {
+            return CompletableFuture.completedFuture(new MetadataService.Result(book.toBuilder().cover(new byte[]{1}).build(), true));
+        }
+    }
+
+    private List<File> createLibrary(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Path dir = tempDir.resolve("d" + (i % 7));
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve(String.format("book%05d.fb2", i)), "x");
+        }
+        Files.writeString(tempDir.resolve("notes.txt"), "not a book");
+        return List.of(tempDir.toFile());
+    }
+
+    private List<Book> runScan(List<File> files, MetadataService service, ScanSettings settings, int expected)
+            throws Exception {
+        return runScan(files, service, settings, null, expected);
+    }
+
+    private List<Book> runScan(List<File> files, MetadataService service, ScanSettings settings,
+                               ScanCatalog catalog, int expected) throws Exception {
+        List<Book> found = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(expected);
+        LibraryScanner scanner = new LibraryScanner(files, service, settings,
+                books -> books.forEach(b -> {
+                    found.add(b);
+                    latch.countDown();
+                }),
+                processed -> {},
+                () -> {});
+        scanner.setCatalog(catalog);
+        scanner.start();
+        scanner.get(60, TimeUnit.SECONDS);
+        assertTrue(latch.await(10, TimeUnit.SECONDS), "All books should be published");
+        return found;
+    }
+
+    @Test
+    public void testParallelScanFindsEveryBook() throws Exception {
+        List<File> files = createLibrary(60);
+        SlowMetadataService service = new SlowMetadataService(100, 5);
+        ScanSettings settings = ScanSettings.builder().concurrency(8).parseThreads(2).build();
+
+        List<Book> found = runScan(files, service, settings, 60);
+
+        assertEquals(60, found.size());
+        assertEquals(60, found.stream().map(Book::getFilePath).distinct().count());
+        assertTrue(service.maxRunning.get() <= 8, "Concurrency must stay within the configured bound");
+    }
+
+    @Test
+    public void testOrderedScanKeepsDiscoveryOrder() throws Exception {
+        List<File> files = createLibrary(40);
+        List<String> sequential = runScan(files, new SlowMetadataService(0, 0), ScanSettings.sequential(), 40)
+                .stream().map(Book::getTitle).toList();
+
+        ScanSettings ordered = ScanSettings.builder().concurrency(6).ordered(true).build();
+        List<String> parallel = runScan(files, new SlowMetadataService(50, 10), ordered, 40)
+                .stream().map(Book::getTitle).toList();
+
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testCatalogSkipsUnchangedFiles() throws Exception {
+        List<File> files = createLibrary(30);
+        ScanCatalog catalog = catalog();
+        ScanSettings settings = ScanSettings.builder().concurrency(4).build();
+
+        SlowMetadataService first = new SlowMetadataService(0, 0);
+        assertEquals(30, runScan(files, first, settings, catalog, 30).size());
+        assertEquals(30, first.calls.get());
+
+        // fresh catalog instance: what the next start of the application would see
+        ScanCatalog reloaded = catalog();
+        SlowMetadataService second = new SlowMetadataService(0, 0);
+        assertEquals(30, runScan(files, second, settings, reloaded, 30).size());
+        assertEquals(0, second.calls.get(), "Unchanged files must not be parsed again");
+    }
+
+    @Test
+    public void testUnansweredLookupsAreNotCatalogued() throws Exception {
+        List<File> files = createLibrary(20);
+        ScanCatalog catalog = catalog();
+        for (ScanSettings settings : List.of(ScanSettings.sequential(), ScanSettings.builder().concurrency(4).build())) {
+            SlowMetadataService unreachable = new SlowMetadataService(0, 0);
+            unreachable.answered = false;
+            assertEquals(20, runScan(files, unreachable, settings, catalog, 20).size());
+            assertEquals(20, unreachable.calls.get());
+        }
+
+        SlowMetadataService online = new SlowMetadataService(0, 0);
+        runScan(files, online, ScanSettings.sequential(), catalog, 20);
+        assertEquals(20, online.calls.get(), "Books with placeholders are scanned again");
+        SlowMetadataService again = new SlowMetadataService(0, 0);
+        runScan(files, again, ScanSettings.sequential(), catalog, 20);
+        assertEquals(0, again.calls.get());
+    }
+
+    @Test
+    public void testRescanForgetsDeletedFiles() throws Exception {
+        List<File> files = createLibrary(20);
+        ScanCatalog catalog = catalog();
+        runScan(files, new SlowMetadataService(0, 0), ScanSettings.sequential(), catalog, 20);
+        assertEquals(20, catalog.size());
+
+        Path deleted = tempDir.resolve("d3").resolve("book00003.fb2");
+        Files.delete(deleted);
+        for (ScanSettings settings : List.of(ScanSettings.sequential(), ScanSettings.builder().concurrency(4).changesOnly(true).build())) {
+            LibraryScanner scanner = new LibraryScanner(files, new SlowMetadataService(0, 0), settings, books -> {}, p -> {}, () -> {});
+            scanner.setCatalog(catalog);
+            scanner.doInBackground();
+            assertTrue(scanner.isGone(deleted));
+            assertFalse(scanner.isGone(tempDir.resolve("d4").resolve("book00004.fb2")));
+            assertFalse(scanner.isGone(Path.of("/elsewhere/book.fb2")), "Outside the scanned folders");
+        }
+        assertEquals(19, catalog.size());
+        assertEquals(19, catalog().size(), "The catalog on disk no longer has it either");
+    }
+
+    @Test
+    public void testChangesOnlyPublishesModifiedFiles() throws Exception {
+        List<File> files = createLibrary(20);
+        ScanCatalog catalog = catalog();
+        runScan(files, new SlowMetadataService(0, 0), ScanSettings.sequential(), catalog, 20);
+
+        Path modified = tempDir.resolve("d3").resolve("book00003.fb2");
+        Files.writeString(modified, "new content");
+        Path added = Files.writeString(tempDir.resolve("d0").resolve("new.fb2"), "x");
+
+        ScanSettings changesOnly = ScanSettings.builder().concurrency(4).changesOnly(true).build();
+        SlowMetadataService service = new SlowMetadataService(0, 0);
+        List<Book> found = runScan(files, service, changesOnly, catalog, 2);
+
+        assertEquals(2, found.size());
+        assertEquals(2, service.calls.get());
+        assertTrue(found.stream().anyMatch(b -> b.getFilePath().equals(modified)));
+        assertTrue(found.stream().anyMatch(b -> b.getFilePath().equals(added)));
+    }
+
+    @Test
+    public void testPipelinePublishesEarlyAndEnrichesInPlace() throws Exception {
+        List<File> files = createLibrary(50);
+        ScanSettings settings = ScanSettings.builder()
+                .concurrency(4).parseThreads(2).enrichThreads(3).coverThreads(1).queueCapacity(2)
+                .build();
+        // callbacks run on the EDT one after another, no locking needed
+        Map<Path, Book> shown = new HashMap<>();
+        List<String> problems = new ArrayList<>();
+        LibraryScanner scanner = new LibraryScanner(files, new SlowMetadataService(50, 5), settings,
+                books -> books.forEach(b -> {
+                    if (!"General".equals(b.getGenre())) problems.add("Not published before enrichment: " + b);
+                    shown.put(b.getFilePath(), b);
+                }),
+                processed -> {},
+                () -> {});
+        scanner.setOnBooksUpdated(books -> books.forEach(b -> {
+            if (shown.put(b.getFilePath(), b) == null) problems.add("Update before add: " + b);
+        }));
+        scanner.execute();
+        scanner.get(60, TimeUnit.SECONDS);
+        // published chunks reach the EDT on a timer, possibly after the worker is done
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        AtomicInteger enriched = new AtomicInteger();
+        while (enriched.get() < 50 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            SwingUtilities.invokeAndWait(() -> enriched.set((int) shown.values().stream()
+                    .filter(b -> b.getCover() != null).count()));
+        }
+
+        assertEquals(List.of(), problems);
+        assertEquals(50, shown.size());
+        assertTrue(shown.values().stream().allMatch(b -> "Enriched".equals(b.getGenre()) && b.getCover() != null));
+        List<ScanStage.Stats> stats = scanner.getStageStats();
+        assertEquals(List.of("parse", "online", "covers"), stats.stream().map(ScanStage.Stats::name).toList());
+        assertTrue(stats.stream().allMatch(st -> st.completed() == 50 && st.queued() == 0), stats.toString());
+    }
+
+    @Test
+    public void testLookupsWaitWithoutHoldingWorkers() throws Exception {
+        List<File> files = createLibrary(40);
+        ScanSettings settings = ScanSettings.builder()
+                .concurrency(40).parseThreads(4).enrichThreads(40).queueCapacity(40)
+                .build();
+        SlowMetadataService service = new SlowMetadataService(0, 400);
+
+        List<Book> found = runScan(files, service, settings, 40);
+
+        assertEquals(40, found.size());
+        // a single online worker keeps starting lookups while the earlier ones wait
+        assertTrue(service.maxOnline.get() > 10, "Lookups in progress at once: " + service.maxOnline.get());
+        assertTrue(service.maxOnline.get() <= 40);
+    }
+
+    @Test
+    public void testScanSettingsBounds() {
+        ScanSettings s = ScanSettings.builder().concurrency(0).parseThreads(16).build();
+        assertEquals(1, s.getConcurrency());
+        assertEquals(1, s.getParseThreads());
+        assertFalse(s.isParallel());
+
+        ScanSettings stages = ScanSettings.builder().concurrency(6).build();
+        assertEquals(6, stages.getEnrichThreads());
+        assertEquals(6, stages.getCoverThreads());
+        assertEquals(12, stages.getQueueCapacity());
+    }
+
+    /**
+     * Throughput vs. worker count. Run with {@code mvn test -Dtest=LibraryScannerTest -Dbenchmark=true}.
+     */
+    @Test
+    public void benchmarkThroughputByConcurrency() throws Exception {
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "Benchmark disabled, use -Dbenchmark=true");
+
+        int count = 400;
+        List<File> files = createLibrary(count);
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-12s %-12s %10s %12s%n", "concurrency", "parseThreads", "millis", "books/sec");
+        for (int workers = 1; workers <= cores * 4; workers *= 2) {
+            ScanSettings settings = ScanSettings.builder()
+                    .concurrency(workers)
+                    .parseThreads(Math.min(workers, cores))
+                    .build();
+            SlowMetadataService service = new SlowMetadataService(2_000, 20, settings.getParseThreads());
+            long start = System.nanoTime();
+            runScan(files, service, settings, count);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.printf("%-12d %-12d %10d %12.1f%n", workers, settings.getParseThreads(), millis,
+                    count * 1000.0 / Math.max(1, millis));
+        }
+    }
+}
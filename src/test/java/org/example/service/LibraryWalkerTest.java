@@ -0,0 +1,87 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryWalkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testFindsBooksWithAttributes() throws Exception {
+        Path nested = Files.createDirectories(tempDir.resolve("a").resolve("b"));
+        Files.writeString(nested.resolve("deep.epub"), "12345");
+        Files.writeString(tempDir.resolve("top.FB2"), "x");
+        Files.writeString(tempDir.resolve("readme.txt"), "not a book");
+        Files.createDirectories(tempDir.resolve("folder.pdf"));
+        Path single = Files.writeString(Files.createDirectories(tempDir.resolve("other")).resolve("single.mobi"), "m");
+
+        List<Path> found = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        int count = new LibraryWalker(() -> false).walk(List.of(tempDir.resolve("a"), tempDir.resolve("top.FB2"), single),
+                (path, attrs) -> {
+                    found.add(path);
+                    sizes.add(attrs.size());
+                });
+
+        assertEquals(3, count);
+        assertEquals(List.of(nested.resolve("deep.epub"), tempDir.resolve("top.FB2"), single), found);
+        assertEquals(List.of(5L, 1L, 1L), sizes);
+    }
+
+    @Test
+    public void testSkipsDirectoryLinkLoops() throws Exception {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Files.writeString(library.resolve("book.epub"), "x");
+        Path sub = Files.createDirectories(library.resolve("sub"));
+        Files.writeString(sub.resolve("other.pdf"), "x");
+        try {
+            Files.createSymbolicLink(sub.resolve("back-to-top"), library);
+        } catch (IOException | UnsupportedOperationException e) {
+            Assumptions.assumeTrue(false, "Symbolic links are not available here");
+        }
+
+        List<Path> found = new ArrayList<>();
+        int count = new LibraryWalker(() -> false).walk(List.of(library), (path, attrs) -> found.add(path));
+
+        assertEquals(2, count, "Each book must be seen once: " + found);
+    }
+
+    @Test
+    public void testStopsWhenCancelled() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(tempDir.resolve("book" + i + ".fb2"), "x");
+        }
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<Path> found = new ArrayList<>();
+
+        new LibraryWalker(cancelled::get).walk(List.of(tempDir), (path, attrs) -> {
+            found.add(path);
+            if (found.size() == 5) cancelled.set(true);
+        });
+
+        assertEquals(5, found.size());
+    }
+
+    @Test
+    public void testInterruptStopsTheWalk() throws IOException {
+        Files.writeString(tempDir.resolve("a.fb2"), "x");
+        Files.writeString(tempDir.resolve("b.fb2"), "x");
+
+        assertThrows(InterruptedException.class, () -> new LibraryWalker(() -> false).walk(List.of(tempDir),
+                (path, attrs) -> {
+                    throw new InterruptedException();
+                }));
+    }
+}
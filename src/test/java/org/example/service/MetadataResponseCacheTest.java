@@ -0,0 +1,90 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataResponseCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ExternalMetadataService.BookInfo info(String genre) {
+        return new ExternalMetadataService.BookInfo(genre, "1961", "d".repeat(70_000), "http://example.org/c.png");
+    }
+
+    @Test
+    public void testSurvivesRestart() {
+        Path file = tempDir.resolve("metadata.bin");
+        MetadataResponseCache cache = new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES);
+        cache.put("solaris|lem", info("Fiction"), Duration.ofDays(1));
+        cache.put("solaris|lem", info("Science Fiction"), Duration.ofDays(1));
+        cache.put("nothing|nobody", null, Duration.ofHours(1));
+
+        MetadataResponseCache reloaded = new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES);
+        ExternalMetadataService.BookInfo info = reloaded.get("solaris|lem").orElseThrow().info();
+        assertEquals("Science Fiction", info.genre(), "The later record wins");
+        assertEquals(70_000, info.description().length());
+        assertTrue(reloaded.get("nothing|nobody").isPresent());
+        assertNull(reloaded.get("nothing|nobody").get().info());
+        assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    public void testExpiredEntriesAreIgnored() {
+        Path file = tempDir.resolve("metadata.bin");
+        MetadataResponseCache cache = new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES);
+        cache.put("old|book", info("Fiction"), Duration.ZERO);
+        assertTrue(cache.get("old|book").isEmpty());
+        assertTrue(new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES).get("old|book").isEmpty());
+    }
+
+    @Test
+    public void testCompactsPastCap() {
+        Path file = tempDir.resolve("metadata.bin");
+        long cap = 64 * 1024;
+        MetadataResponseCache cache = new MetadataResponseCache(file, cap);
+        ExternalMetadataService.BookInfo small = new ExternalMetadataService.BookInfo("Fiction", "2000", "short", null);
+        for (int i = 0; i < 5_000; i++) {
+            cache.put("book " + i + "|author", small, Duration.ofDays(1).plusSeconds(i));
+        }
+        assertTrue(cache.fileSize() <= cap, "File size " + cache.fileSize());
+        assertTrue(cache.get("book 4999|author").isPresent(), "The longest-lived entries are kept");
+        assertTrue(cache.get("book 0|author").isEmpty());
+
+        MetadataResponseCache reloaded = new MetadataResponseCache(file, cap);
+        assertEquals(cache.size(), reloaded.size());
+    }
+
+    @Test
+    public void testDamagedTailIsDropped() throws IOException {
+        Path file = tempDir.resolve("metadata.bin");
+        MetadataResponseCache cache = new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES);
+        cache.put("a|b", info("Fiction"), Duration.ofDays(1));
+        long size = Files.size(file);
+        Files.write(file, ByteBuffer.allocate(6).putInt(1000).array(), java.nio.file.StandardOpenOption.APPEND);
+
+        MetadataResponseCache reloaded = new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES);
+        assertTrue(reloaded.get("a|b").isPresent());
+        assertEquals(size, Files.size(file));
+        reloaded.put("c|d", info("Poetry"), Duration.ofDays(1));
+        assertTrue(new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES).get("c|d").isPresent());
+    }
+
+    @Test
+    public void testOtherVersionIsDiscarded() throws IOException {
+        Path file = tempDir.resolve("metadata.bin");
+        Files.write(file, ByteBuffer.allocate(8).putInt(0x534D4D43).putInt(MetadataResponseCache.VERSION + 1).array());
+        MetadataResponseCache cache = new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES);
+        assertEquals(0, cache.size());
+        cache.put("a|b", info("Fiction"), Duration.ofDays(1));
+        assertTrue(new MetadataResponseCache(file, MetadataResponseCache.DEFAULT_MAX_BYTES).get("a|b").isPresent());
+    }
+}
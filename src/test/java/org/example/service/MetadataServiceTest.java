@@ -5,21 +5,35 @@ import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.mime.MediaType;
 import org.example.model.Book;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MetadataServiceTest {
 
+    @TempDir
+    Path tempDir;
+
     private Parser parser;
     private StubExternalMetadataService external;
     private MetadataService metadataService;
@@ -32,29 +46,19 @@ public class MetadataServiceTest {
         }
 
         @Override
-        public Optional<String> fetchGenre(String title, String author) {
+        public CompletableFuture<Optional<BookInfo>> fetchAllAsync(String title, String author, String isbn) {
             fetchGenreCalled = true;
-            return Optional.of("Science Fiction");
-        }
-
-        @Override
-        public Optional<String> fetchYear(String title, String author) {
-            return Optional.of("2024");
+            return CompletableFuture.completedFuture(Optional.of(new BookInfo("Science Fiction", "2024", "Test Description", null)));
         }
 
         @Override
-        public Optional<String> fetchDescription(String title, String author) {
-            return Optional.of("Test Description");
+        public CompletableFuture<Optional<byte[]>> fetchCoverAsync(String title, String author, String isbn) {
+            return CompletableFuture.completedFuture(Optional.empty());
         }
 
         @Override
-        public Optional<byte[]> fetchCover(String title, String author) {
-            return Optional.empty();
-        }
-
-        @Override
-        public Optional<byte[]> fetchAuthorPhoto(String author) {
-            return Optional.empty();
+        public CompletableFuture<Optional<byte[]>> fetchAuthorPhotoAsync(String author) {
+            return CompletableFuture.completedFuture(Optional.empty());
         }
     }
 
@@ -86,6 +90,178 @@ public class MetadataServiceTest {
         assertTrue(external.fetchGenreCalled);
     }
 
+    /** Sets the header, then emits a long body, like a PDF parser would. */
+    private static class BodyEmittingParser implements Parser {
+        final AtomicInteger emitted = new AtomicInteger();
+        // The description only shows up after this many body elements; 0 = with the header
+        final int descriptionAt;
+
+        BodyEmittingParser() {
+            this(0);
+        }
+
+        BodyEmittingParser(int descriptionAt) {
+            this.descriptionAt = descriptionAt;
+        }
+
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws SAXException {
+            metadata.set("dc:title", "Dune");
+            metadata.set("dc:creator", "Frank Herbert");
+            metadata.set("dc:language", "en");
+            metadata.set("dc:date", "1965");
+            handler.startDocument();
+            for (int i = 0; i < 10_000; i++) {
+                if (i == descriptionAt) metadata.set("dc:description", "Arrakis");
+                handler.startElement("", "p", "p", new AttributesImpl());
+                char[] text = ("page " + i).toCharArray();
+                handler.characters(text, 0, text.length);
+                handler.endElement("", "p", "p");
+                emitted.incrementAndGet();
+            }
+            handler.endDocument();
+        }
+    }
+
+    @Test
+    public void testMetadataOnlyModeStopsAfterHeader() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("dune.pdf"), "%PDF-1.4");
+        BodyEmittingParser bodyParser = new BodyEmittingParser();
+        MetadataService service = new MetadataService(bodyParser, external, 1, MetadataService.ParseMode.METADATA_ONLY);
+
+        Book book = service.extractMetadata(file);
+
+        assertEquals("Dune", book.getTitle());
+        assertEquals("Frank Herbert", book.getAuthor());
+        assertEquals(0, bodyParser.emitted.get(), "Body should not be walked once the header is known");
+    }
+
+    @Test
+    public void testMetadataOnlyModeWaitsForEveryKeyItReads() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("dune.pdf"), "%PDF-1.4");
+        BodyEmittingParser bodyParser = new BodyEmittingParser(500);
+        MetadataService service = new MetadataService(bodyParser, external, 1, MetadataService.ParseMode.METADATA_ONLY);
+
+        Book book = service.extractMetadata(file);
+
+        assertEquals("Arrakis", book.getDescription());
+        assertEquals("en", book.getLanguage());
+        assertEquals(500, bodyParser.emitted.get(), "Parsing stops at the first element after the description");
+    }
+
+    @Test
+    public void testFullTextModeWalksWholeBody() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("dune.pdf"), "%PDF-1.4");
+        BodyEmittingParser bodyParser = new BodyEmittingParser();
+        MetadataService service = new MetadataService(bodyParser, external, 1, MetadataService.ParseMode.FULL_TEXT);
+
+        Book book = service.extractMetadata(file);
+
+        assertEquals("Dune", book.getTitle());
+        assertEquals(10_000, bodyParser.emitted.get());
+    }
+
+    @Test
+    public void testNativeReaderBypassesTika() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("book.fb2"),
+                "<FictionBook><description><title-info><author><last-name>Lem</last-name></author>" +
+                "<book-title>Solaris</book-title><genre>sf</genre><date>1961</date>" +
+                "<annotation><p>Ocean</p></annotation></title-info></description><body/></FictionBook>");
+        BodyEmittingParser bodyParser = new BodyEmittingParser();
+        MetadataService service = new MetadataService(bodyParser, external);
+
+        Book book = service.extractMetadata(file);
+
+        assertEquals("Solaris", book.getTitle(), "Tika (which would report 'Dune') must not be used for FB2");
+        assertEquals("Lem", book.getAuthor());
+        assertEquals("sf", book.getGenre());
+        assertEquals("1961", book.getYear());
+        assertEquals("Ocean", book.getDescription());
+        assertFalse(external.fetchGenreCalled, "Genre comes from the file, no online lookup");
+    }
+
+    @Test
+    public void testStagesSplitLocalAndOnlineWork() {
+        Path path = Paths.get("the-left-hand.epub");
+        BookHeader header = new BookHeader().author("Le Guin").year("1969");
+
+        Book local = metadataService.localBook(path, header);
+        assertEquals("The Left Hand", local.getTitle());
+        assertEquals("General", local.getGenre(), "No network before stage 2");
+        assertFalse(external.fetchGenreCalled);
+
+        Book enriched = metadataService.enrichText(local, header);
+        assertEquals("Science Fiction", enriched.getGenre());
+        assertEquals("1969", enriched.getYear(), "Year from the file is kept");
+        assertEquals("Test Description", enriched.getDescription());
+
+        BookHeader complete = new BookHeader().genre("sf").year("1969").description("Winter");
+        Book full = metadataService.localBook(path, complete);
+        assertSame(full, metadataService.enrichText(full, complete));
+    }
+
+    @Test
+    public void testUnansweredLookupIsIncomplete() {
+        ExternalMetadataService unreachable = new StubExternalMetadataService() {
+            @Override
+            public CompletableFuture<Optional<BookInfo>> fetchAllAsync(String title, String author, String isbn) {
+                return CompletableFuture.failedFuture(new HostUnavailableException("www.googleapis.com is unreachable"));
+            }
+        };
+        MetadataService service = new MetadataService(parser, unreachable);
+        Path path = Paths.get("solaris.epub");
+        BookHeader header = new BookHeader().author("Lem");
+
+        MetadataService.Result result = service.enrichTextAsync(service.localBook(path, header), header).join();
+        assertFalse(result.complete());
+        assertEquals("General", result.book().getGenre(), "Placeholders are still filled in");
+
+        assertTrue(service.fetchImagesAsync(result.book(), header).join().complete());
+        BookHeader known = new BookHeader().author("Lem").genre("sf").year("1961").description("Ocean");
+        assertTrue(service.enrichTextAsync(service.localBook(path, known), known).join().complete());
+    }
+
+    /**
+     * Before/after comparison of {@link MetadataService.ParseMode} on a real corpus:
+     * {@code mvn test -Dtest=MetadataServiceTest -Dbenchmark.corpus=/path/to/books}.
+     */
+    @Test
+    public void benchmarkParseModes() throws IOException {
+        String corpus = System.getProperty("benchmark.corpus");
+        Assumptions.assumeTrue(corpus != null, "Benchmark disabled, use -Dbenchmark.corpus=<dir>");
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get(corpus))) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().toLowerCase().matches(".*\\.(pdf|epub|fb2|mobi)$"))
+                    .toList();
+        }
+        Assumptions.assumeFalse(files.isEmpty(), "No books found in " + corpus);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        System.out.printf("%-15s %8s %12s %12s %14s%n", "mode", "files", "wall ms", "cpu ms", "allocated MB");
+        for (MetadataService.ParseMode mode : MetadataService.ParseMode.values()) {
+            MetadataService service = new MetadataService(new org.apache.tika.parser.AutoDetectParser(), external, 1, mode);
+            files.forEach(service::parseLocal); // warm-up
+
+            long alloc = threads.getThreadAllocatedBytes(threadId);
+            long cpu = threads.getCurrentThreadCpuTime();
+            long wall = System.nanoTime();
+            files.forEach(service::parseLocal);
+            System.out.printf("%-15s %8d %12d %12d %14d%n", mode, files.size(),
+                    (System.nanoTime() - wall) / 1_000_000,
+                    (threads.getCurrentThreadCpuTime() - cpu) / 1_000_000,
+                    (threads.getThreadAllocatedBytes(threadId) - alloc) / (1024 * 1024));
+        }
+    }
+
     @Test
     public void testNormalizeTitle() {
         assertEquals("Effective Java", metadataService.normalizeTitle("effective-java"));
@@ -0,0 +1,180 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MobiHeaderReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final byte[] COVER = new byte[2048];
+
+    static {
+        for (int i = 0; i < COVER.length; i++) COVER[i] = (byte) (i * 17);
+    }
+
+    /** Builds a PalmDB file: record 0 with PalmDOC + MOBI + EXTH headers, text records, then images. */
+    private static class MobiWriter {
+        final ByteArrayOutputStream exth = new ByteArrayOutputStream();
+        int exthCount;
+        int locale = 0x09;
+        String fullName = "Full Name Title";
+
+        MobiWriter exth(int type, byte[] data) {
+            exth.writeBytes(ByteBuffer.allocate(8).putInt(type).putInt(data.length + 8).array());
+            exth.writeBytes(data);
+            exthCount++;
+            return this;
+        }
+
+        MobiWriter exth(int type, String value) {
+            return exth(type, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        MobiWriter exth(int type, int value) {
+            return exth(type, ByteBuffer.allocate(4).putInt(value).array());
+        }
+
+        byte[] build(List<byte[]> textRecords, List<byte[]> images) {
+            int mobiHeaderLength = 0xE8;
+            byte[] name = fullName.getBytes(StandardCharsets.UTF_8);
+            int exthLength = 12 + exth.size();
+            ByteBuffer rec0 = ByteBuffer.allocate(16 + mobiHeaderLength + exthLength + name.length + 2);
+            rec0.putShort(0, (short) 2).putInt(4, 12345).putShort(8, (short) textRecords.size()).putShort(10, (short) 4096);
+            rec0.put(16, "MOBI".getBytes(StandardCharsets.US_ASCII));
+            rec0.putInt(20, mobiHeaderLength).putInt(24, 2).putInt(28, 65001);
+            rec0.putInt(84, 16 + mobiHeaderLength + exthLength).putInt(88, name.length);
+            rec0.putInt(92, locale);
+            rec0.putInt(108, images.isEmpty() ? -1 : 1 + textRecords.size());
+            rec0.putInt(128, 0x40);
+            int exthStart = 16 + mobiHeaderLength;
+            rec0.put(exthStart, "EXTH".getBytes(StandardCharsets.US_ASCII));
+            rec0.putInt(exthStart + 4, exthLength).putInt(exthStart + 8, exthCount);
+            rec0.put(exthStart + 12, exth.toByteArray());
+            rec0.put(16 + mobiHeaderLength + exthLength, name);
+
+            List<byte[]> records = new ArrayList<>();
+            records.add(rec0.array());
+            records.addAll(textRecords);
+            records.addAll(images);
+
+            ByteBuffer pdb = ByteBuffer.allocate(78 + records.size() * 8 + 2);
+            pdb.put(0, "Test_Book".getBytes(StandardCharsets.US_ASCII));
+            pdb.put(60, "BOOKMOBI".getBytes(StandardCharsets.US_ASCII));
+            pdb.putShort(76, (short) records.size());
+            int offset = pdb.capacity();
+            for (int i = 0; i < records.size(); i++) {
+                pdb.putInt(78 + i * 8, offset).putInt(78 + i * 8 + 4, i * 2);
+                offset += records.get(i).length;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.writeBytes(pdb.array());
+            records.forEach(out::writeBytes);
+            return out.toByteArray();
+        }
+    }
+
+    private static List<byte[]> text(int records) {
+        List<byte[]> list = new ArrayList<>();
+        for (int i = 0; i < records; i++) {
+            byte[] r = new byte[4096];
+            Arrays.fill(r, (byte) ('a' + i));
+            list.add(r);
+        }
+        return list;
+    }
+
+    @Test
+    public void testReadsExthAndCover() throws IOException {
+        byte[] thumb = {1, 2, 3};
+        byte[] data = new MobiWriter()
+                .exth(100, "Аркадий Стругацкий")
+                .exth(100, "Борис Стругацкий")
+                .exth(101, "Издательство")
+                .exth(103, "<p>Повесть о <b>Зоне</b></p>")
+                .exth(104, "978-5-17-000000-0")
+                .exth(105, "Фантастика")
+                .exth(106, "1972-05-01T00:00:00+00:00")
+                .exth(503, "Пикник на обочине")
+                .exth(524, "ru")
+                .exth(201, 1)
+                .exth(202, 0)
+                .build(text(3), List.of(thumb, COVER));
+        Path file = tempDir.resolve("roadside.azw3");
+        Files.write(file, data);
+
+        BookHeader h = new MobiHeaderReader().read(file).orElseThrow();
+
+        assertEquals("Пикник на обочине", h.getTitle());
+        assertEquals("Аркадий Стругацкий", h.getAuthor());
+        assertEquals("978-5-17-000000-0", h.getIsbn());
+        assertEquals("Фантастика", h.getGenre());
+        assertEquals("1972", h.getYear());
+        assertEquals("ru", h.getLanguage());
+        assertEquals("Повесть о Зоне", h.getDescription());
+        assertArrayEquals(COVER, h.getCover());
+    }
+
+    @Test
+    public void testFallsBackToFullNameAndLocale() throws IOException {
+        MobiWriter writer = new MobiWriter().exth(100, "Someone");
+        writer.locale = 0x0419; // ru-RU
+        writer.fullName = "Имя из заголовка";
+        Path file = tempDir.resolve("plain.mobi");
+        Files.write(file, writer.build(text(1), List.of()));
+
+        BookHeader h = new MobiHeaderReader().read(file).orElseThrow();
+
+        assertEquals("Имя из заголовка", h.getTitle());
+        assertEquals("Someone", h.getAuthor());
+        assertEquals("ru", h.getLanguage());
+        assertNull(h.getCover());
+    }
+
+    @Test
+    public void testCoverOffsetOutOfRange() throws IOException {
+        Path file = tempDir.resolve("badcover.mobi");
+        Files.write(file, new MobiWriter().exth(201, 7).build(text(1), List.of(COVER)));
+
+        BookHeader h = new MobiHeaderReader().read(file).orElseThrow();
+
+        assertNull(h.getCover());
+    }
+
+    @Test
+    public void testLengthBeyondRecordIsRejectedBeforeAllocating() throws IOException {
+        byte[] data = new MobiWriter().exth(100, "Author").build(text(1), List.of(COVER));
+        int rec0 = 78 + 3 * 8 + 2;
+        // the EXTH author entry claims 1.5 GB
+        ByteBuffer.wrap(data).putInt(rec0 + 16 + 0xE8 + 12 + 4, 1_500_000_000);
+        Path file = tempDir.resolve("huge.mobi");
+        Files.write(file, data);
+
+        assertTrue(new MobiHeaderReader().read(file).isEmpty());
+    }
+
+    @Test
+    public void testTruncatedOrForeignFile() throws IOException {
+        byte[] data = new MobiWriter().exth(100, "Author").build(text(1), List.of(COVER));
+        Path truncated = tempDir.resolve("truncated.mobi");
+        Files.write(truncated, Arrays.copyOf(data, 120));
+        assertTrue(new MobiHeaderReader().read(truncated).isEmpty());
+
+        Path foreign = Files.writeString(tempDir.resolve("text.mobi"), "x".repeat(200));
+        assertTrue(new MobiHeaderReader().read(foreign).isEmpty());
+        assertFalse(new MobiHeaderReader().supports(tempDir.resolve("book.fb2")));
+    }
+}
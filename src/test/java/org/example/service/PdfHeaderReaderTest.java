@@ -0,0 +1,237 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PdfHeaderReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    /** Writes objects sequentially and records their offsets for the xref. */
+    private static class PdfWriter {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final List<Integer> offsets = new ArrayList<>();
+
+        PdfWriter() {
+            write("%PDF-1.7\n%âãÏÓ\n");
+        }
+
+        void write(String s) {
+            out.writeBytes(s.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        int object(String body) {
+            offsets.add(out.size());
+            int num = offsets.size();
+            write(num + " 0 obj\n" + body + "\nendobj\n");
+            return num;
+        }
+
+        int stream(String dict, byte[] data) {
+            offsets.add(out.size());
+            int num = offsets.size();
+            write(num + " 0 obj\n<< " + dict + " /Length " + data.length + " >>\nstream\n");
+            out.writeBytes(data);
+            write("\nendstream\nendobj\n");
+            return num;
+        }
+
+        byte[] finishWithTable(String trailer) {
+            int xref = out.size();
+            StringBuilder sb = new StringBuilder("xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f\r\n");
+            for (int off : offsets) {
+                sb.append(String.format("%010d 00000 n\r\n", off));
+            }
+            sb.append("trailer\n<< /Size ").append(offsets.size() + 1).append(' ').append(trailer).append(" >>\n");
+            sb.append("startxref\n").append(xref).append("\n%%EOF\n");
+            write(sb.toString());
+            return out.toByteArray();
+        }
+    }
+
+    private static String utf16Hex(String s) {
+        StringBuilder sb = new StringBuilder("<FEFF");
+        for (byte b : s.getBytes(StandardCharsets.UTF_16BE)) sb.append(String.format("%02X", b));
+        return sb.append('>').toString();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater d = new Deflater();
+        d.setInput(data);
+        d.finish();
+        byte[] buf = new byte[data.length + 64];
+        int n = d.deflate(buf);
+        d.end();
+        return java.util.Arrays.copyOf(buf, n);
+    }
+
+    @Test
+    public void testClassicXrefInfoDictionary() throws IOException {
+        PdfWriter pdf = new PdfWriter();
+        int catalog = pdf.object("<< /Type /Catalog /Pages 2 0 R /Lang (ru-RU) >>");
+        pdf.object("<< /Type /Pages /Kids [] /Count 0 >>");
+        pdf.stream("", new byte[100_000]); // stands in for page content, must not be read
+        int info = pdf.object("<< /Title " + utf16Hex("Мастер и Маргарита") +
+                " /Author (Mikhail \\(M.\\) Bulgakov) /Subject (A novel\\nabout \\123atan) >>");
+        Path file = tempDir.resolve("classic.pdf");
+        Files.write(file, pdf.finishWithTable("/Root " + catalog + " 0 R /Info " + info + " 0 R"));
+
+        BookHeader h = new PdfHeaderReader().read(file).orElseThrow();
+
+        assertEquals("Мастер и Маргарита", h.getTitle());
+        assertEquals("Mikhail (M.) Bulgakov", h.getAuthor());
+        assertEquals("A novel\nabout Satan", h.getDescription());
+        assertEquals("ru-RU", h.getLanguage());
+    }
+
+    @Test
+    public void testIncrementalUpdateUsesNewestInfo() throws IOException {
+        PdfWriter pdf = new PdfWriter();
+        int catalog = pdf.object("<< /Type /Catalog >>");
+        int info = pdf.object("<< /Title (Old Title) >>");
+        byte[] first = pdf.finishWithTable("/Root " + catalog + " 0 R /Info " + info + " 0 R");
+        int prevXref = new String(first, StandardCharsets.ISO_8859_1).lastIndexOf("xref\n0 ");
+
+        // appended update redefines object 2
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(first);
+        int newInfoOffset = out.size();
+        out.writeBytes((info + " 0 obj\n<< /Title (New Title) /Author (Updater) >>\nendobj\n").getBytes(StandardCharsets.ISO_8859_1));
+        int xref = out.size();
+        String update = "xref\n" + info + " 1\n" + String.format("%010d 00000 n\r\n", newInfoOffset) +
+                "trailer\n<< /Size 3 /Root " + catalog + " 0 R /Info " + info + " 0 R /Prev " + prevXref + " >>\n" +
+                "startxref\n" + xref + "\n%%EOF\n";
+        out.writeBytes(update.getBytes(StandardCharsets.ISO_8859_1));
+        Path file = tempDir.resolve("updated.pdf");
+        Files.write(file, out.toByteArray());
+
+        BookHeader h = new PdfHeaderReader().read(file).orElseThrow();
+
+        assertEquals("New Title", h.getTitle());
+        assertEquals("Updater", h.getAuthor());
+    }
+
+    @Test
+    public void testXrefStreamWithObjectStream() throws IOException {
+        PdfWriter pdf = new PdfWriter();
+        // objects 1 (catalog) and 2 (info) live compressed in object stream 3
+        String obj1 = "<< /Type /Catalog /Lang (en) >>";
+        String obj2 = "<< /Title (Compressed Title) /Author (Packed Author) >>";
+        String header = "1 0 2 " + (obj1.length() + 1) + " ";
+        byte[] objStm = (header + obj1 + "\n" + obj2).getBytes(StandardCharsets.ISO_8859_1);
+        pdf.offsets.add(-1);
+        pdf.offsets.add(-1);
+        int stm = pdf.stream("/Type /ObjStm /N 2 /First " + header.length() + " /Filter /FlateDecode", deflate(objStm));
+
+        // xref stream (object 4): W [1 2 1], PNG Up predictor with 4 columns
+        int xrefOffset = pdf.out.size();
+        int[][] rows = {
+                {0, 0, 255},                   // 0: free
+                {2, stm, 0},                   // 1: in object stream, index 0
+                {2, stm, 1},                   // 2: in object stream, index 1
+                {1, pdf.offsets.get(2), 0},    // 3: object stream itself
+                {1, xrefOffset, 0}             // 4: this xref stream
+        };
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        byte[] prev = new byte[4];
+        for (int[] r : rows) {
+            byte[] row = {(byte) r[0], (byte) (r[1] >> 8), (byte) r[1], (byte) r[2]};
+            raw.write(2); // Up
+            for (int i = 0; i < 4; i++) raw.write((row[i] - prev[i]) & 0xFF);
+            prev = row;
+        }
+        pdf.stream("/Type /XRef /Size 5 /W [1 2 1] /Root 1 0 R /Info 2 0 R /Filter /FlateDecode " +
+                "/DecodeParms << /Columns 4 /Predictor 12 >>", deflate(raw.toByteArray()));
+        pdf.write("startxref\n" + xrefOffset + "\n%%EOF\n");
+        Path file = tempDir.resolve("xrefstream.pdf");
+        Files.write(file, pdf.out.toByteArray());
+
+        BookHeader h = new PdfHeaderReader().read(file).orElseThrow();
+
+        assertEquals("Compressed Title", h.getTitle());
+        assertEquals("Packed Author", h.getAuthor());
+        assertEquals("en", h.getLanguage());
+    }
+
+    @Test
+    public void testXmpFallback() throws IOException {
+        String xmp = "<?xpacket begin=\"\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>\n" +
+                "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"><rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n" +
+                " <rdf:Description rdf:about=\"\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n" +
+                "  <dc:title><rdf:Alt><rdf:li xml:lang=\"x-default\">XMP Title</rdf:li></rdf:Alt></dc:title>\n" +
+                "  <dc:creator><rdf:Seq><rdf:li>First Creator</rdf:li><rdf:li>Second</rdf:li></rdf:Seq></dc:creator>\n" +
+                "  <dc:date><rdf:Seq><rdf:li>1999-03-04</rdf:li></rdf:Seq></dc:date>\n" +
+                " </rdf:Description></rdf:RDF></x:xmpmeta>\n<?xpacket end=\"w\"?>";
+        PdfWriter pdf = new PdfWriter();
+        int meta = pdf.stream("/Type /Metadata /Subtype /XML", xmp.getBytes(StandardCharsets.UTF_8));
+        int catalog = pdf.object("<< /Type /Catalog /Metadata " + meta + " 0 R >>");
+        int info = pdf.object("<< /Producer (Scanner) >>");
+        Path file = tempDir.resolve("xmp.pdf");
+        Files.write(file, pdf.finishWithTable("/Root " + catalog + " 0 R /Info " + info + " 0 R"));
+
+        BookHeader h = new PdfHeaderReader().read(file).orElseThrow();
+
+        assertEquals("XMP Title", h.getTitle());
+        assertEquals("First Creator", h.getAuthor());
+        assertEquals("1999", h.getYear());
+    }
+
+    @Test
+    public void testEncryptedFallsBackToTika() throws IOException {
+        PdfWriter pdf = new PdfWriter();
+        int catalog = pdf.object("<< /Type /Catalog >>");
+        int enc = pdf.object("<< /Filter /Standard /V 2 >>");
+        Path file = tempDir.resolve("encrypted.pdf");
+        Files.write(file, pdf.finishWithTable("/Root " + catalog + " 0 R /Encrypt " + enc + " 0 R"));
+
+        assertTrue(new PdfHeaderReader().read(file).isEmpty());
+    }
+
+    @Test
+    public void testBrokenFileFallsBackToTika() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("broken.pdf"), "%PDF-1.4\nthis is not a pdf body\n%%EOF");
+        assertTrue(new PdfHeaderReader().read(file).isEmpty());
+    }
+
+    @Test
+    public void testMalformedStructureFallsBackToTika() throws IOException {
+        PdfWriter pdf = new PdfWriter();
+        int catalog = pdf.object("<< /Type /Catalog >>");
+        int info = pdf.object("<< /Title (Lost) >>");
+        String table = new String(pdf.finishWithTable("/Root " + catalog + " 0 R /Info " + info + " 0 R"),
+                StandardCharsets.ISO_8859_1);
+        Path garbage = tempDir.resolve("garbage-xref.pdf");
+        Files.writeString(garbage, table.replaceFirst("\\d{10} 00000 n", "12x4567890 00000 n"), StandardCharsets.ISO_8859_1);
+        assertTrue(new PdfHeaderReader().read(garbage).isEmpty());
+
+        // an object stream without /N, listed by an xref stream whose /W has two widths
+        PdfWriter stream = new PdfWriter();
+        stream.offsets.add(-1);
+        int stm = stream.stream("/Type /ObjStm /First 4", "1 0 <<>>".getBytes(StandardCharsets.ISO_8859_1));
+        int xrefOffset = stream.out.size();
+        byte[] rows = {0, 0, 0, 2, 0, (byte) stm, 1, 0, (byte) (stream.offsets.get(1) >> 8), (byte) (int) stream.offsets.get(1)};
+        stream.stream("/Type /XRef /Size 3 /W [1 2] /Root 1 0 R", rows);
+        stream.write("startxref\n" + xrefOffset + "\n%%EOF\n");
+        Path widths = tempDir.resolve("bad-widths.pdf");
+        Files.write(widths, stream.out.toByteArray());
+        assertTrue(new PdfHeaderReader().read(widths).isEmpty());
+    }
+
+    @Test
+    public void testPngPredictor() {
+        byte[] encoded = {2, 1, 2, 2, 1, 1};
+        assertArrayEquals(new byte[]{1, 2, 2, 3}, PdfHeaderReader.unpredictPng(encoded, 2));
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.service;
+
+import org.example.model.Book;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanCatalogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ThumbnailCacheService pack;
+
+    @AfterEach
+    public void closePack() {
+        if (pack != null) pack.close();
+    }
+
+    private ScanCatalog catalog(Path file) {
+        if (pack == null) pack = new ThumbnailCacheService(tempDir.resolve("covers"), ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        return new ScanCatalog(file, pack);
+    }
+
+    private BasicFileAttributes attrs(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    private Book book(Path file) {
+        return Book.builder()
+                .title("Solaris")
+                .author("Stanisław Lem")
+                .series("No Series")
+                .seriesIndex(3)
+                .genre("Science Fiction")
+                .language("Polish")
+                .year("1961")
+                .description("x".repeat(70_000))
+                .format("epub")
+                .filePath(file)
+                .cover(new byte[]{1, 2, 3})
+                .build();
+    }
+
+    @Test
+    public void testSurvivesRestart() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("solaris.epub"), "content");
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        ScanCatalog catalog = catalog(catalogFile);
+        catalog.record(file, attrs(file), book(file));
+        catalog.save();
+
+        ScanCatalog reloaded = catalog(catalogFile);
+        Book b = reloaded.lookup(file, attrs(file)).orElseThrow();
+
+        assertEquals("Solaris", b.getTitle());
+        assertEquals("Stanisław Lem", b.getAuthor());
+        assertEquals(Integer.valueOf(3), b.getSeriesIndex());
+        assertEquals("1961", b.getYear());
+        assertEquals(70_000, b.getDescription().length());
+        assertEquals(file.toAbsolutePath().normalize(), b.getFilePath());
+        assertArrayEquals(new byte[]{1, 2, 3}, b.getCover());
+        assertNull(b.getAuthorPhoto());
+        assertTrue(Files.size(catalogFile) < 1_000, "Blobs belong in the pack, not the catalog");
+    }
+
+    @Test
+    public void testEntryWithEvictedBlobsIsDropped() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("solaris.epub"), "content");
+        Path catalogFile = tempDir.resolve("catalog.bin");
+        ScanCatalog catalog = catalog(catalogFile);
+        catalog.record(file, attrs(file), book(file));
+        catalog.save();
+        pack.close();
+
+        // an empty pack: the cover and description are gone
+        pack = new ThumbnailCacheService(tempDir.resolve("other"), ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        ScanCatalog reloaded = new ScanCatalog(catalogFile, pack);
+        assertTrue(reloaded.lookup(file, attrs(file)).isEmpty());
+        assertEquals(0, reloaded.size());
+    }
+
+    @Test
+    public void testDetectsModification() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("book.fb2"), "first");
+        ScanCatalog catalog = catalog(tempDir.resolve("catalog.bin"));
+        catalog.record(file, attrs(file), book(file));
+        assertTrue(catalog.lookup(file, attrs(file)).isPresent());
+
+        FileTime mtime = Files.getLastModifiedTime(file);
+        Files.writeString(file, "second, longer");
+        Files.setLastModifiedTime(file, mtime);
+        assertTrue(catalog.lookup(file, attrs(file)).isEmpty(), "Size change must invalidate");
+
+        catalog.record(file, attrs(file), book(file));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(mtime.toMillis() + 5_000));
+        assertTrue(catalog.lookup(file, attrs(file)).isEmpty(), "Mtime change must invalidate");
+    }
+
+    @Test
+    public void testStampFileKey() {
+        ScanCatalog.Stamp stamp = new ScanCatalog.Stamp(10, 20, "(dev=1,ino=2)");
+        assertTrue(stamp.matches(new ScanCatalog.Stamp(10, 20, null)));
+        assertFalse(stamp.matches(new ScanCatalog.Stamp(10, 20, "(dev=1,ino=3)")));
+    }
+
+    @Test
+    public void testCorruptCatalogStartsEmpty() throws IOException {
+        Path catalogFile = Files.write(tempDir.resolve("catalog.bin"), new byte[]{0x53, 0x4D, 0x43, 0x54, 0, 0, 0, 1, 0, 0, 0, 5});
+        ScanCatalog catalog = catalog(catalogFile);
+
+        assertEquals(0, catalog.size());
+
+        Path file = Files.writeString(tempDir.resolve("book.pdf"), "pdf");
+        catalog.record(file, attrs(file), book(file));
+        catalog.save();
+        assertEquals(1, catalog(catalogFile).size());
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchSchedulerTest {
+
+    @Test
+    public void testTypingRunsOnlyTheLastQuery() throws Exception {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        List<String> shown = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (SearchScheduler<String> scheduler = new SearchScheduler<>(300, q -> {
+            ran.add(q);
+            return q.toUpperCase();
+        }, Runnable::run, (q, result) -> {
+            shown.add(result);
+            done.countDown();
+        })) {
+            for (String q : List.of("d", "du", "dun", "dune")) scheduler.submit(q);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(400);
+            assertEquals(List.of("dune"), ran);
+            assertEquals(List.of("DUNE"), shown);
+
+            SearchScheduler.Stats stats = scheduler.stats();
+            assertEquals(1, stats.completed());
+            assertEquals(3, stats.cancelled());
+            assertEquals("dune", stats.last().query());
+            assertTrue(stats.last().waitMillis() >= 290, "debounce not counted: " + stats.last());
+        }
+    }
+
+    @Test
+    public void testNewQueryCancelsTheRunningOne() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicBoolean slowInterrupted = new AtomicBoolean();
+        List<String> shown = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (SearchScheduler<String> scheduler = new SearchScheduler<>(0, q -> {
+            if (q.equals("slow")) {
+                slowStarted.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    slowInterrupted.set(true);
+                    throw e;
+                }
+            }
+            return q;
+        }, Runnable::run, (q, result) -> {
+            shown.add(result);
+            done.countDown();
+        })) {
+            scheduler.submitNow("slow");
+            assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+            scheduler.submitNow("fast");
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(slowInterrupted.get());
+            assertEquals(List.of("fast"), shown);
+            assertEquals(1, scheduler.stats().cancelled());
+        }
+    }
+
+    @Test
+    public void testRefreshLetsTheRunningQueryFinish() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        List<String> ran = new CopyOnWriteArrayList<>();
+        List<String> shown = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        try (SearchScheduler<String> scheduler = new SearchScheduler<>(0, q -> {
+            ran.add(q);
+            if (ran.size() == 1) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw e;
+                }
+            }
+            return q + ran.size();
+        }, Runnable::run, (q, result) -> {
+            shown.add(result);
+            done.countDown();
+        })) {
+            scheduler.refresh("dune");
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // books keep arriving while the first run is busy
+            for (int i = 0; i < 5; i++) scheduler.refresh("dune");
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            assertFalse(interrupted.get());
+            assertEquals(List.of("dune1", "dune2"), shown);
+            assertEquals(2, ran.size());
+            assertEquals(0, scheduler.stats().cancelled());
+        }
+    }
+
+    @Test
+    public void testRefreshRunsAfterAFailedQuery() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        List<String> shown = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (SearchScheduler<String> scheduler = new SearchScheduler<>(0, q -> {
+            ran.add(q);
+            if (ran.size() == 1) {
+                started.countDown();
+                release.await();
+                // the library was cleared under the running query
+                throw new IllegalStateException("store changed");
+            }
+            return q + ran.size();
+        }, Runnable::run, (q, result) -> {
+            shown.add(result);
+            done.countDown();
+        })) {
+            scheduler.refresh("dune");
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            scheduler.refresh("dune");
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("dune2"), shown);
+        }
+    }
+
+    @Test
+    public void testStaleResultIsNotShown() throws Exception {
+        List<Runnable> edt = new CopyOnWriteArrayList<>();
+        List<String> shown = new CopyOnWriteArrayList<>();
+        try (SearchScheduler<String> scheduler = new SearchScheduler<>(0, q -> q, edt::add, (q, result) -> shown.add(result))) {
+            scheduler.submitNow("first");
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (edt.isEmpty() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+            // the result waits for the EDT while the user types on
+            scheduler.submitNow("second");
+            while (edt.size() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+            edt.forEach(Runnable::run);
+            assertEquals(List.of("second"), shown);
+            assertEquals(1, scheduler.stats().completed());
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThumbnailCacheServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] image(int size, int seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testSurvivesRestart() {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        for (int i = 0; i < 3_000; i++) {
+            cache.put("http://covers/" + i, image(100 + i % 500, i));
+        }
+        cache.put("http://covers/7", image(64, -7));
+        cache.close();
+
+        ThumbnailCacheService reopened = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        assertEquals(3_000, reopened.size());
+        assertArrayEquals(image(100 + 42, 42), reopened.get("http://covers/42"));
+        assertArrayEquals(image(64, -7), reopened.get("http://covers/7"), "The later put wins");
+        assertNull(reopened.get("http://covers/missing"));
+        reopened.close();
+    }
+
+    @Test
+    public void testTornTailIsCut() throws IOException {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        cache.put("a", image(500, 1));
+        cache.put("b", image(500, 2));
+        long size = cache.packSize();
+        cache.close();
+        // half a record: header says 1000 bytes, only 10 follow
+        byte[] torn = new byte[34];
+        torn[19] = (byte) 0xE8;
+        torn[18] = 0x03;
+        Files.write(tempDir.resolve("covers.pack"), torn, StandardOpenOption.APPEND);
+
+        ThumbnailCacheService reopened = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        assertArrayEquals(image(500, 2), reopened.get("b"));
+        assertEquals(size, reopened.packSize());
+        reopened.put("c", image(10, 3));
+        reopened.close();
+        assertArrayEquals(image(10, 3), new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES).get("c"));
+    }
+
+    @Test
+    public void testRecordsPastTheIndexAreReplayed() throws IOException {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        cache.put("a", image(500, 1));
+        cache.close();
+        Path index = tempDir.resolve("covers.idx");
+        Path saved = tempDir.resolve("saved.idx");
+        Files.copy(index, saved);
+
+        cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        cache.put("b", image(500, 2));
+        cache.close();
+        // as if the process died before the index caught up with the pack
+        Files.copy(saved, index, StandardCopyOption.REPLACE_EXISTING);
+
+        ThumbnailCacheService reopened = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        assertArrayEquals(image(500, 1), reopened.get("a"));
+        assertArrayEquals(image(500, 2), reopened.get("b"));
+        reopened.close();
+    }
+
+    @Test
+    public void testMissingOrForeignIndexIsRebuilt() throws IOException {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        for (int i = 0; i < 2_000; i++) cache.put("k" + i, image(50, i));
+        cache.close();
+        Files.delete(tempDir.resolve("covers.idx"));
+
+        ThumbnailCacheService rebuilt = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        assertEquals(2_000, rebuilt.size());
+        assertArrayEquals(image(50, 1999), rebuilt.get("k1999"));
+        rebuilt.close();
+
+        Files.write(tempDir.resolve("covers.idx"), new byte[4096]);
+        ThumbnailCacheService again = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        assertArrayEquals(image(50, 7), again.get("k7"));
+        again.close();
+    }
+
+    @Test
+    public void testCompactionDropsDeadRecords() {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 10; i++) cache.put("k" + i, image(10_000, round * 100 + i));
+        }
+        long before = cache.packSize();
+        cache.compact();
+        assertTrue(cache.packSize() < before / 10, before + " -> " + cache.packSize());
+        assertEquals(10, cache.size());
+        assertArrayEquals(image(10_000, 1900 + 3), cache.get("k3"));
+        cache.close();
+        assertArrayEquals(image(10_000, 1900 + 9), new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES).get("k9"));
+    }
+
+    @Test
+    public void testSizeCapEvictsOldest() throws Exception {
+        long cap = 1024 * 1024;
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, cap);
+        for (int i = 0; i < 30; i++) cache.put("k" + i, image(100_000, i));
+        cache.compact();
+        assertTrue(cache.packSize() <= cap, "Pack " + cache.packSize());
+        assertArrayEquals(image(100_000, 29), cache.get("k29"));
+        assertNull(cache.get("k0"));
+        cache.close();
+    }
+
+    @Test
+    public void testLoweredCapEvictsOldest() throws Exception {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        for (int i = 0; i < 30; i++) cache.put("k" + i, image(100_000, i));
+        cache.setMaxBytes(1024 * 1024);
+        cache.compact();
+        assertTrue(cache.packSize() <= 1024 * 1024, "Pack " + cache.packSize());
+        assertArrayEquals(image(100_000, 29), cache.get("k29"));
+        assertNull(cache.get("k0"));
+        cache.close();
+    }
+
+    @Test
+    public void testLegacyFilesAreMigrated() throws IOException {
+        Files.write(tempDir.resolve(ThumbnailCacheService.legacyName("http://old/cover.jpg")), image(300, 5));
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        assertArrayEquals(image(300, 5), cache.get("http://old/cover.jpg"));
+        assertFalse(Files.exists(tempDir.resolve(ThumbnailCacheService.legacyName("http://old/cover.jpg"))));
+        assertArrayEquals(image(300, 5), cache.get("http://old/cover.jpg"));
+        cache.close();
+    }
+
+    @Test
+    public void testSecondInstanceStaysOut() {
+        ThumbnailCacheService first = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        first.put("a", image(10, 1));
+        ThumbnailCacheService second = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        assertNull(second.get("a"));
+        second.put("b", image(10, 2));
+        assertNull(first.get("b"));
+        assertArrayEquals(image(10, 1), first.get("a"));
+        first.close();
+    }
+
+    @Test
+    public void testConcurrentUseDuringCompaction() throws Exception {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, 2 * 1024 * 1024);
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(6)) {
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 400; i++) {
+                        String key = "k" + ((i * 7 + seed) % 100);
+                        byte[] data = cache.get(key);
+                        if (data != null) assertEquals(key.hashCode() & 0xFF, data[0] & 0xFF, "Never another key's bytes");
+                        byte[] fresh = image(20_000, i);
+                        fresh[0] = (byte) key.hashCode();
+                        cache.put(key, fresh);
+                    }
+                }));
+            }
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 10; i++) cache.compact();
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        cache.compact();
+        assertTrue(cache.packSize() <= 2 * 1024 * 1024);
+        cache.close();
+    }
+
+    /**
+     * Lookup latency, pack vs. one file per image. Run with
+     * {@code mvn test -Dtest=ThumbnailCacheServiceTest -Dbenchmark=true}.
+     */
+    @Test
+    public void benchmarkLookupLatency() throws IOException {
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "Benchmark disabled, use -Dbenchmark=true");
+
+        int count = 20_000;
+        Path legacyDir = Files.createDirectories(tempDir.resolve("legacy"));
+        Path packDir = tempDir.resolve("pack");
+        ThumbnailCacheService pack = new ThumbnailCacheService(packDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        for (int i = 0; i < count; i++) {
+            byte[] data = image(8_000 + i % 8_000, i);
+            Files.write(legacyDir.resolve(ThumbnailCacheService.legacyName("k" + i)), data);
+            pack.put("k" + i, data);
+        }
+        pack.close();
+
+        System.out.printf("%-8s %-6s %12s %12s%n", "store", "pass", "total ms", "us/lookup");
+        for (String pass : List.of("cold", "warm")) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                // the per-file layout as it was: exists, then readAllBytes
+                Path p = legacyDir.resolve(ThumbnailCacheService.legacyName("k" + i));
+                if (Files.exists(p)) assertTrue(Files.readAllBytes(p).length > 0);
+            }
+            report("files", pass, start, count);
+        }
+        ThumbnailCacheService reopened = new ThumbnailCacheService(packDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        for (String pass : List.of("cold", "warm")) {
+            // cold includes opening and mapping the index
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                assertTrue(reopened.get("k" + i).length > 0);
+            }
+            report("pack", pass, start, count);
+        }
+        reopened.close();
+    }
+
+    private static void report(String store, String pass, long start, int count) {
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-8s %-6s %12.1f %12.2f%n", store, pass, nanos / 1e6, nanos / 1e3 / count);
+    }
+}
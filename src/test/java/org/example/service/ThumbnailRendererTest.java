@@ -0,0 +1,125 @@
+package org.example.service;
+
+import org.example.model.BlobStore;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThumbnailRendererTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final BlobStore blobs = new BlobStore(null, BlobStore.DEFAULT_HOT_BYTES);
+
+    private static byte[] jpeg(int width, int height, Color color) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpg", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRendersEverySize() throws IOException {
+        ThumbnailRenderer renderer = new ThumbnailRenderer(null, blobs);
+        BlobStore.Ref cover = blobs.put(jpeg(600, 900, Color.BLUE));
+        for (ThumbnailRenderer.Size size : ThumbnailRenderer.Size.values()) {
+            BufferedImage thumb = renderer.get(cover, size).orElseThrow();
+            assertEquals(size.width(), thumb.getWidth());
+            assertEquals(size.height(), thumb.getHeight());
+            Color center = new Color(thumb.getRGB(size.width() / 2, size.height() / 2));
+            assertTrue(center.getBlue() > 200 && center.getRed() < 50, "colour lost: " + center);
+        }
+    }
+
+    @Test
+    public void testUpscalesSmallSources() throws IOException {
+        BlobStore.Ref tiny = blobs.put(jpeg(10, 10, Color.RED));
+        BufferedImage thumb = new ThumbnailRenderer(null, blobs).get(tiny, ThumbnailRenderer.Size.DETAILS).orElseThrow();
+        assertEquals(200, thumb.getWidth());
+        assertEquals(280, thumb.getHeight());
+    }
+
+    @Test
+    public void testPreparedThumbnailsAreStored() throws IOException {
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        ThumbnailRenderer renderer = new ThumbnailRenderer(cache, blobs);
+        BlobStore.Ref cover = blobs.put(jpeg(400, 560, Color.GREEN));
+        renderer.prepare(cover, ThumbnailRenderer.Size.TREE, ThumbnailRenderer.Size.DETAILS);
+        assertNotNull(cache.get(ThumbnailRenderer.key(cover, ThumbnailRenderer.Size.TREE)));
+        assertNotNull(cache.get(ThumbnailRenderer.key(cover, ThumbnailRenderer.Size.DETAILS)));
+        assertNull(cache.get(ThumbnailRenderer.key(cover, ThumbnailRenderer.Size.AUTHOR)));
+        cache.close();
+
+        // a new session reads the stored PNG, keyed by content
+        ThumbnailCacheService reopened = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        ThumbnailRenderer next = new ThumbnailRenderer(reopened, blobs);
+        BufferedImage thumb = next.get(blobs.put(jpeg(400, 560, Color.GREEN)), ThumbnailRenderer.Size.TREE).orElseThrow();
+        assertEquals(24, thumb.getWidth());
+        assertEquals(Integer.valueOf(2), Integer.valueOf(reopened.size()));
+        reopened.close();
+    }
+
+    @Test
+    public void testUnreadableImage() {
+        ThumbnailRenderer renderer = new ThumbnailRenderer(null, blobs);
+        BlobStore.Ref junk = blobs.put(new byte[]{1, 2, 3});
+        assertTrue(renderer.get(junk, ThumbnailRenderer.Size.TREE).isEmpty());
+        assertTrue(renderer.get(null, ThumbnailRenderer.Size.TREE).isEmpty());
+        renderer.prepare(junk, ThumbnailRenderer.Size.TREE);
+    }
+
+    /**
+     * Per-paint cost: getScaledInstance as the UI did it vs. a pre-rendered thumbnail. Run with
+     * {@code mvn test -Dtest=ThumbnailRendererTest -Dbenchmark=true}.
+     */
+    @Test
+    public void benchmarkScaling() throws IOException {
+        Assumptions.assumeTrue(Boolean.getBoolean("benchmark"), "Benchmark disabled, use -Dbenchmark=true");
+
+        byte[] bytes = jpeg(800, 1200, Color.ORANGE);
+        BlobStore.Ref cover = blobs.put(bytes);
+        ThumbnailCacheService cache = new ThumbnailCacheService(tempDir, ThumbnailCacheService.DEFAULT_MAX_BYTES);
+        ThumbnailRenderer renderer = new ThumbnailRenderer(cache, blobs);
+        int rounds = 50;
+        System.out.printf("%-10s %-8s %12s%n", "size", "method", "ms/image");
+        for (ThumbnailRenderer.Size size : ThumbnailRenderer.Size.values()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                // what the renderer and the details panel did on every call
+                javax.swing.ImageIcon icon = new javax.swing.ImageIcon(bytes);
+                Image scaled = icon.getImage().getScaledInstance(size.width(), size.height(), Image.SCALE_SMOOTH);
+                assertTrue(new javax.swing.ImageIcon(scaled).getIconWidth() > 0);
+            }
+            report(size, "smooth", start, rounds);
+
+            start = System.nanoTime();
+            renderer.prepare(cover, size);
+            report(size, "prepare", start, 1);
+
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                assertTrue(renderer.get(cover, size).isPresent());
+            }
+            report(size, "get", start, rounds);
+        }
+        cache.close();
+    }
+
+    private static void report(ThumbnailRenderer.Size size, String method, long start, int count) {
+        System.out.printf("%-10s %-8s %12.3f%n", size, method, (System.nanoTime() - start) / 1e6 / count);
+    }
+}